@@ -52,9 +52,12 @@ public class Main extends JFrame implements KeyListener
     private final int          fps          = 25;
     private final long         deltaNanos   = Math.round(1000000000.0d / (double) fps);
     private final float        deltaSeconds = 1.0f / (float) fps;
+    // how many ticks can be run back to back to catch up, before giving up on it
+    private final int          maxCatchUp   = 3;
     private final AsciiPanel   terminal;
     private final World        world;
     private final ScreenSystem screen;
+    private final BudgetSystem budget;
     // currently pressed keys
     private final BitVector    pressed;
 
@@ -68,6 +71,7 @@ public class Main extends JFrame implements KeyListener
         pressed = new BitVector(255);
 
         screen = new ScreenSystem();
+        budget = new BudgetSystem(20f, 10f);
 
         final Properties properties = new Properties();
         properties.load(this.getClass().getResourceAsStream("/project.properties"));
@@ -89,16 +93,24 @@ public class Main extends JFrame implements KeyListener
         config.setSystem(CreatureSystem.class);
         config.setSystem(PlayerManager.class);
         config.setSystem(GroupSystem.class);
+        config.setSystem(SpatialIndexSystem.class);
         config.setSystem(ActionSystem.class);
         config.setSystem(MessageSystem.class);
         config.setSystem(screen);
         // actual game logic
+        config.setSystem(budget);
         config.setSystem(new TimeSystem(8, 60f));
-        config.setSystem(new HealthSystem(5f));
         config.setSystem(new StaminaSystem(1f));
-        config.setSystem(new HungerSystem(1f));
-        config.setSystem(new UnderwaterSystem(1f));
-        config.setSystem(AISystem.class);
+        config.setSystem(new PathRequestSystem(2, 2f));
+        config.setSystem(PursuitSystem.class);
+        config.setSystem(ReservationSystem.class);
+        config.setSystem(new ThreatSystem(0.5f, 2f, Runtime.getRuntime().availableProcessors()));
+        config.setSystem(new ScentSystem(0.5f, 20f));
+        config.setSystem(NoiseSystem.class);
+        config.setSystem(new MemorySystem(10f));
+        config.setSystem(new LodSystem(32, 96, 256));
+        config.setSystem(new RegionSystem(5f, 64, 256, 320));
+        config.setSystem(new AISystem(Runtime.getRuntime().availableProcessors(), true));
         config.setSystem(BumpSystem.class);
         config.setSystem(PathSystem.class);
         config.setSystem(MovementSystem.class);
@@ -109,6 +121,10 @@ public class Main extends JFrame implements KeyListener
         config.setSystem(CrushSystem.class);
         config.setSystem(ThrowSystem.class);
         config.setSystem(CraftSystem.class);
+        // vitals can be put off when the tick is over budget, so they go after everything else that can
+        config.setSystem(new HealthSystem(5f));
+        config.setSystem(new HungerSystem(1f));
+        config.setSystem(new UnderwaterSystem(1f));
         // ai behaviours (passive)
         config.setSystem(FleeBehaviour.class);
         config.setSystem(GrazeBehaviour.class);
@@ -218,8 +234,23 @@ public class Main extends JFrame implements KeyListener
             // However, artemis-odb wants a float delta representing seconds, so that's what we give.
             // Since we use fixed timestep, this is equivalent
             // FIXME: check if deltaNanos rounding affects the system with certain fps (eg, 60)
+            int ticks = 0;
             while (lag >= deltaNanos)
             {
+                // running even more ticks would only put us further behind: the game slows down instead
+                if (ticks == maxCatchUp)
+                {
+                    final long dropped = lag / deltaNanos;
+
+                    if (!paused)
+                        budget.drop((int) dropped);
+                    lag -= dropped * deltaNanos;
+
+                    break;
+                }
+
+                ticks++;
+
                 world.setDelta(deltaSeconds);
 
                 // TODO: add here, in the else, a sleep?
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.behaviours;
+
+/**
+ * The behaviours of a kind of creature, as listed in its template, resolved once when the
+ * templates are loaded. All creatures of the same kind share it.
+ * <p>
+ * Author: Fabio Ticconi
+ * Date: 18/10/26
+ */
+public class AIProfile
+{
+    public final String tag;
+
+    // the behaviours, and their index among all the behaviours there are
+    public final Behaviour[] behaviours;
+    public final int[]       indices;
+
+    // what is left to do when following a leader (null if the creature never follows)
+    public final AIProfile follower;
+
+    public AIProfile(final String tag, final Behaviour[] behaviours, final int[] indices)
+    {
+        this(tag, behaviours, indices, null);
+    }
+
+    public AIProfile(final String tag, final Behaviour[] behaviours, final int[] indices, final AIProfile follower)
+    {
+        this.tag = tag;
+        this.behaviours = behaviours;
+        this.indices = indices;
+        this.follower = follower;
+    }
+}
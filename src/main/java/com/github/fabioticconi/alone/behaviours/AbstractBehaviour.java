@@ -18,7 +18,7 @@
 package com.github.fabioticconi.alone.behaviours;
 
 import com.artemis.Aspect;
-import com.artemis.annotations.EntityId;
+import com.artemis.utils.BitVector;
 import net.mostlyoriginal.api.system.core.PassiveSystem;
 
 /**
@@ -26,12 +26,21 @@ import net.mostlyoriginal.api.system.core.PassiveSystem;
  */
 public abstract class AbstractBehaviour extends PassiveSystem implements Behaviour
 {
-    @EntityId
-    protected int    entityId = -1;
-    protected Aspect aspect;
+    // the creatures having all the components this behaviour needs, kept up to date by artemis
+    protected BitVector members;
+
+    /**
+     * Only creatures matching the aspect will be evaluated.
+     *
+     * @param aspect
+     */
+    protected void subscribe(final Aspect.Builder aspect)
+    {
+        members = world.getAspectSubscriptionManager().get(aspect).getActiveEntityIds();
+    }
 
     public boolean interested(final int entityId)
     {
-        return aspect.isInterested(world.getEntity(entityId));
+        return members.get(entityId);
     }
 }
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.behaviours;
+
+import java.util.Arrays;
+
+/**
+ * The creatures due this tick that have a certain behaviour, so that the behaviour can evaluate
+ * all of them in one go.
+ * <p>
+ * What is commonly needed about the creatures is copied once per tick in packed arrays,
+ * shared by all batches ({@link Creatures}); the batch itself only has, for each member, its
+ * place in those arrays, its score and its {@link Context} (made by the behaviour).
+ * <p>
+ * Author: Fabio Ticconi
+ * Date: 18/10/26
+ */
+public class Batch
+{
+    public final Creatures creatures;
+    public final Behaviour behaviour;
+
+    public int[]     members;
+    public float[]   bounds;
+    public float[]   scores;
+    public Context[] contexts;
+    public int       size;
+
+    public Batch(final Creatures creatures, final Behaviour behaviour)
+    {
+        this.creatures = creatures;
+        this.behaviour = behaviour;
+
+        members = new int[16];
+        bounds = new float[16];
+        scores = new float[16];
+        contexts = new Context[16];
+    }
+
+    public void clear()
+    {
+        size = 0;
+    }
+
+    /**
+     * @param i place of the creature in {@link #creatures}
+     */
+    public void add(final int i)
+    {
+        add(i, 1f);
+    }
+
+    /**
+     * @param i     place of the creature in {@link #creatures}
+     * @param bound the best score the behaviour could give to the creature
+     */
+    public void add(final int i, final float bound)
+    {
+        if (size == members.length)
+        {
+            members = Arrays.copyOf(members, 2 * size);
+            bounds = Arrays.copyOf(bounds, 2 * size);
+            scores = Arrays.copyOf(scores, 2 * size);
+            contexts = Arrays.copyOf(contexts, 2 * size);
+        }
+
+        if (contexts[size] == null)
+            contexts[size] = behaviour.newContext();
+
+        members[size] = i;
+        bounds[size] = bound;
+        scores[size] = 0f;
+        contexts[size].reset(creatures.entities[i]);
+
+        size++;
+    }
+
+    /**
+     * Drops the members that can't beat the given scores, keeping the others in the same order.
+     *
+     * @param toBeat score to beat for each creature, by place in {@link #creatures}
+     * @return the sum of the bounds of the remaining members
+     */
+    public float retain(final float[] toBeat)
+    {
+        int   kept = 0;
+        float sum  = 0f;
+
+        for (int k = 0; k < size; k++)
+        {
+            if (bounds[k] <= toBeat[members[k]])
+                continue;
+
+            if (kept != k)
+            {
+                final Context ctx = contexts[kept];
+
+                members[kept] = members[k];
+                bounds[kept] = bounds[k];
+                scores[kept] = scores[k];
+                contexts[kept] = contexts[k];
+                contexts[k] = ctx;
+            }
+
+            sum += bounds[kept];
+            kept++;
+        }
+
+        size = kept;
+
+        return sum;
+    }
+
+    /**
+     * @return the entity id of the k-th member
+     */
+    public int getEntity(final int k)
+    {
+        return creatures.entities[members[k]];
+    }
+
+    /**
+     * Creatures due this tick, and what every behaviour wants to know about them.
+     */
+    public static class Creatures
+    {
+        public int[]   entities;
+        public int[]   x;
+        public int[]   y;
+        public int[]   sight;
+        // between 0 (starving) and 1 (full)
+        public float[] hunger;
+        // -1 if not in a group
+        public int[]   group;
+        // how loud what they've heard was, 0 if nothing
+        public float[] heard;
+        public int     size;
+
+        public Creatures()
+        {
+            entities = new int[0];
+            x = new int[0];
+            y = new int[0];
+            sight = new int[0];
+            hunger = new float[0];
+            group = new int[0];
+            heard = new float[0];
+        }
+
+        public void ensureCapacity(final int capacity)
+        {
+            if (entities.length >= capacity)
+                return;
+
+            entities = Arrays.copyOf(entities, capacity);
+            x = Arrays.copyOf(x, capacity);
+            y = Arrays.copyOf(y, capacity);
+            sight = Arrays.copyOf(sight, capacity);
+            hunger = Arrays.copyOf(hunger, capacity);
+            group = Arrays.copyOf(group, capacity);
+            heard = Arrays.copyOf(heard, capacity);
+        }
+    }
+}
@@ -30,16 +30,70 @@ package com.github.fabioticconi.alone.behaviours;
 public interface Behaviour
 {
     /**
-     * Evaluates the conditions for this behaviour.
+     * Evaluates the conditions for this behaviour. It must only read the world (and the creature's
+     * own components), as many creatures can be evaluated at the same time.
      *
+     * @param entityId the creature
+     * @param ctx      where to put what {@link #update(Context)} will need
      * @return a [0,1] score representing the utility of this behaviour.
      */
-    public float evaluate(int entityId);
+    public float evaluate(int entityId, Context ctx);
 
     /**
-     * Implements this behaviour. Will be called every tick.
+     * A quick guess of the best score {@link #evaluate(int, Context)} could give, without doing any
+     * of the expensive work. It must never be lower than the actual score, so that if it can't beat
+     * the score to beat, the evaluation can be skipped.
      *
+     * @param entityId the creature
+     * @return an upper bound of the score, 1 if there's no cheap way of telling
+     */
+    public default float upperBound(final int entityId)
+    {
+        return 1f;
+    }
+
+    /**
+     * The coarsest level of detail (see {@link com.github.fabioticconi.alone.systems.LodSystem}) at which
+     * this behaviour is still worth considering. Beyond it, the creature simply doesn't think of it.
+     *
+     * @return the highest level of detail, everything by default
+     */
+    public default int getLodLimit()
+    {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Evaluates the members of the batch from index "from" (inclusive) to "to" (exclusive), putting
+     * their scores and contexts in the batch. Same rules as {@link #evaluate(int, Context)}: other
+     * ranges of the same batch might be evaluated at the same time.
+     * <p>
+     * By default it just evaluates one creature after the other, but behaviours can do better
+     * using the packed arrays in {@link Batch#creatures}. There's no need to fill in the position
+     * in the contexts: the AI system does it for the ones that win.
+     */
+    public default void evaluate(final Batch batch, final int from, final int to)
+    {
+        for (int k = from; k < to; k++)
+        {
+            batch.scores[k] = evaluate(batch.getEntity(k), batch.contexts[k]);
+        }
+    }
+
+    /**
+     * @return a context that {@link #evaluate(int, Context)} can fill in, for {@link #update(Context)} to
+     * read: behaviours that need more than the position of the creature return their own kind
+     */
+    public default Context newContext()
+    {
+        return new Context();
+    }
+
+    /**
+     * Implements this behaviour. Will be called every tick, one creature at a time.
+     *
+     * @param ctx as filled in by {@link #evaluate(int, Context)}
      * @return the minimum time the next AI tick can happen
      */
-    public float update();
+    public float update(Context ctx);
 }
@@ -19,14 +19,21 @@ package com.github.fabioticconi.alone.behaviours;
 
 import com.artemis.Aspect;
 import com.artemis.ComponentMapper;
-import com.artemis.utils.IntBag;
+import com.github.fabioticconi.alone.components.Dead;
 import com.github.fabioticconi.alone.components.Herbivore;
 import com.github.fabioticconi.alone.components.Hunger;
+import com.github.fabioticconi.alone.components.Memory;
 import com.github.fabioticconi.alone.components.Position;
 import com.github.fabioticconi.alone.components.Speed;
 import com.github.fabioticconi.alone.components.attributes.Sight;
-import com.github.fabioticconi.alone.systems.BumpSystem;
+import com.github.fabioticconi.alone.constants.Category;
+import com.github.fabioticconi.alone.constants.Side;
 import com.github.fabioticconi.alone.systems.MapSystem;
+import com.github.fabioticconi.alone.systems.BumpSystem;
+import com.github.fabioticconi.alone.systems.MemorySystem;
+import com.github.fabioticconi.alone.systems.PursuitSystem;
+import com.github.fabioticconi.alone.systems.ScentSystem;
+import com.github.fabioticconi.alone.systems.SpatialIndexSystem;
 import com.github.fabioticconi.alone.utils.Coords;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,74 +45,212 @@ public class ChaseBehaviour extends AbstractBehaviour
 {
     static final Logger log = LoggerFactory.getLogger(ChaseBehaviour.class);
 
+    // fainter than this, and it's not worth following
+    static final float MIN_SCENT = 0.05f;
+
     ComponentMapper<Hunger>    mHunger;
     ComponentMapper<Sight>     mSight;
     ComponentMapper<Position>  mPosition;
     ComponentMapper<Herbivore> mHerbivore;
+    ComponentMapper<Dead>      mDead;
 
-    BumpSystem sBump;
-    MapSystem  sMap;
-
-    private Position chasePos;
+    PursuitSystem      sPursuit;
+    SpatialIndexSystem sIndex;
+    ScentSystem        sScent;
+    BumpSystem         sBump;
+    MemorySystem       sMemory;
+    MapSystem          sMap;
 
     @Override
     protected void initialize()
     {
-        aspect = Aspect.all(Position.class, Speed.class, Sight.class, Hunger.class).build(world);
+        subscribe(Aspect.all(Position.class, Speed.class, Sight.class, Hunger.class));
     }
 
     @Override
-    public float evaluate(final int entityId)
+    public Context newContext()
     {
-        this.entityId = entityId;
+        return new State();
+    }
 
+    @Override
+    public float evaluate(final int entityId, final Context ctx)
+    {
         if (!interested(entityId))
             return 0f;
 
-        final Position pos   = mPosition.get(entityId);
-        final int      sight = mSight.get(entityId).value;
+        final Position pos     = mPosition.get(entityId);
+        final Hunger   cHunger = mHunger.get(entityId);
+
+        ctx.pos = pos;
+
+        // need a value between 0 and 1
+        return score(entityId, pos.x, pos.y, mSight.get(entityId).value, cHunger.value / cHunger.maxValue,
+                     (State) ctx);
+    }
+
+    /**
+     * @param hunger how hungry the creature is, as a fraction of its maximum
+     */
+    float score(final int entityId, final int x, final int y, final int sight, final float hunger, final State state)
+    {
+        // we keep chasing the prey we were after, if we can still see it
+        int memorySlot = sMemory.recall(entityId, Memory.PREY);
+
+        int preyId = memorySlot < 0 ? -1 : sMemory.getEntity(entityId, memorySlot);
+
+        if (preyId >= 0 && (!mHerbivore.has(preyId) || mDead.has(preyId) || !mPosition.has(preyId)))
+        {
+            // someone got there first
+            sMemory.forget(entityId, memorySlot);
+
+            memorySlot = -1;
+            preyId = -1;
+        }
+
+        if (preyId >= 0 && !isStillInSight(x, y, preyId, sight))
+            preyId = -1;
+
+        // otherwise, the closest prey we can see
+        if (preyId < 0)
+        {
+            preyId = sIndex.getNearest(Category.HERBIVORE, x, y, sight, id -> canSee(x, y, id));
+
+            if (preyId >= 0)
+                memorySlot = -1;
+        }
+
+        if (preyId >= 0)
+        {
+            final Position chasePos = mPosition.get(preyId);
+
+            sMemory.remember(entityId, Memory.PREY, preyId, chasePos.x, chasePos.y);
+
+            state.preyId = preyId;
+
+            final float distance = Coords.distancePseudoEuclidean(x, y, chasePos.x, chasePos.y);
+
+            // average between our hunger and the prey's closeness
+            return 0.5f * (hunger + 1f - (distance / sight));
+        }
+
+        // the prey has slipped out of sight: we go where we saw it last
+        if (memorySlot >= 0)
+        {
+            sMemory.getPosition(entityId, memorySlot, state.lastSeen);
+
+            state.memorySlot = memorySlot;
+
+            return 0.5f * (hunger + sMemory.getFreshness(entityId, memorySlot));
+        }
+
+        // might be there's no prey in sight, but we can still follow its trail
+        final float scent = sScent.getScent(x, y);
+
+        if (scent < MIN_SCENT)
+            return 0f;
+
+        // tracking is less appealing than chasing something we can see
+        return 0.25f * (hunger + scent);
+    }
+
+    boolean isStillInSight(final int x, final int y, final int preyId, final int sight)
+    {
+        final Position temp = mPosition.get(preyId);
+
+        return Coords.distancePseudoEuclidean(x, y, temp.x, temp.y) <= sight && canSee(x, y, preyId);
+    }
+
+    boolean canSee(final int x, final int y, final int preyId)
+    {
+        final Position temp = mPosition.get(preyId);
+
+        return sMap.isVisible(x, y, temp.x, temp.y);
+    }
 
+    @Override
+    public float upperBound(final int entityId)
+    {
         final Hunger cHunger = mHunger.get(entityId);
-        final float  hunger  = cHunger.value / cHunger.maxValue; // need a value between 0 and 1
 
-        // all creatures in the visible area for this predator
-        final IntBag creatures = sMap.getObstacles().getEntities(sMap.getVisibleCells(pos.x, pos.y, sight));
+        // as if the prey was right next to us
+        return cHunger == null ? 0f : 0.5f * (cHunger.value / cHunger.maxValue + 1f);
+    }
 
-        float minDistance = Float.MAX_VALUE;
-        chasePos = null;
+    @Override
+    public void evaluate(final Batch batch, final int from, final int to)
+    {
+        final Batch.Creatures c = batch.creatures;
 
-        Position temp;
-        for (int i = 0, size = creatures.size(); i < size; i++)
+        for (int k = from; k < to; k++)
         {
-            final int creatureId = creatures.get(i);
+            final int i        = batch.members[k];
+            final int entityId = c.entities[i];
 
-            if (mHerbivore.has(creatureId))
-            {
-                temp = mPosition.get(creatureId);
+            batch.scores[k] = interested(entityId) ?
+                              score(entityId, c.x[i], c.y[i], c.sight[i], c.hunger[i], (State) batch.contexts[k]) :
+                              0f;
+        }
+    }
 
-                final float distance = Coords.distancePseudoEuclidean(pos.x, pos.y, temp.x, temp.y);
+    @Override
+    public float update(final Context ctx)
+    {
+        final State    state    = (State) ctx;
+        final int      entityId = ctx.entityId;
+        final Position pos      = ctx.pos;
+
+        // the prey moves all the time, so we keep repairing the same path rather than making a new one
+        if (state.preyId >= 0)
+        {
+            final Position chasePos = mPosition.get(state.preyId);
+
+            return chasePos == null ? 0f : sPursuit.pursue(entityId, chasePos);
+        }
+
+        if (state.memorySlot >= 0)
+        {
+            final Position lastSeen = state.lastSeen;
+
+            // nothing here anymore
+            if (Coords.distanceChebyshev(pos.x, pos.y, lastSeen.x, lastSeen.y) < 2)
+            {
+                sMemory.forget(entityId, state.memorySlot);
 
-                // we want the closest prey
-                if (distance < minDistance)
-                {
-                    minDistance = distance;
-                    chasePos = temp;
-                }
+                return 0f;
             }
+
+            return sBump.bumpAction(entityId, lastSeen);
         }
 
-        // might be there's no prey
-        if (chasePos == null)
+        final Side direction = sScent.getTrail(pos.x, pos.y);
+
+        // we are where the smell is strongest, but there's no prey: the trail has gone cold
+        if (direction == Side.HERE || !sMap.isFree(pos.x, pos.y, direction))
             return 0f;
 
-        // average between our hunger and the prey's closeness
-        return 0.5f * (hunger + 1f - (minDistance / sight));
+        return sBump.bumpAction(entityId, direction);
     }
 
-    @Override
-    public float update()
+    /**
+     * The prey in sight, or else where it was last seen, or else nothing (and we follow the scent).
+     */
+    static class State extends Context
     {
-        // this calculates a path
-        return sBump.bumpAction(entityId, chasePos);
+        final Position lastSeen;
+        int            preyId;
+        int            memorySlot;
+
+        State()
+        {
+            lastSeen = new Position(0, 0);
+        }
+
+        @Override
+        protected void clear()
+        {
+            preyId = -1;
+            memorySlot = -1;
+        }
     }
 }
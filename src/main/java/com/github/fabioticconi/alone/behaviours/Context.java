@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.behaviours;
+
+import com.github.fabioticconi.alone.components.Position;
+
+/**
+ * What a behaviour has found out about one creature while evaluating it, and needs again
+ * to act on it. Behaviours keep nothing of their own between the two, so many creatures can
+ * be evaluated at once (each with its own Context).
+ * <p>
+ * Behaviours that need to remember more than where the creature is extend it with their own
+ * fields, and make their contexts in {@link Behaviour#newContext()}: a behaviour is only ever
+ * given the contexts it made.
+ * <p>
+ * Author: Fabio Ticconi
+ * Date: 18/10/26
+ */
+public class Context
+{
+    public int       entityId;
+    public Behaviour behaviour;
+    public float     score;
+
+    // where the creature is
+    public Position pos;
+
+    public Context()
+    {
+        entityId = -1;
+    }
+
+    public Context reset(final int entityId)
+    {
+        this.entityId = entityId;
+
+        behaviour = null;
+        score = 0f;
+        pos = null;
+
+        clear();
+
+        return this;
+    }
+
+    /**
+     * Forgets whatever the behaviour found out about the previous creature.
+     */
+    protected void clear()
+    {
+
+    }
+}
@@ -19,15 +19,14 @@ package com.github.fabioticconi.alone.behaviours;
 
 import com.artemis.Aspect;
 import com.artemis.ComponentMapper;
-import com.artemis.utils.IntBag;
-import com.github.fabioticconi.alone.components.Carnivore;
+import com.github.fabioticconi.alone.components.Heard;
 import com.github.fabioticconi.alone.components.Position;
 import com.github.fabioticconi.alone.components.Speed;
 import com.github.fabioticconi.alone.components.attributes.Sight;
 import com.github.fabioticconi.alone.constants.Side;
 import com.github.fabioticconi.alone.systems.BumpSystem;
 import com.github.fabioticconi.alone.systems.MapSystem;
-import com.github.fabioticconi.alone.utils.Coords;
+import com.github.fabioticconi.alone.systems.ThreatSystem;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,77 +37,113 @@ public class FleeBehaviour extends AbstractBehaviour
 {
     static final Logger log = LoggerFactory.getLogger(FleeBehaviour.class);
 
-    ComponentMapper<Sight>     mSight;
-    ComponentMapper<Position>  mPosition;
-    ComponentMapper<Carnivore> mCarnivore; // FIXME make a more generic FleeFrom
+    ComponentMapper<Position> mPosition;
+    ComponentMapper<Heard>    mHeard;
 
-    BumpSystem sBump;
+    BumpSystem   sBump;
+    ThreatSystem sThreat;
 
     MapSystem sMap;
 
-    Position curPos;
-    Position fleeFrom;
-
     @Override
     protected void initialize()
     {
-        aspect = Aspect.all(Position.class, Speed.class, Sight.class).build(world);
-
-        fleeFrom = new Position(0, 0);
+        subscribe(Aspect.all(Position.class, Speed.class, Sight.class));
     }
 
     @Override
-    public float evaluate(final int entityId)
+    public Context newContext()
     {
-        this.entityId = entityId;
+        return new State();
+    }
 
+    @Override
+    public float evaluate(final int entityId, final Context ctx)
+    {
         if (!interested(entityId))
             return 0f;
 
-        curPos = mPosition.get(entityId);
-        final int sight = mSight.get(entityId).value;
+        final Position curPos = mPosition.get(entityId);
+        final Heard    heard  = mHeard.get(entityId);
 
-        final IntBag creatures = sMap.getObstacles().getEntities(sMap.getVisibleCells(curPos.x, curPos.y, sight));
+        ctx.pos = curPos;
 
-        if (creatures.isEmpty())
-            return 0f;
+        return score(entityId, curPos.x, curPos.y, heard == null ? 0f : heard.intensity, (State) ctx);
+    }
 
-        fleeFrom.x = 0;
-        fleeFrom.y = 0;
+    /**
+     * @param noise how loud what the creature has heard was, 0 if nothing
+     */
+    float score(final int entityId, final int x, final int y, final float noise, final State state)
+    {
+        // FIXME make a more generic FleeFrom
+        // the closer the predators, the higher the threat
+        final float threat = sThreat.getThreat(x, y);
 
-        int      count = 0;
-        Position tempPos;
-        for (int i = 0, size = creatures.size(); i < size; i++)
+        // a loud noise nearby is scarier than a predator far away
+        if (noise > threat)
         {
-            final int creatureId = creatures.get(i);
+            final Heard heard = mHeard.get(entityId);
 
-            if (mCarnivore.has(creatureId))
-            {
-                tempPos = mPosition.get(creatureId);
+            state.noise.set(heard.x, heard.y);
+            state.heard = true;
 
-                fleeFrom.x += tempPos.x;
-                fleeFrom.y += tempPos.y;
-
-                count++;
-            }
+            return noise;
         }
 
-        if (count == 0)
+        return threat;
+    }
+
+    @Override
+    public float upperBound(final int entityId)
+    {
+        final Position p = mPosition.get(entityId);
+
+        if (p == null)
             return 0f;
 
-        fleeFrom.x = Math.floorDiv(fleeFrom.x, count);
-        fleeFrom.y = Math.floorDiv(fleeFrom.y, count);
+        final Heard heard = mHeard.get(entityId);
 
-        return 1f - Coords.distancePseudoEuclidean(curPos.x, curPos.y, fleeFrom.x, fleeFrom.y) / sight;
+        // it's already cheap, so the bound is the score itself
+        return Math.max(sThreat.getThreat(p.x, p.y), heard == null ? 0f : heard.intensity);
     }
 
     @Override
-    public float update()
+    public void evaluate(final Batch batch, final int from, final int to)
     {
-        // get the side directly opposite to the one the danger is from
-        Side direction = Side.getSide(fleeFrom.x, fleeFrom.y, curPos.x, curPos.y);
+        final Batch.Creatures c = batch.creatures;
 
-        if (!sMap.isFree(curPos.x, curPos.y, direction))
+        for (int k = from; k < to; k++)
+        {
+            final int i        = batch.members[k];
+            final int entityId = c.entities[i];
+
+            batch.scores[k] = interested(entityId) ?
+                              score(entityId, c.x[i], c.y[i], c.heard[i], (State) batch.contexts[k]) :
+                              0f;
+        }
+    }
+
+    @Override
+    public float update(final Context ctx)
+    {
+        final State    state  = (State) ctx;
+        final Position curPos = ctx.pos;
+
+        Side direction;
+
+        if (state.heard)
+        {
+            // away from the noise
+            direction = Side.getSide(state.noise.x, state.noise.y, curPos.x, curPos.y);
+        }
+        else
+        {
+            // we go wherever the threat is lower
+            direction = sThreat.getThreatMap().getDescent(curPos.x, curPos.y);
+        }
+
+        if (direction == Side.HERE || !sMap.isFree(curPos.x, curPos.y, direction))
         {
             // go to a random direction, whether free or not!
             // note how this could result in animals killing members of their own group and such,
@@ -117,6 +152,26 @@ public class FleeBehaviour extends AbstractBehaviour
             direction = Side.getRandom();
         }
 
-        return sBump.bumpAction(entityId, direction);
+        return sBump.bumpAction(ctx.entityId, direction);
+    }
+
+    /**
+     * Where the noise we are running from came from, if it's a noise we are running from.
+     */
+    static class State extends Context
+    {
+        final Position noise;
+        boolean        heard;
+
+        State()
+        {
+            noise = new Position(0, 0);
+        }
+
+        @Override
+        protected void clear()
+        {
+            heard = false;
+        }
     }
 }
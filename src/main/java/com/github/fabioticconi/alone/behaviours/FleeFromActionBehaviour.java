@@ -20,15 +20,16 @@ package com.github.fabioticconi.alone.behaviours;
 
 import com.artemis.Aspect;
 import com.artemis.ComponentMapper;
-import com.artemis.utils.IntBag;
+import com.github.fabioticconi.alone.components.Heard;
 import com.github.fabioticconi.alone.components.Position;
 import com.github.fabioticconi.alone.components.Speed;
 import com.github.fabioticconi.alone.components.Underwater;
-import com.github.fabioticconi.alone.components.actions.Action;
 import com.github.fabioticconi.alone.components.attributes.Sight;
+import com.github.fabioticconi.alone.constants.Locomotion;
 import com.github.fabioticconi.alone.constants.Side;
 import com.github.fabioticconi.alone.systems.BumpSystem;
 import com.github.fabioticconi.alone.systems.MapSystem;
+import com.github.fabioticconi.alone.systems.ThreatSystem;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,78 +41,96 @@ public class FleeFromActionBehaviour extends AbstractBehaviour
 {
     static final Logger log = LoggerFactory.getLogger(FleeBehaviour.class);
 
-    ComponentMapper<Sight>      mSight;
-    ComponentMapper<Position>   mPosition;
-    ComponentMapper<Action>     mAction;
-    ComponentMapper<Underwater> mUnderWater;
+    ComponentMapper<Position> mPosition;
+    ComponentMapper<Heard>    mHeard;
 
-    BumpSystem sBump;
+    BumpSystem   sBump;
+    ThreatSystem sThreat;
 
     MapSystem sMap;
 
-    Position curPos;
-    Position fleeFrom;
-
     @Override
     protected void initialize()
     {
-        aspect = Aspect.all(Position.class, Speed.class, Sight.class, Underwater.class).build(world);
-
-        fleeFrom = new Position(0, 0);
+        subscribe(Aspect.all(Position.class, Speed.class, Sight.class, Underwater.class));
     }
 
     @Override
-    public float evaluate(final int entityId)
+    public Context newContext()
     {
-        this.entityId = entityId;
+        return new State();
+    }
 
+    @Override
+    public float evaluate(final int entityId, final Context ctx)
+    {
         if (!interested(entityId))
             return 0f;
 
-        curPos = mPosition.get(entityId);
-        final int sight = mSight.get(entityId).value;
+        final Position curPos = mPosition.get(entityId);
+        final Heard    heard  = mHeard.get(entityId);
 
-        final IntBag creatures = sMap.getObstacles().getEntities(sMap.getVisibleCells(curPos.x, curPos.y, sight));
+        ctx.pos = curPos;
 
-        if (creatures.isEmpty())
-            return 0f;
-
-        fleeFrom.x = 0;
-        fleeFrom.y = 0;
+        return score(entityId, curPos.x, curPos.y, heard == null ? 0f : heard.intensity, (State) ctx);
+    }
 
-        int      count = 0;
-        Position tempPos;
-        for (int i = 0, size = creatures.size(); i < size; i++)
+    /**
+     * @param noise how loud what the creature has heard was, 0 if nothing
+     */
+    float score(final int entityId, final int x, final int y, final float noise, final State state)
+    {
+        // loud noises scare us, and so do non-fish doing something nearby
+        if (noise > 0f)
         {
-            final int creatureId = creatures.get(i);
+            final Heard heard = mHeard.get(entityId);
 
-            // only avoid non-fish
-            if (mAction.has(creatureId) && !mUnderWater.has(creatureId))
-            {
-                tempPos = mPosition.get(creatureId);
-
-                fleeFrom.x += tempPos.x;
-                fleeFrom.y += tempPos.y;
-
-                count++;
-            }
+            state.noise.set(heard.x, heard.y);
+            state.heard = true;
         }
-
-        if (count == 0)
+        else if (sThreat.getDisturbance(x, y) <= 0f)
+        {
             return 0f;
+        }
 
-        fleeFrom.x = Math.floorDiv(fleeFrom.x, count);
-        fleeFrom.y = Math.floorDiv(fleeFrom.y, count);
+        return 0.9f;
+    }
 
+    @Override
+    public float upperBound(final int entityId)
+    {
         return 0.9f;
     }
 
     @Override
-    public float update()
+    public void evaluate(final Batch batch, final int from, final int to)
     {
-        Side direction = Side.getSide(curPos.x, curPos.y, fleeFrom.x, fleeFrom.y);
+        final Batch.Creatures c = batch.creatures;
 
-        if (!sMap.isFree(curPos.x, curPos.y, direction))
+        for (int k = from; k < to; k++)
+        {
+            final int i        = batch.members[k];
+            final int entityId = c.entities[i];
+
+            batch.scores[k] = interested(entityId) ?
+                              score(entityId, c.x[i], c.y[i], c.heard[i], (State) batch.contexts[k]) :
+                              0f;
+        }
+    }
+
+    @Override
+    public float update(final Context ctx)
+    {
+        final State    state  = (State) ctx;
+        final Position curPos = ctx.pos;
+
+        // away from the commotion
+        Side direction = state.heard ?
+                         Side.getSide(state.noise.x, state.noise.y, curPos.x, curPos.y) :
+                         sThreat.getDisturbanceMap().getDescent(curPos.x, curPos.y);
+
+        // fish only consider water as free
+        if (direction == Side.HERE || !sMap.getLayer(Locomotion.WATER).isFree(curPos.x, curPos.y, direction))
         {
             // go to a random direction, whether free or not!
             // note how this could result in animals killing members of their own group and such,
@@ -121,6 +140,26 @@ public class FleeFromActionBehaviour extends AbstractBehaviour
             direction = Side.getRandom();
         }
 
-        return sBump.bumpAction(entityId, direction);
+        return sBump.bumpAction(ctx.entityId, direction);
+    }
+
+    /**
+     * Where the noise we are running from came from, if it's a noise we are running from.
+     */
+    static class State extends Context
+    {
+        final Position noise;
+        boolean        heard;
+
+        State()
+        {
+            noise = new Position(0, 0);
+        }
+
+        @Override
+        protected void clear()
+        {
+            heard = false;
+        }
     }
 }
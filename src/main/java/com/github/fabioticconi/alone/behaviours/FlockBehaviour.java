@@ -25,11 +25,13 @@ import com.github.fabioticconi.alone.components.Group;
 import com.github.fabioticconi.alone.components.Position;
 import com.github.fabioticconi.alone.components.Speed;
 import com.github.fabioticconi.alone.components.attributes.Sight;
+import com.github.fabioticconi.alone.constants.Metric;
+import com.github.fabioticconi.alone.constants.Side;
 import com.github.fabioticconi.alone.systems.BumpSystem;
 import com.github.fabioticconi.alone.systems.GroupSystem;
 import com.github.fabioticconi.alone.systems.MapSystem;
 import com.github.fabioticconi.alone.utils.Coords;
-import com.github.fabioticconi.alone.utils.LongBag;
+import com.github.fabioticconi.alone.utils.NearestNeighbours;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,6 +39,9 @@ public class FlockBehaviour extends AbstractBehaviour
 {
     static final Logger log = LoggerFactory.getLogger(FlockBehaviour.class);
 
+    // followers stand in rings around the leader, this many per ring
+    static final int FORMATION_RING = 8;
+
     ComponentMapper<Sight>    mSight;
     ComponentMapper<Position> mPosition;
     ComponentMapper<Group>    mGroup;
@@ -45,109 +50,262 @@ public class FlockBehaviour extends AbstractBehaviour
     GroupSystem sGroup;
     MapSystem   sMap;
 
-    private Position curPos;
-    private Position centerOfGroup;
-    private Position closest;
+    // searches keep their state in here, and creatures can be evaluated on multiple threads
+    private ThreadLocal<NearestNeighbours> nearest;
 
     @Override
     protected void initialize()
     {
-        aspect = Aspect.all(Position.class, Speed.class, Sight.class, Group.class).build(world);
+        subscribe(Aspect.all(Position.class, Speed.class, Sight.class, Group.class));
 
-        centerOfGroup = new Position(0, 0);
+        nearest = ThreadLocal.withInitial(NearestNeighbours::new);
     }
 
     @Override
-    public float evaluate(final int entityId)
+    public Context newContext()
     {
-        this.entityId = entityId;
+        return new State();
+    }
 
+    @Override
+    public float evaluate(final int entityId, final Context ctx)
+    {
         if (!interested(entityId))
             return 0f;
 
-        final int sight = mSight.get(entityId).value;
+        final Position curPos = mPosition.get(entityId);
+
+        ctx.pos = curPos;
 
+        return score(entityId, curPos.x, curPos.y, mSight.get(entityId).value, mGroup.get(entityId).groupId,
+                     (State) ctx);
+    }
+
+    float score(final int entityId, final int x, final int y, final int sight, final int groupId, final State state)
+    {
         if (sight == 0)
             return 0f;
 
-        final int    groupId = mGroup.get(entityId).groupId;
-        final IntBag members = sGroup.getGroup(groupId);
+        final GroupSystem.Stats stats = sGroup.getStats(groupId);
 
-        if (members.size() < 2)
+        if (stats == null || stats.getCount() < 2)
             return 0f;
 
-        curPos = mPosition.get(entityId);
+        final Position centerOfGroup = state.destination;
 
-        final LongBag visibleCells = sMap.getVisibleCells(curPos.x, curPos.y, sight);
-        final IntBag  creatures    = sMap.getObstacles().getEntities(visibleCells);
+        final int leaderId = stats.getLeader();
 
-        centerOfGroup.x = 0;
-        centerOfGroup.y = 0;
+        if (leaderId >= 0)
+        {
+            state.following = true;
 
-        float minDistance = Float.MAX_VALUE;
+            return evaluateFollower(entityId, x, y, stats, leaderId, sight, state);
+        }
 
-        int      count = 0;
-        Position temp;
-        for (int i = 0, size = members.size(); i < size; i++)
+        // the centre of the rest of the group
+        centerOfGroup.x = (int) Math.floorDiv(stats.getSumX() - x, stats.getCount() - 1);
+        centerOfGroup.y = (int) Math.floorDiv(stats.getSumY() - y, stats.getCount() - 1);
+
+        // if we are at the centre already, this behaviour should not be selected
+        if (centerOfGroup.x == x && centerOfGroup.y == y)
+            return 0f;
+
+        // if the center is not currently visible, we just go to the closest group member we can see
+        if (Coords.distancePseudoEuclidean(x, y, centerOfGroup.x, centerOfGroup.y) > sight ||
+            !sMap.isVisible(x, y, centerOfGroup.x, centerOfGroup.y))
         {
-            final int memberId = members.get(i);
+            final IntBag mates = state.mates;
+
+            nearest.get()
+                   .find(sMap.getObstacles(),
+                         x,
+                         y,
+                         1,
+                         sight,
+                         Metric.EUCLIDEAN,
+                         id -> isVisibleMate(entityId, groupId, x, y, id),
+                         mates);
+
+            if (mates.isEmpty())
+                return 0f;
+
+            centerOfGroup.set(mPosition.get(mates.get(0)));
+        }
+
+        final float dist = Coords.distancePseudoEuclidean(x, y, centerOfGroup.x, centerOfGroup.y);
+
+        if (dist < 2f)
+            return 0f;
 
-            if (memberId != entityId && creatures.contains(memberId))
-            {
-                temp = mPosition.get(memberId);
+        return dist / sight;
+    }
 
-                if (temp == null)
-                {
-                    continue;
-                }
+    /**
+     * Herds with a leader don't look for each other: the leader goes wherever it wants,
+     * and the others just keep their place around it.
+     */
+    float evaluateFollower(final int entityId,
+                           final int x,
+                           final int y,
+                           final GroupSystem.Stats stats,
+                           final int leaderId,
+                           final int sight,
+                           final State state)
+    {
+        // the leader leads, it doesn't follow
+        if (leaderId == entityId)
+            return 0f;
 
-                centerOfGroup.x += temp.x;
-                centerOfGroup.y += temp.y;
+        // our place in the formation, the leader doesn't have one
+        final int slot = stats.getSlot(entityId);
 
-                // we keep track of the closest visible group member, in case the "center of group" approach
-                // fails
-                final float tempDistance = Coords.distancePseudoEuclidean(curPos.x, curPos.y, temp.x, temp.y);
+        final int   ring   = slot / FORMATION_RING;
+        final int   inRing = Math.min(FORMATION_RING, stats.getCount() - 1 - ring * FORMATION_RING);
+        final float angle  = (float) (2.0 * Math.PI * (slot % FORMATION_RING) / Math.max(inRing, 1));
+        final int   radius = 2 + ring;
 
-                if (tempDistance < minDistance)
-                {
-                    minDistance = tempDistance;
-                    closest = temp;
-                }
+        final Position leader = mPosition.get(leaderId);
+        final Position place  = state.destination;
 
-                count++;
-            }
-        }
+        place.x = leader.x + Math.round(radius * (float) Math.cos(angle));
+        place.y = leader.y + Math.round(radius * (float) Math.sin(angle));
 
-        if (count == 0)
+        final int dist = Coords.distanceChebyshev(x, y, place.x, place.y);
+
+        if (dist < 2)
             return 0f;
 
-        centerOfGroup.x = Math.floorDiv(centerOfGroup.x, count);
-        centerOfGroup.y = Math.floorDiv(centerOfGroup.y, count);
+        return Math.min((float) dist / sight, 1f);
+    }
 
-        // if we are at the centre already, this behaviour should not be selected
-        if (centerOfGroup.x == curPos.x && centerOfGroup.y == curPos.y)
-            return 0f;
+    /**
+     * Followers within sight of their leader don't need to decide where to go: wherever the leader goes
+     * (wandering, fleeing), they go too.
+     *
+     * @param entityId
+     * @return true if the entity is the follower of a leader it can see
+     */
+    public boolean isFollowing(final int entityId)
+    {
+        final Group g = mGroup.get(entityId);
 
-        final long coord = Coords.packCoords(centerOfGroup.x, centerOfGroup.y);
+        if (g == null)
+            return false;
 
-        // if the center is not currently visible, we just choose the closest
-        if (!visibleCells.contains(coord))
-        {
-            centerOfGroup.set(closest);
-        }
+        final GroupSystem.Stats stats = sGroup.getStats(g.groupId);
 
-        final float dist = Coords.distancePseudoEuclidean(curPos.x, curPos.y, centerOfGroup.x, centerOfGroup.y);
+        if (stats == null)
+            return false;
 
-        if (dist < 2f)
+        final int leaderId = stats.getLeader();
+
+        if (leaderId < 0 || leaderId == entityId)
+            return false;
+
+        final Position curPos = mPosition.get(entityId);
+        final Position leader = mPosition.get(leaderId);
+        final Sight    sight  = mSight.get(entityId);
+
+        return curPos != null && leader != null && sight != null &&
+               Coords.distanceChebyshev(curPos.x, curPos.y, leader.x, leader.y) <= sight.value;
+    }
+
+    boolean isVisibleMate(final int entityId, final int groupId, final int x, final int y, final int creatureId)
+    {
+        if (creatureId == entityId)
+            return false;
+
+        final Group g = mGroup.get(creatureId);
+
+        if (g == null || g.groupId != groupId)
+            return false;
+
+        final Position temp = mPosition.get(creatureId);
+
+        return sMap.isVisible(x, y, temp.x, temp.y);
+    }
+
+    @Override
+    public float upperBound(final int entityId)
+    {
+        final Group g = mGroup.get(entityId);
+
+        if (g == null)
             return 0f;
 
-        return dist / sight;
+        final GroupSystem.Stats stats = sGroup.getStats(g.groupId);
+
+        // we never go after anything further than we can see
+        return stats == null || stats.getCount() < 2 ? 0f : 1f;
+    }
+
+    @Override
+    public void evaluate(final Batch batch, final int from, final int to)
+    {
+        final Batch.Creatures c = batch.creatures;
+
+        for (int k = from; k < to; k++)
+        {
+            final int i        = batch.members[k];
+            final int entityId = c.entities[i];
+
+            batch.scores[k] = interested(entityId) ?
+                              score(entityId, c.x[i], c.y[i], c.sight[i], c.group[i], (State) batch.contexts[k]) :
+                              0f;
+        }
     }
 
     @Override
-    public float update()
+    public int getLodLimit()
     {
+        // keeping formation is only worth it where someone can see it: further out, members graze and wander
+        // on their own, and catch up with the herd when they come closer
+        return 1;
+    }
+
+    @Override
+    public float update(final Context ctx)
+    {
+        final State    state         = (State) ctx;
+        final int      entityId      = ctx.entityId;
+        final Position curPos        = ctx.pos;
+        final Position centerOfGroup = state.destination;
+
+        // close to our place, a step in its direction is enough
+        if (state.following && Coords.distanceChebyshev(curPos.x, curPos.y, centerOfGroup.x, centerOfGroup.y) <=
+                        mSight.get(entityId).value)
+        {
+            return sBump.bumpAction(entityId, Side.getSide(curPos.x, curPos.y, centerOfGroup.x, centerOfGroup.y));
+        }
+
         // this calculates a path
         return sBump.bumpAction(entityId, centerOfGroup);
     }
+
+    /**
+     * Where we are going: our place around the leader if we are following one, or else the centre of the
+     * group (or the closest mate we can see).
+     */
+    static class State extends Context
+    {
+        final Position destination;
+        boolean        following;
+
+        // scratch space for the search of group mates
+        final IntBag mates;
+
+        State()
+        {
+            destination = new Position(0, 0);
+            mates = new IntBag();
+        }
+
+        @Override
+        protected void clear()
+        {
+            following = false;
+
+            mates.clear();
+        }
+    }
 }
@@ -20,14 +20,17 @@ package com.github.fabioticconi.alone.behaviours;
 import com.artemis.Aspect;
 import com.artemis.ComponentMapper;
 import com.github.fabioticconi.alone.components.Hunger;
+import com.github.fabioticconi.alone.components.Memory;
 import com.github.fabioticconi.alone.components.Position;
 import com.github.fabioticconi.alone.components.Speed;
 import com.github.fabioticconi.alone.components.attributes.Sight;
 import com.github.fabioticconi.alone.constants.TerrainType;
-import com.github.fabioticconi.alone.systems.ActionSystem;
+import com.github.fabioticconi.alone.map.TerrainField;
 import com.github.fabioticconi.alone.systems.BumpSystem;
 import com.github.fabioticconi.alone.systems.HungerSystem;
 import com.github.fabioticconi.alone.systems.MapSystem;
+import com.github.fabioticconi.alone.systems.MemorySystem;
+import com.github.fabioticconi.alone.utils.Coords;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,62 +48,138 @@ public class GrazeBehaviour extends AbstractBehaviour
     ComponentMapper<Position> mPosition;
     HungerSystem              sHunger;
     BumpSystem                sBump;
-    ActionSystem              sAction;
+    MemorySystem              sMemory;
     MapSystem                 map;
-    // FIXME: this should be in a Context of sort
-    private Hunger hunger;
 
     @Override
     protected void initialize()
     {
-        aspect = Aspect.all(Position.class, Speed.class, Sight.class, Hunger.class).build(world);
+        subscribe(Aspect.all(Position.class, Speed.class, Sight.class, Hunger.class));
     }
 
     @Override
-    public float evaluate(final int entityId)
+    public Context newContext()
     {
-        this.entityId = entityId;
+        return new State();
+    }
 
+    @Override
+    public float evaluate(final int entityId, final Context ctx)
+    {
         if (!interested(entityId))
             return 0f;
 
-        hunger = mHunger.get(entityId);
+        final Hunger   hunger = mHunger.get(entityId);
+        final Position pos    = mPosition.get(entityId);
 
-        final float value = hunger.value / hunger.maxValue;
-
-        if (value < 0.4f)
-            return 0f;
+        ctx.pos = pos;
 
-        return value;
+        return score(entityId, pos.x, pos.y, mSight.get(entityId).value, hunger.value / hunger.maxValue, (State) ctx);
     }
 
-    @Override
-    public float update()
+    /**
+     * @param value how hungry the creature is, as a fraction of its maximum
+     */
+    float score(final int entityId, final int x, final int y, final int sight, final float value, final State state)
     {
-        final Position pos   = mPosition.get(entityId);
-        final int      sight = mSight.get(entityId).value;
+        if (value < HungerSystem.HUNGRY)
+            return 0f;
+
+        final Position destination = state.destination;
+
+        final int slot = sMemory.recall(entityId, Memory.GRASS);
 
-        // FIXME: does not take visibility into account!
+        if (slot >= 0)
+        {
+            sMemory.getPosition(entityId, slot, destination);
+
+            // the patch we were heading to is still there, no need to look around
+            if (map.get(destination.x, destination.y).type == TerrainType.GRASS &&
+                Coords.distanceChebyshev(x, y, destination.x, destination.y) <= sight)
+                return value;
+
+            sMemory.forget(entityId, slot);
+        }
 
         // FIXME: should differentiate on the "feeding capability"
         // and also, possibly, on the creature's preference (ie, the EnumSet
         // should be within a EatingPreference component of some kind)
-        final int[] coords = map.getFirstOfType(pos.x, pos.y, sight, validCells);
-
-        // TODO: the behaviour actually FAILED here, couldn't do anything:
-        // should we somehow relay this information to the AISystem, so that
-        // at the next tick it can try a different thing? Otherwise we are stuck
-        // in a "Graze loop"
-        // FIXME: solution: if no visible grass cells, evaluate this behaviour to 0
-        if (coords == null)
+        final TerrainField grass = map.getField(TerrainType.GRASS);
+
+        // no grass in sight, so there's nothing to do here (and we don't get stuck in a "Graze loop")
+        if (grass.getDistance(x, y) > sight)
+            return 0f;
+
+        destination.x = grass.getNearestX(x, y);
+        destination.y = grass.getNearestY(x, y);
+
+        if (!map.isVisible(x, y, destination.x, destination.y) ||
+            !map.isReachable(x, y, destination.x, destination.y))
+        {
+            // the closest grass is behind something: we look for any other patch we can see
+            final int[] coords = map.getFirstOfType(x, y, sight, validCells);
+
+            if (coords == null)
+                return 0f;
+
+            destination.x = coords[0];
+            destination.y = coords[1];
+        }
+
+        sMemory.remember(entityId, Memory.GRASS, -1, destination.x, destination.y);
+
+        return value;
+    }
+
+    @Override
+    public float upperBound(final int entityId)
+    {
+        final Hunger cHunger = mHunger.get(entityId);
+
+        if (cHunger == null)
             return 0f;
 
-        // we are right on a feed-friendly cell, so let's eat
-        if (coords[0] == pos.x && coords[1] == pos.y)
-            return sAction.act(sHunger.feed(entityId));
+        final float value = cHunger.value / cHunger.maxValue;
+
+        return value < HungerSystem.HUNGRY ? 0f : value;
+    }
+
+    @Override
+    public void evaluate(final Batch batch, final int from, final int to)
+    {
+        final Batch.Creatures c = batch.creatures;
+
+        for (int k = from; k < to; k++)
+        {
+            final int i        = batch.members[k];
+            final int entityId = c.entities[i];
+
+            batch.scores[k] = interested(entityId) ?
+                              score(entityId, c.x[i], c.y[i], c.sight[i], c.hunger[i], (State) batch.contexts[k]) :
+                              0f;
+        }
+    }
+
+    @Override
+    public float update(final Context ctx)
+    {
+        final int      entityId    = ctx.entityId;
+        final Position destination = ((State) ctx).destination;
 
-        final Position destination = new Position(coords[0], coords[1]);
+        // walk to the feed-friendly cell and eat there
+        return sBump.walkThen(entityId, destination, 0, sHunger.feed(entityId));
+    }
+
+    /**
+     * The grass we are going to eat.
+     */
+    static class State extends Context
+    {
+        final Position destination;
 
-        return sBump.bumpAction(entityId, destination);
+        State()
+        {
+            destination = new Position(0, 0);
+        }
     }
 }
@@ -20,16 +20,18 @@ package com.github.fabioticconi.alone.behaviours;
 
 import com.artemis.Aspect;
 import com.artemis.ComponentMapper;
-import com.artemis.utils.IntBag;
 import com.github.fabioticconi.alone.components.Corpse;
 import com.github.fabioticconi.alone.components.Hunger;
+import com.github.fabioticconi.alone.components.Memory;
 import com.github.fabioticconi.alone.components.Position;
 import com.github.fabioticconi.alone.components.Speed;
 import com.github.fabioticconi.alone.components.attributes.Sight;
-import com.github.fabioticconi.alone.systems.ActionSystem;
+import com.github.fabioticconi.alone.constants.Category;
 import com.github.fabioticconi.alone.systems.BumpSystem;
 import com.github.fabioticconi.alone.systems.HungerSystem;
 import com.github.fabioticconi.alone.systems.MapSystem;
+import com.github.fabioticconi.alone.systems.MemorySystem;
+import com.github.fabioticconi.alone.systems.SpatialIndexSystem;
 import com.github.fabioticconi.alone.utils.Coords;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,70 +49,147 @@ public class ScavengeBehaviour extends AbstractBehaviour
     ComponentMapper<Position> mPosition;
     ComponentMapper<Corpse>   mCorpse;
 
-    HungerSystem sHunger;
-    BumpSystem   sBump;
-    ActionSystem sAction;
-    MapSystem    map;
-
-    private Position pos;
-    private Position corpsePos;
-    private int      corpseId;
+    HungerSystem       sHunger;
+    BumpSystem         sBump;
+    SpatialIndexSystem sIndex;
+    MemorySystem       sMemory;
+    MapSystem          map;
 
     @Override
     protected void initialize()
     {
-        aspect = Aspect.all(Position.class, Speed.class, Sight.class, Hunger.class).build(world);
+        subscribe(Aspect.all(Position.class, Speed.class, Sight.class, Hunger.class));
     }
 
     @Override
-    public float evaluate(final int entityId)
+    public Context newContext()
     {
-        this.entityId = entityId;
+        return new State();
+    }
 
+    @Override
+    public float evaluate(final int entityId, final Context ctx)
+    {
         if (!interested(entityId))
             return 0f;
 
-        pos = mPosition.get(entityId);
+        final Position pos     = mPosition.get(entityId);
+        final Hunger   cHunger = mHunger.get(entityId);
 
-        final int sight = mSight.get(entityId).value;
+        ctx.pos = pos;
 
-        final Hunger cHunger = mHunger.get(entityId);
-        final float  hunger  = cHunger.value / cHunger.maxValue;
+        return score(entityId, pos.x, pos.y, mSight.get(entityId).value, cHunger.value / cHunger.maxValue,
+                     (State) ctx);
+    }
 
-        final IntBag visibleItems = map.getItems().getEntities(map.getVisibleCells(pos.x, pos.y, sight));
+    /**
+     * @param hunger how hungry the creature is, as a fraction of its maximum
+     */
+    float score(final int entityId, final int x, final int y, final int sight, final float hunger, final State state)
+    {
+        // corpses don't move: if it's still where we saw it, we don't need to look around
+        final int slot = sMemory.recall(entityId, Memory.CORPSE);
 
-        corpsePos = null;
+        int corpseId = slot < 0 ? -1 : sMemory.getEntity(entityId, slot);
 
-        for (int i = 0, size = visibleItems.size(); i < size; i++)
+        if (corpseId >= 0)
         {
-            final int itemId = visibleItems.get(i);
+            final Position lastSeen = state.corpse;
+
+            sMemory.getPosition(entityId, slot, lastSeen);
 
-            if (mCorpse.has(itemId))
+            if (!mCorpse.has(corpseId) || !lastSeen.equals(mPosition.get(corpseId)))
             {
-                corpsePos = mPosition.get(itemId);
-                corpseId = itemId;
+                // eaten, or taken away
+                sMemory.forget(entityId, slot);
 
-                break;
+                corpseId = -1;
+            }
+            else if (Coords.distancePseudoEuclidean(x, y, lastSeen.x, lastSeen.y) > sight)
+            {
+                corpseId = -1;
             }
         }
 
-        if (corpsePos == null)
-            return 0f;
+        if (corpseId < 0)
+        {
+            corpseId = sIndex.getNearest(Category.CORPSE, x, y, sight, id -> canReach(x, y, id));
+
+            if (corpseId < 0)
+                return 0f;
+
+            final Position p = mPosition.get(corpseId);
+
+            sMemory.remember(entityId, Memory.CORPSE, corpseId, p.x, p.y);
+        }
+
+        state.corpseId = corpseId;
+        state.corpse.set(mPosition.get(corpseId));
 
         // wherever the corpse is, we go eat it
         return hunger;
     }
 
+    boolean canReach(final int x, final int y, final int itemId)
+    {
+        final Position temp = mPosition.get(itemId);
+
+        // we might see it, but not be able to get there
+        return map.isVisible(x, y, temp.x, temp.y) && map.isReachable(x, y, temp.x, temp.y);
+    }
+
     @Override
-    public float update()
+    public float upperBound(final int entityId)
     {
-        // just eat if the corpse is anywhere near us
-        if (Coords.distanceChebyshev(pos.x, pos.y, corpsePos.x, corpsePos.y) < 2)
+        final Hunger cHunger = mHunger.get(entityId);
+
+        return cHunger == null ? 0f : cHunger.value / cHunger.maxValue;
+    }
+
+    @Override
+    public void evaluate(final Batch batch, final int from, final int to)
+    {
+        final Batch.Creatures c = batch.creatures;
+
+        for (int k = from; k < to; k++)
         {
-            return sAction.act(sHunger.eat(entityId, corpseId));
+            final int i        = batch.members[k];
+            final int entityId = c.entities[i];
+
+            // the score is the hunger, so no need to look for corpses if we are full
+            batch.scores[k] = c.hunger[i] > 0f && interested(entityId) ?
+                              score(entityId, c.x[i], c.y[i], c.sight[i], c.hunger[i], (State) batch.contexts[k]) :
+                              0f;
         }
+    }
 
-        // this calculates a path
-        return sBump.bumpAction(entityId, corpsePos);
+    @Override
+    public float update(final Context ctx)
+    {
+        final State state    = (State) ctx;
+        final int   entityId = ctx.entityId;
+
+        // walk up to the corpse and eat it, without thinking it over at every step
+        return sBump.walkThen(entityId, state.corpse, 1, sHunger.eat(entityId, state.corpseId));
+    }
+
+    /**
+     * The corpse we are going to eat, and where it is.
+     */
+    static class State extends Context
+    {
+        final Position corpse;
+        int            corpseId;
+
+        State()
+        {
+            corpse = new Position(0, 0);
+        }
+
+        @Override
+        protected void clear()
+        {
+            corpseId = -1;
+        }
     }
 }
@@ -24,12 +24,12 @@ import com.artemis.annotations.Wire;
 import com.github.fabioticconi.alone.components.Position;
 import com.github.fabioticconi.alone.components.Speed;
 import com.github.fabioticconi.alone.components.Underwater;
+import com.github.fabioticconi.alone.constants.Locomotion;
 import com.github.fabioticconi.alone.constants.Side;
 import com.github.fabioticconi.alone.constants.TerrainType;
 import com.github.fabioticconi.alone.systems.BumpSystem;
 import com.github.fabioticconi.alone.systems.MapSystem;
 
-import java.util.EnumSet;
 import java.util.Random;
 import java.util.Set;
 
@@ -39,46 +39,66 @@ import java.util.Set;
  */
 public class UnderwaterBehaviour extends AbstractBehaviour
 {
-    private final EnumSet<TerrainType> validCells = EnumSet.of(TerrainType.WATER);
     ComponentMapper<Position> mPos;
     MapSystem                 map;
     BumpSystem                sBump;
     @Wire
     Random r;
-    private Position curPos;
 
     @Override
     protected void initialize()
     {
-        aspect = Aspect.all(Position.class, Speed.class, Underwater.class).build(world);
+        subscribe(Aspect.all(Position.class, Speed.class, Underwater.class));
     }
 
     @Override
-    public float evaluate(final int entityId)
+    public float evaluate(final int entityId, final Context ctx)
     {
-        this.entityId = entityId;
-
         if (!interested(entityId))
             return 0f;
 
-        curPos = mPos.get(entityId);
+        final Position curPos = mPos.get(entityId);
 
-        final MapSystem.Cell c = map.get(curPos.x, curPos.y);
+        ctx.pos = curPos;
 
-        if (c.type != TerrainType.WATER)
-        {
-            // can't move at all if on solid ground
+        return score(curPos.x, curPos.y);
+    }
 
+    float score(final int x, final int y)
+    {
+        // can't move at all if on solid ground
+        if (map.get(x, y).type != TerrainType.WATER)
             return 0f;
-        }
 
         return 0.1f; // just baseline
     }
 
     @Override
-    public float update()
+    public float upperBound(final int entityId)
+    {
+        return 0.1f;
+    }
+
+    @Override
+    public void evaluate(final Batch batch, final int from, final int to)
     {
-        final Set<Side> exits = map.getFreeExits(curPos.x, curPos.y, validCells);
+        final Batch.Creatures c = batch.creatures;
+
+        for (int k = from; k < to; k++)
+        {
+            final int i = batch.members[k];
+
+            batch.scores[k] = interested(c.entities[i]) ? score(c.x[i], c.y[i]) : 0f;
+        }
+    }
+
+    @Override
+    public float update(final Context ctx)
+    {
+        final int      entityId = ctx.entityId;
+        final Position curPos   = ctx.pos;
+
+        final Set<Side> exits = map.getLayer(Locomotion.WATER).getFreeExits(curPos.x, curPos.y);
 
         if (exits.isEmpty())
             return 0f;
@@ -47,14 +47,12 @@ public class WanderBehaviour extends AbstractBehaviour
     @Override
     protected void initialize()
     {
-        aspect = Aspect.all(Position.class, Speed.class).build(world);
+        subscribe(Aspect.all(Position.class, Speed.class));
     }
 
     @Override
-    public float evaluate(final int entityId)
+    public float evaluate(final int entityId, final Context ctx)
     {
-        this.entityId = entityId;
-
         if (!interested(entityId))
             return 0f;
 
@@ -63,9 +61,25 @@ public class WanderBehaviour extends AbstractBehaviour
     }
 
     @Override
-    public float update()
+    public float upperBound(final int entityId)
+    {
+        return 0.01f;
+    }
+
+    @Override
+    public void evaluate(final Batch batch, final int from, final int to)
+    {
+        for (int k = from; k < to; k++)
+        {
+            batch.scores[k] = interested(batch.getEntity(k)) ? 0.01f : 0f;
+        }
+    }
+
+    @Override
+    public float update(final Context ctx)
     {
-        final Position pos = mPosition.get(entityId);
+        final int      entityId = ctx.entityId;
+        final Position pos      = mPosition.get(entityId);
 
         // System.out.println(entityId + " " + pos);
 
@@ -18,6 +18,7 @@
 package com.github.fabioticconi.alone.components;
 
 import com.artemis.Component;
+import com.github.fabioticconi.alone.behaviours.AIProfile;
 import com.github.fabioticconi.alone.behaviours.Behaviour;
 
 /**
@@ -29,10 +30,16 @@ public class AI extends Component
 
     public String[] behaviours;
 
+    // the behaviours above, ready to be used
+    public AIProfile profile;
+
     public Behaviour activeBehaviour;
     public float     score;
     public float     time;
 
+    // level of detail the AI last ticked at: the further from the player, the higher
+    public int lod;
+
     public AI()
     {
         behaviours = new String[0];
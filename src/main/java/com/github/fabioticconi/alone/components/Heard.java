@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.components;
+
+import com.artemis.Component;
+
+/**
+ * The loudest noise a creature has heard since its AI last ran.
+ * <p>
+ * Author: Fabio Ticconi
+ * Date: 18/10/26
+ */
+public class Heard extends Component
+{
+    // where the noise came from
+    public int x;
+    public int y;
+
+    // how loud it was when it got to us, between 0 and 1
+    public float intensity;
+
+    public Heard()
+    {
+
+    }
+
+    public Heard set(final int x, final int y, final float intensity)
+    {
+        this.x = x;
+        this.y = y;
+        this.intensity = intensity;
+
+        return this;
+    }
+}
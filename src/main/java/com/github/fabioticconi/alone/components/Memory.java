@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.components;
+
+import com.artemis.Component;
+
+/**
+ * What a creature has recently seen: a small ring of (kind, entity, position, time) entries,
+ * the oldest being overwritten first.
+ * <p>
+ * Author: Fabio Ticconi
+ * Date: 18/10/26
+ */
+public class Memory extends Component
+{
+    public static final int SIZE = 8;
+
+    // kinds of things worth remembering
+    public static final byte PREY   = 0;
+    public static final byte CORPSE = 1;
+    public static final byte GRASS  = 2;
+
+    public final byte[]  kinds;
+    public final int[]   entities;
+    public final long[]  positions;
+    public final float[] times;
+
+    public int head;
+    public int size;
+
+    public Memory()
+    {
+        kinds = new byte[SIZE];
+        entities = new int[SIZE];
+        positions = new long[SIZE];
+        times = new float[SIZE];
+    }
+}
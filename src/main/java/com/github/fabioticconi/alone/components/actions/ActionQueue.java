@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.components.actions;
+
+import com.artemis.Component;
+
+import java.util.ArrayDeque;
+
+/**
+ * What an entity is going to do after its current {@link Action}, in order.
+ * <p>
+ * Author: Fabio Ticconi
+ * Date: 18/10/26
+ */
+public class ActionQueue extends Component
+{
+    public final ArrayDeque<ActionContext> steps;
+
+    public ActionQueue()
+    {
+        steps = new ArrayDeque<>();
+    }
+
+    /**
+     * Takes the next step that has to wait, doing right away those that don't. A step is checked (and
+     * so decided, for those that depend on the situation) only when it's its turn.
+     *
+     * @return the step to start, or null if the plan is over or a step is no longer possible
+     */
+    public ActionContext next()
+    {
+        ActionContext next;
+        while ((next = steps.poll()) != null)
+        {
+            // something has changed since we made the plan
+            if (!next.tryAction())
+                break;
+
+            if (next.delay > 0f)
+                return next;
+
+            next.doAction();
+        }
+
+        steps.clear();
+
+        return null;
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.constants;
+
+import com.artemis.Component;
+import com.github.fabioticconi.alone.components.Carnivore;
+import com.github.fabioticconi.alone.components.Corpse;
+import com.github.fabioticconi.alone.components.Herbivore;
+import com.github.fabioticconi.alone.components.Wearable;
+
+/**
+ * Kinds of entities that {@link com.github.fabioticconi.alone.systems.SpatialIndexSystem} keeps
+ * a separate spatial index for, so that "nearest prey" never looks at trees, rocks or predators.
+ * <p>
+ * Author: Fabio Ticconi
+ * Date: 18/10/26
+ */
+public enum Category
+{
+    HERBIVORE(Herbivore.class, false),
+    CARNIVORE(Carnivore.class, false),
+    CORPSE(Corpse.class, true),
+    WEARABLE(Wearable.class, true);
+
+    // entities with a Position and this component belong to the category
+    public final Class<? extends Component> type;
+    // whether they lie in the item grid, rather than in the obstacle grid
+    public final boolean                    item;
+
+    Category(final Class<? extends Component> type, final boolean item)
+    {
+        this.type = type;
+        this.item = item;
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.constants;
+
+import java.util.EnumSet;
+
+/**
+ * How a creature gets around: which terrain it can move through, and whether some terrain is harder
+ * than other. Each has its own navigation layer in {@link com.github.fabioticconi.alone.systems.MapSystem}.
+ * <p>
+ * Author: Fabio Ticconi
+ * Date: 18/10/26
+ */
+public enum Locomotion
+{
+    // walks anywhere, but swimming and climbing are slow
+    LAND(EnumSet.allOf(TerrainType.class), true),
+    // cannot leave the water
+    WATER(EnumSet.of(TerrainType.WATER), false);
+
+    public final EnumSet<TerrainType> terrain;
+    public final boolean              terrainCost;
+
+    Locomotion(final EnumSet<TerrainType> terrain, final boolean terrainCost)
+    {
+        this.terrain = terrain;
+        this.terrainCost = terrainCost;
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.constants;
+
+import com.github.fabioticconi.alone.utils.Coords;
+
+/**
+ * Ways of measuring the distance between two cells, see {@link Coords}.
+ * <p>
+ * Author: Fabio Ticconi
+ * Date: 18/10/26
+ */
+public enum Metric
+{
+    CHEBYSHEV,
+    EUCLIDEAN,
+    BLOCK;
+
+    /**
+     * Whatever the metric, a cell in the square ring of radius d around (x1,y1) is at least d away.
+     */
+    public float distance(final int x1, final int y1, final int x2, final int y2)
+    {
+        switch (this)
+        {
+            case CHEBYSHEV:
+                return Coords.distanceChebyshev(x1, y1, x2, y2);
+
+            case BLOCK:
+                return Coords.distanceBlock(x1, y1, x2, y2);
+
+            default:
+                return Coords.distanceEuclidean(x1, y1, x2, y2);
+        }
+    }
+}
@@ -30,4 +30,12 @@ public class Options
 
     public static int MAP_SIZE_X = 1024;
     public static int MAP_SIZE_Y = 1024;
+
+    public static Pathfinding PATHFINDING = Pathfinding.JPS;
+
+    // weighted searches round movement costs to a multiple of this, so that the map has uniform regions
+    public static float PATH_COST_QUANTUM = 0.25f;
+
+    // how many recent paths each navigation layer remembers
+    public static int PATH_CACHE_SIZE = 512;
 }
@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.constants;
+
+/**
+ * Path planners that can be selected for {@link com.github.fabioticconi.alone.systems.MapSystem#getPath}.
+ * <p>
+ * Author: Fabio Ticconi
+ * Date: 18/10/26
+ */
+public enum Pathfinding
+{
+    // rlforj's AStar, uniform cost
+    ASTAR,
+    // Jump Point Search, uniform cost
+    JPS,
+    // Jump Point Search that only jumps within regions of the same movement cost
+    WEIGHTED_JPS
+}
@@ -97,6 +97,24 @@ public enum Side
         return getSideAt(x, y);
     }
 
+    /**
+     * Rotates clockwise by the given number of 45 degrees steps (counter-clockwise if negative).
+     * HERE stays HERE.
+     *
+     * @param steps
+     * @return the rotated side
+     */
+    public Side rotate(final int steps)
+    {
+        if (this == HERE)
+            return HERE;
+
+        final Side[] sides = values();
+
+        // HERE is at index 0, the eight directions follow clockwise from N
+        return sides[Math.floorMod(ordinal() - 1 + steps, 8) + 1];
+    }
+
     public Side inverse()
     {
         switch (this)
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.map;
+
+import rlforj.IBoard;
+
+/**
+ * Frozen copy of the walkability (and, optionally, the movement costs) of a square window of the map.
+ * <p>
+ * It's captured on the game thread and not modified while a planner is using it, so a planner running
+ * on another thread always sees a consistent map, whatever happens in the meantime. Everything outside
+ * the window is considered blocked.
+ * <p>
+ * Once the planner is done with it, the snapshot can be captured again: the arrays are only reallocated
+ * if the new window is larger than any of the previous ones.
+ * <p>
+ * Author: Fabio Ticconi
+ * Date: 18/10/26
+ */
+public class BoardSnapshot implements IBoard, CostFunction
+{
+    int       ox;
+    int       oy;
+    int       side;
+    boolean   withCosts;
+    boolean[] blocked;
+    float[]   costs;
+
+    /**
+     * Copies the square of the given radius around (x,y), replacing whatever was there before.
+     *
+     * @param board the live map
+     * @param cost  the cost function, or null if only walkability is needed
+     * @return this snapshot
+     */
+    public BoardSnapshot capture(final IBoard board,
+                                 final CostFunction cost,
+                                 final int x,
+                                 final int y,
+                                 final int radius)
+    {
+        ox = x - radius;
+        oy = y - radius;
+        side = 2 * radius + 1;
+        withCosts = cost != null;
+
+        final int cells = side * side;
+
+        if (blocked == null || blocked.length < cells)
+            blocked = new boolean[cells];
+
+        if (withCosts && (costs == null || costs.length < cells))
+            costs = new float[cells];
+
+        int i = 0;
+        for (int xi = ox; xi < ox + side; xi++)
+        {
+            for (int yi = oy; yi < oy + side; yi++, i++)
+            {
+                if (!board.contains(xi, yi))
+                {
+                    blocked[i] = true;
+                    continue;
+                }
+
+                blocked[i] = board.blocksStep(xi, yi);
+
+                if (withCosts)
+                    costs[i] = cost.cost(xi, yi);
+            }
+        }
+
+        return this;
+    }
+
+    @Override
+    public boolean contains(final int x, final int y)
+    {
+        return x >= ox && y >= oy && x < ox + side && y < oy + side;
+    }
+
+    @Override
+    public boolean blocksLight(final int x, final int y)
+    {
+        return blocksStep(x, y);
+    }
+
+    @Override
+    public boolean blocksStep(final int x, final int y)
+    {
+        return !contains(x, y) || blocked[(x - ox) * side + (y - oy)];
+    }
+
+    @Override
+    public void visit(final int x, final int y)
+    {
+
+    }
+
+    @Override
+    public float cost(final int x, final int y)
+    {
+        if (!withCosts || !contains(x, y))
+            return 1f;
+
+        return costs[(x - ox) * side + (y - oy)];
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.map;
+
+import com.github.fabioticconi.alone.utils.Coords;
+import com.github.fabioticconi.alone.utils.SingleGrid;
+
+/**
+ * Ring buffer of the most recently modified cells, each with an increasing sequence number.
+ * <p>
+ * Incremental algorithms remember the sequence number they have last seen, and on the next update
+ * only look at what changed since then. If they fall too far behind, the oldest changes are overwritten
+ * and they have to start over.
+ * <p>
+ * Author: Fabio Ticconi
+ * Date: 18/10/26
+ */
+public class ChangeLog implements SingleGrid.Listener
+{
+    final long[] cells;
+    final int    mask;
+
+    long head;
+
+    /**
+     * @param capacity how many changes are remembered, rounded up to a power of two
+     */
+    public ChangeLog(final int capacity)
+    {
+        final int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+
+        cells = new long[size];
+        mask = size - 1;
+    }
+
+    @Override
+    public void changed(final int x, final int y)
+    {
+        cells[(int) (head++ & mask)] = Coords.packCoords(x, y);
+    }
+
+    /**
+     * @return the sequence number the next change will have
+     */
+    public long head()
+    {
+        return head;
+    }
+
+    /**
+     * @param seq
+     * @return true if the change with that sequence number is still in the log
+     */
+    public boolean has(final long seq)
+    {
+        return seq < head && seq >= head - cells.length;
+    }
+
+    /**
+     * @param seq
+     * @return the packed coordinates of the cell that changed
+     */
+    public long get(final long seq)
+    {
+        return cells[(int) (seq & mask)];
+    }
+}
@@ -0,0 +1,503 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.map;
+
+import com.artemis.utils.IntBag;
+import com.github.fabioticconi.alone.constants.Side;
+
+import java.util.Arrays;
+
+/**
+ * Labels the walkable cells of the map with the connected component (8-way) they belong to,
+ * so that asking if a cell can be reached from another one is immediate.
+ * <p>
+ * The labelling is computed on the first query, then kept up to date one cell at a time:
+ * <ul>
+ * <li>a cell becoming walkable merges its neighbouring components (union-find on the labels);</li>
+ * <li>a cell becoming blocked can only split its component if its walkable neighbours are not already
+ * connected around it. Only then, a breadth-first search is started from each group of neighbours,
+ * one step each in turn, until they meet or all but one have run out of cells. Those get a new label,
+ * so the cost depends on the size of the smaller pieces, not of the whole component.</li>
+ * </ul>
+ * <p>
+ * Author: Fabio Ticconi
+ * Date: 18/10/26
+ */
+public class ConnectedComponents
+{
+    static final Side[] RING = { Side.N, Side.NE, Side.E, Side.SE, Side.S, Side.SW, Side.W, Side.NW };
+
+    final int           width;
+    final int           height;
+    final CellPredicate walkable;
+
+    // component id of each cell (-1 if blocked), and the union-find forest of component ids.
+    // labels is null until the first query
+    int[] labels;
+    int[] parents;
+    int   ids;
+
+    // split detection: which search (and when) has visited a cell, and each search's queue and visited list
+    int[]          visited;
+    int            epoch;
+    final IntBag[] queues;
+    final IntBag[] seen;
+    final int[]    heads;
+    final int[]    group;
+
+    public ConnectedComponents(final int width, final int height, final CellPredicate walkable)
+    {
+        this.width = width;
+        this.height = height;
+        this.walkable = walkable;
+
+        // at most four separate groups of neighbours can surround a cell
+        queues = new IntBag[4];
+        seen = new IntBag[4];
+        for (int i = 0; i < 4; i++)
+        {
+            queues[i] = new IntBag(64);
+            seen[i] = new IntBag(64);
+        }
+        heads = new int[4];
+        group = new int[4];
+    }
+
+    /**
+     * Computes the labelling, if it hasn't been already. Queries only read it afterwards, so they can
+     * run concurrently as long as {@link #update(int, int)} is not called at the same time: the
+     * union-find forest is only compressed while updating.
+     */
+    public void prepare()
+    {
+        if (labels == null)
+            build();
+    }
+
+    /**
+     * Forgets the labelling: it will be computed again at the next query.
+     */
+    public void invalidate()
+    {
+        labels = null;
+        visited = null;
+    }
+
+    /**
+     * @param x1
+     * @param y1
+     * @param x2
+     * @param y2
+     * @return true if there's a walkable path between the two cells. If either of them is blocked,
+     * it's enough to reach one of its neighbours (eg, to bump into it)
+     */
+    public boolean connected(final int x1, final int y1, final int x2, final int y2)
+    {
+        if (!contains(x1, y1) || !contains(x2, y2))
+            return false;
+
+        if (labels == null)
+            build();
+
+        final int c1 = component(x1, y1);
+        final int c2 = component(x2, y2);
+
+        if (c1 >= 0 && c2 >= 0)
+            return c1 == c2;
+
+        // at least one is blocked, let's compare the components around them
+        for (final Side s1 : Side.values())
+        {
+            final int a = component(x1 + s1.x, y1 + s1.y);
+
+            if (a < 0)
+                continue;
+
+            for (final Side s2 : Side.values())
+            {
+                if (a == component(x2 + s2.x, y2 + s2.y))
+                    return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the component of the cell, or -1 if it's blocked
+     */
+    public int component(final int x, final int y)
+    {
+        if (!contains(x, y))
+            return -1;
+
+        if (labels == null)
+            build();
+
+        final int label = labels[x * height + y];
+
+        return label < 0 ? -1 : find(label);
+    }
+
+    /**
+     * Must be called when the walkability of a cell might have changed.
+     *
+     * @param x
+     * @param y
+     * @return true if the walkability has actually changed (or we can't tell, because the labelling
+     * hasn't been computed yet)
+     */
+    public boolean update(final int x, final int y)
+    {
+        if (!contains(x, y))
+            return false;
+
+        // nothing to maintain yet
+        if (labels == null)
+            return true;
+
+        final boolean open = walkable.test(x, y);
+
+        if (open == labels[x * height + y] >= 0)
+            return false;
+
+        if (open)
+            opened(x, y);
+        else
+            closed(x, y);
+
+        return true;
+    }
+
+    void build()
+    {
+        labels = new int[width * height];
+        visited = new int[width * height];
+        parents = new int[256];
+        ids = 0;
+        epoch = 0;
+
+        Arrays.fill(labels, -1);
+
+        final IntBag queue = queues[0];
+
+        for (int x = 0; x < width; x++)
+        {
+            for (int y = 0; y < height; y++)
+            {
+                if (labels[x * height + y] >= 0 || !walkable.test(x, y))
+                    continue;
+
+                final int id = newId();
+
+                labels[x * height + y] = id;
+                queue.clear();
+                queue.add(x * height + y);
+
+                for (int head = 0; head < queue.size(); head++)
+                {
+                    final int cell = queue.get(head);
+                    final int cx   = cell / height;
+                    final int cy   = cell % height;
+
+                    for (final Side side : RING)
+                    {
+                        final int nx = cx + side.x;
+                        final int ny = cy + side.y;
+
+                        if (!contains(nx, ny) || labels[nx * height + ny] >= 0 || !walkable.test(nx, ny))
+                            continue;
+
+                        labels[nx * height + ny] = id;
+                        queue.add(nx * height + ny);
+                    }
+                }
+            }
+        }
+
+        queue.clear();
+    }
+
+    void opened(final int x, final int y)
+    {
+        int root = -1;
+
+        for (final Side side : RING)
+        {
+            final int nx = x + side.x;
+            final int ny = y + side.y;
+
+            if (!isOpen(nx, ny))
+                continue;
+
+            final int c = compress(labels[nx * height + ny]);
+
+            if (c == root)
+                continue;
+
+            if (root < 0)
+                root = c;
+            else
+                parents[c] = root;
+        }
+
+        labels[x * height + y] = root < 0 ? newId() : root;
+    }
+
+    void closed(final int x, final int y)
+    {
+        labels[x * height + y] = -1;
+
+        // group the walkable neighbours that are connected to each other without going through this cell
+        final int[] ringGroup = new int[8];
+        int         groups    = 0;
+
+        for (int i = 0; i < 8; i++)
+        {
+            ringGroup[i] = isOpen(x + RING[i].x, y + RING[i].y) ? i : -1;
+        }
+
+        for (int i = 0; i < 8; i++)
+        {
+            if (ringGroup[i] < 0)
+                continue;
+
+            // the next cell around is always adjacent. Orthogonal neighbours (even positions)
+            // also touch the following orthogonal one, diagonally
+            mergeRing(ringGroup, i, (i + 1) % 8);
+
+            if (i % 2 == 0)
+                mergeRing(ringGroup, i, (i + 2) % 8);
+        }
+
+        Arrays.fill(group, -1);
+
+        for (int i = 0; i < 8; i++)
+        {
+            if (ringGroup[i] == i)
+            {
+                final int cell = (x + RING[i].x) * height + y + RING[i].y;
+
+                queues[groups].clear();
+                queues[groups].add(cell);
+                seen[groups].clear();
+                seen[groups].add(cell);
+                heads[groups] = 0;
+                group[groups] = groups;
+                groups++;
+            }
+        }
+
+        if (groups > 1)
+            split(groups);
+    }
+
+    void mergeRing(final int[] ringGroup, final int a, final int b)
+    {
+        if (ringGroup[a] < 0 || ringGroup[b] < 0 || ringGroup[a] == ringGroup[b])
+            return;
+
+        final int from = Math.max(ringGroup[a], ringGroup[b]);
+        final int to   = Math.min(ringGroup[a], ringGroup[b]);
+
+        for (int i = 0; i < 8; i++)
+        {
+            if (ringGroup[i] == from)
+                ringGroup[i] = to;
+        }
+    }
+
+    void split(final int searches)
+    {
+        epoch++;
+
+        for (int s = 0; s < searches; s++)
+        {
+            visited[queues[s].get(0)] = epoch * 4 + s;
+        }
+
+        // one step per search in turn, until they have all met or only one is left going
+        while (true)
+        {
+            int groups  = 0;
+            int running = 0;
+
+            for (int s = 0; s < searches; s++)
+            {
+                if (group[s] != s)
+                    continue;
+
+                groups++;
+
+                if (groupRunning(s, searches))
+                    running++;
+            }
+
+            if (groups == 1 || running <= 1)
+                break;
+
+            for (int s = 0; s < searches; s++)
+            {
+                if (heads[s] < queues[s].size())
+                    step(s);
+            }
+        }
+
+        // the groups that have run out of cells are separate pieces. If they all have, we keep the
+        // old label for the first one
+        int kept = -1;
+        for (int s = 0; s < searches; s++)
+        {
+            if (group[s] == s && groupRunning(s, searches))
+                kept = s;
+        }
+
+        for (int s = 0; s < searches; s++)
+        {
+            if (group[s] != s || s == kept)
+                continue;
+
+            if (kept < 0)
+            {
+                kept = s;
+                continue;
+            }
+
+            final int id = newId();
+
+            for (int t = 0; t < searches; t++)
+            {
+                if (group[t] != s)
+                    continue;
+
+                final IntBag cells = seen[t];
+
+                for (int i = 0, size = cells.size(); i < size; i++)
+                {
+                    labels[cells.get(i)] = id;
+                }
+            }
+        }
+
+        for (int s = 0; s < searches; s++)
+        {
+            queues[s].clear();
+            seen[s].clear();
+        }
+    }
+
+    boolean groupRunning(final int g, final int searches)
+    {
+        for (int s = 0; s < searches; s++)
+        {
+            if (group[s] == g && heads[s] < queues[s].size())
+                return true;
+        }
+
+        return false;
+    }
+
+    void step(final int s)
+    {
+        final int cell = queues[s].get(heads[s]++);
+        final int cx   = cell / height;
+        final int cy   = cell % height;
+
+        for (final Side side : RING)
+        {
+            final int nx = cx + side.x;
+            final int ny = cy + side.y;
+
+            if (!isOpen(nx, ny))
+                continue;
+
+            final int next = nx * height + ny;
+            final int mark = visited[next];
+
+            if (mark / 4 == epoch)
+            {
+                // another search got here: they are in the same piece
+                final int other = group[mark % 4];
+
+                if (other != group[s])
+                {
+                    final int from = Math.max(other, group[s]);
+                    final int to   = Math.min(other, group[s]);
+
+                    for (int t = 0; t < group.length; t++)
+                    {
+                        if (group[t] == from)
+                            group[t] = to;
+                    }
+                }
+
+                continue;
+            }
+
+            visited[next] = epoch * 4 + s;
+            queues[s].add(next);
+            seen[s].add(next);
+        }
+    }
+
+    boolean isOpen(final int x, final int y)
+    {
+        return contains(x, y) && labels[x * height + y] >= 0;
+    }
+
+    /**
+     * Read-only, so that queries can run in parallel.
+     */
+    int find(int id)
+    {
+        while (parents[id] != id)
+            id = parents[id];
+
+        return id;
+    }
+
+    /**
+     * Like {@link #find(int)}, but with path halving: only while updating.
+     */
+    int compress(int id)
+    {
+        while (parents[id] != id)
+        {
+            parents[id] = parents[parents[id]];
+            id = parents[id];
+        }
+
+        return id;
+    }
+
+    int newId()
+    {
+        if (ids == parents.length)
+            parents = Arrays.copyOf(parents, 2 * ids);
+
+        parents[ids] = ids;
+
+        return ids++;
+    }
+
+    boolean contains(final int x, final int y)
+    {
+        return x >= 0 && y >= 0 && x < width && y < height;
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.map;
+
+/**
+ * Movement cost of entering a cell. Must never be below the minimum cost given to the planner
+ * using it, or the heuristic would stop being admissible.
+ * <p>
+ * Author: Fabio Ticconi
+ * Date: 18/10/26
+ */
+@FunctionalInterface
+public interface CostFunction
+{
+    float cost(int x, int y);
+}
@@ -0,0 +1,632 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.map;
+
+import com.github.fabioticconi.alone.utils.Coords;
+import com.github.fabioticconi.alone.utils.IntMinHeap;
+import rlforj.math.Point;
+
+/**
+ * Moving Target D* Lite (Sun, Yeoh and Koenig, 2010) for a searcher following a moving target.
+ * <p>
+ * The search runs forward, from the searcher to the target, and its state is kept between calls as a
+ * tree of shortest paths rooted at the searcher. Between two calls:
+ * <ul>
+ * <li>the target moving only changes the heuristic, which is taken care of by the key modifier,
+ * as D* Lite does for its (backward) searcher;</li>
+ * <li>the searcher moving re-roots the tree: the subtree hanging from the new position is still correct
+ * (its costs are just off by a constant), and only the rest of the tree is thrown away;</li>
+ * <li>the cells in the map {@link ChangeLog} are updated as in D* Lite.</li>
+ * </ul>
+ * The search is repaired from there, and the first step is read from the tree.
+ * <p>
+ * Only the static map is considered (terrain and things like trees), so the change log doesn't have to
+ * follow every creature: getting around them is up to whoever takes the step.
+ * <p>
+ * The search is confined to a square window centred on where the searcher was when the state was
+ * (re)built, twice as large as the given radius so that both can move around for a while.
+ * If either leaves it, or the change log has been overwritten, the state is built from scratch.
+ * <p>
+ * Author: Fabio Ticconi
+ * Date: 18/10/26
+ */
+public class DStarLite
+{
+    static final float SQRT2 = 1.4142135f;
+    static final float INF   = Float.POSITIVE_INFINITY;
+
+    // keys are sums of many floats, so two keys that should be the same might differ a little.
+    // The key modifier and the cost of the root only grow, so we start over before they get too large
+    static final float EPSILON = 1e-3f;
+    static final float MAX_KM  = 1024f;
+
+    final CellPredicate passable;
+    final CostFunction  cost;
+    final float         minCost;
+
+    final IntMinHeap open;
+    final int[]      coords;
+
+    // search window
+    int ox, oy, side;
+
+    // searcher (root of the tree) and target
+    int sx, sy, gx, gy;
+
+    float km;
+
+    // node data, indexed by window position, valid only if its stamp matches the current generation.
+    // k1 and k2 are the key the node has been queued with, parent is where its rhs comes from
+    float[]   g;
+    float[]   rhs;
+    float[]   k1;
+    float[]   k2;
+    int[]     parent;
+    boolean[] queued;
+    int[]     stamp;
+    int       generation;
+
+    // all the nodes of the current generation, and scratch space to re-root the tree
+    int[]     touched;
+    int       touchedSize;
+    boolean[] subtree;
+    int[]     scratch;
+
+    ChangeLog changes;
+    long      seen;
+
+    int expanded;
+    int rebuilds;
+
+    /**
+     * @param passable true for the cells that can be walked into, regardless of creatures
+     * @param cost     the cost of entering a cell, or null for uniform costs
+     * @param minCost  the smallest cost the function can return
+     */
+    public DStarLite(final CellPredicate passable, final CostFunction cost, final float minCost)
+    {
+        this.passable = passable;
+        this.cost = cost;
+        this.minCost = minCost;
+
+        open = new IntMinHeap(256);
+        coords = new int[2];
+    }
+
+    /**
+     * @return how many nodes were expanded during the last call (not counting those that were only given a new key)
+     */
+    public int getExpanded()
+    {
+        return expanded;
+    }
+
+    /**
+     * @return how many times the search state was built from scratch
+     */
+    public int getRebuilds()
+    {
+        return rebuilds;
+    }
+
+    /**
+     * Updates the search with the new positions and whatever changed on the board since the last call,
+     * and returns the first step of the shortest path from the start to the goal.
+     *
+     * @param changes the log of changes of the board
+     * @param radius  how far from the start the path is allowed to go (the window is twice as large)
+     * @return the next cell, or null if there is no path (or start and goal are the same)
+     */
+    public Point next(final ChangeLog changes,
+                      final int startX,
+                      final int startY,
+                      final int goalX,
+                      final int goalY,
+                      final int radius)
+    {
+        expanded = 0;
+
+        if (startX == goalX && startY == goalY)
+            return null;
+
+        if (changes != this.changes ||
+            g == null ||
+            !inWindow(startX, startY) ||
+            !inWindow(goalX, goalY) ||
+            km > MAX_KM ||
+            (seen < changes.head() && !changes.has(seen)) ||
+            !reroot(startX, startY))
+        {
+            rebuild(changes, startX, startY, goalX, goalY, radius);
+
+            if (!inWindow(goalX, goalY))
+                return null;
+        }
+        else
+        {
+            update(goalX, goalY);
+        }
+
+        computeShortestPath();
+
+        return firstStep();
+    }
+
+    void rebuild(final ChangeLog changes,
+                 final int startX,
+                 final int startY,
+                 final int goalX,
+                 final int goalY,
+                 final int radius)
+    {
+        rebuilds++;
+
+        this.changes = changes;
+        seen = changes.head();
+
+        ox = startX - 2 * radius;
+        oy = startY - 2 * radius;
+        side = 4 * radius + 1;
+
+        final int cells = side * side;
+
+        if (g == null || g.length < cells)
+        {
+            g = new float[cells];
+            rhs = new float[cells];
+            k1 = new float[cells];
+            k2 = new float[cells];
+            parent = new int[cells];
+            queued = new boolean[cells];
+            stamp = new int[cells];
+            touched = new int[cells];
+            subtree = new boolean[cells];
+            scratch = new int[cells];
+            generation = 0;
+        }
+
+        generation++;
+        touchedSize = 0;
+        open.clear();
+
+        sx = startX;
+        sy = startY;
+        gx = goalX;
+        gy = goalY;
+        km = 0f;
+
+        if (!inWindow(gx, gy))
+            return;
+
+        final int start = index(sx, sy);
+        touch(start);
+        rhs[start] = 0f;
+        enqueue(start);
+    }
+
+    /**
+     * Makes the new position of the searcher the root of the search tree, keeping its subtree as it is and
+     * deleting everything else. The costs in the subtree are all off by the cost of the new root, which
+     * doesn't matter as long as it's the same for all nodes.
+     * <p>
+     * On a grid there are usually many shortest paths to each node, so rather than following the parents
+     * we keep all nodes that can get their rhs through the new root, and give them a parent in the subtree.
+     *
+     * @return false if the state must be rebuilt instead
+     */
+    boolean reroot(final int startX, final int startY)
+    {
+        if (startX == sx && startY == sy)
+            return true;
+
+        final int root = index(startX, startY);
+
+        // not in the tree (eg, the searcher was pushed away from its path), or the cost is getting too large
+        if (stamp[root] != generation || g[root] == INF || g[root] != rhs[root] || g[root] > MAX_KM)
+            return false;
+
+        sx = startX;
+        sy = startY;
+        parent[root] = -1;
+
+        for (int i = 0; i < touchedSize; i++)
+            subtree[touched[i]] = false;
+
+        // breadth-first from the root, only along edges that give their rhs to the next node
+        int head = 0;
+        int tail = 0;
+
+        subtree[root] = true;
+        scratch[tail++] = root;
+
+        while (head < tail)
+        {
+            final int node = scratch[head++];
+            final int x    = ox + node / side;
+            final int y    = oy + node % side;
+
+            if (g[node] == INF || !passable(x, y))
+                continue;
+
+            for (int dx = -1; dx <= 1; dx++)
+            {
+                for (int dy = -1; dy <= 1; dy++)
+                {
+                    final int nx = x + dx;
+                    final int ny = y + dy;
+
+                    if ((dx == 0 && dy == 0) || !inWindow(nx, ny))
+                        continue;
+
+                    final int next = index(nx, ny);
+
+                    if (stamp[next] != generation || subtree[next] || rhs[next] == INF || !passable(nx, ny))
+                        continue;
+
+                    if (Math.abs(g[node] + edgeCost(dx, dy, nx, ny) - rhs[next]) <= EPSILON)
+                    {
+                        subtree[next] = true;
+                        parent[next] = node;
+                        scratch[tail++] = next;
+                    }
+                }
+            }
+        }
+
+        // the nodes in the subtree are kept at the front of the touched list, the others are deleted
+        int kept    = 0;
+        int deleted = 0;
+
+        for (int i = 0; i < touchedSize; i++)
+        {
+            final int node = touched[i];
+
+            if (subtree[node])
+            {
+                touched[kept++] = node;
+                continue;
+            }
+
+            g[node] = INF;
+            rhs[node] = INF;
+            parent[node] = -1;
+            queued[node] = false;
+
+            scratch[deleted++] = node;
+        }
+
+        // deleted nodes stay touched, they just start over from their neighbours in the subtree
+        System.arraycopy(scratch, 0, touched, kept, deleted);
+
+        for (int i = kept; i < touchedSize; i++)
+            updateVertex(touched[i]);
+
+        return true;
+    }
+
+    void update(final int goalX, final int goalY)
+    {
+        if (goalX != gx || goalY != gy)
+        {
+            // all keys in the open list are now lower bounds, as in D* Lite when the searcher moves
+            km += heuristic(gx, gy, goalX, goalY);
+            gx = goalX;
+            gy = goalY;
+        }
+
+        for (final long head = changes.head(); seen < head; seen++)
+        {
+            Coords.unpackCoords(changes.get(seen), coords);
+
+            cellChanged(coords[0], coords[1]);
+        }
+    }
+
+    /**
+     * A cell has changed its walkability or cost, so all edges from and to it might have changed.
+     */
+    void cellChanged(final int x, final int y)
+    {
+        for (int dx = -1; dx <= 1; dx++)
+        {
+            for (int dy = -1; dy <= 1; dy++)
+            {
+                if (inWindow(x + dx, y + dy))
+                    updateVertex(index(x + dx, y + dy));
+            }
+        }
+    }
+
+    void computeShortestPath()
+    {
+        final int goal = index(gx, gy);
+        touch(goal);
+
+        int u;
+        while ((u = top()) >= 0)
+        {
+            final float goalK2 = Math.min(g[goal], rhs[goal]);
+            final float goalK1 = goalK2 + km;
+
+            // keys that only differ because of rounding count as the same
+            if (rhs[goal] == g[goal] &&
+                (k1[u] > goalK1 + EPSILON || (k1[u] >= goalK1 - EPSILON && k2[u] >= goalK2 - EPSILON)))
+                break;
+
+            open.pop();
+            queued[u] = false;
+
+            final float oldK1 = k1[u];
+            final float oldK2 = k2[u];
+            final float newK2 = Math.min(g[u], rhs[u]);
+            final float newK1 = newK2 + heuristic(ox + u / side, oy + u % side, gx, gy) + km;
+
+            if (less(oldK1, oldK2, newK1, newK2))
+            {
+                // the target has moved since this node was queued, so it only needs a new key
+                enqueue(u);
+                continue;
+            }
+
+            expanded++;
+
+            if (g[u] > rhs[u])
+            {
+                g[u] = rhs[u];
+
+                relaxSuccessors(u);
+            }
+            else
+            {
+                g[u] = INF;
+
+                updateVertex(u);
+                successorsChanged(u);
+            }
+        }
+    }
+
+    /**
+     * The node has a new, lower cost: its successors might get a better path through it.
+     */
+    void relaxSuccessors(final int node)
+    {
+        final int x    = ox + node / side;
+        final int y    = oy + node % side;
+        final int root = index(sx, sy);
+
+        if (!passable(x, y))
+            return;
+
+        for (int dx = -1; dx <= 1; dx++)
+        {
+            for (int dy = -1; dy <= 1; dy++)
+            {
+                final int nx = x + dx;
+                final int ny = y + dy;
+
+                if ((dx == 0 && dy == 0) || !passable(nx, ny))
+                    continue;
+
+                final int next = index(nx, ny);
+
+                if (next == root)
+                    continue;
+
+                final float v = g[node] + edgeCost(dx, dy, nx, ny);
+
+                touch(next);
+
+                if (v < rhs[next])
+                {
+                    rhs[next] = v;
+                    parent[next] = node;
+
+                    updateQueue(next);
+                }
+            }
+        }
+    }
+
+    /**
+     * The node has lost its cost: whoever got theirs from it has to look elsewhere.
+     */
+    void successorsChanged(final int node)
+    {
+        final int x = ox + node / side;
+        final int y = oy + node % side;
+
+        for (int dx = -1; dx <= 1; dx++)
+        {
+            for (int dy = -1; dy <= 1; dy++)
+            {
+                if ((dx == 0 && dy == 0) || !inWindow(x + dx, y + dy))
+                    continue;
+
+                final int next = index(x + dx, y + dy);
+
+                if (stamp[next] == generation && parent[next] == node)
+                    updateVertex(next);
+            }
+        }
+    }
+
+    void updateVertex(final int node)
+    {
+        touch(node);
+
+        // the root keeps its cost, whatever its neighbours say
+        if (node == index(sx, sy))
+        {
+            updateQueue(node);
+            return;
+        }
+
+        rhs[node] = INF;
+        parent[node] = -1;
+
+        final int x = ox + node / side;
+        final int y = oy + node % side;
+
+        if (passable(x, y))
+        {
+            for (int dx = -1; dx <= 1; dx++)
+            {
+                for (int dy = -1; dy <= 1; dy++)
+                {
+                    final int px = x - dx;
+                    final int py = y - dy;
+
+                    if ((dx == 0 && dy == 0) || !passable(px, py))
+                        continue;
+
+                    final int   prev = index(px, py);
+                    final float v    = g(prev) + edgeCost(dx, dy, x, y);
+
+                    if (v < rhs[node])
+                    {
+                        rhs[node] = v;
+                        parent[node] = prev;
+                    }
+                }
+            }
+        }
+
+        updateQueue(node);
+    }
+
+    void updateQueue(final int node)
+    {
+        if (g[node] != rhs[node])
+            enqueue(node);
+        else
+            queued[node] = false;
+    }
+
+    /**
+     * Walks the tree back from the goal to the root.
+     *
+     * @return the node right after the root, or null if the goal can't be reached
+     */
+    Point firstStep()
+    {
+        int node = index(gx, gy);
+
+        if (g[node] == INF)
+            return null;
+
+        final int root = index(sx, sy);
+
+        // the parents of consistent nodes can't loop, but let's not trust floats with our life
+        for (int steps = 0; steps < touchedSize; steps++)
+        {
+            final int p = parent[node];
+
+            if (p < 0 || stamp[p] != generation)
+                return null;
+
+            if (p == root)
+                return new Point(ox + node / side, oy + node % side);
+
+            node = p;
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the first valid node of the open list, or -1 if it's empty
+     */
+    int top()
+    {
+        while (!open.isEmpty())
+        {
+            final int u = open.peek();
+
+            // nodes are queued again when their key changes, so there might be stale copies around
+            if (stamp[u] == generation && queued[u] && open.peekKey() == k1[u] && open.peekTie() == k2[u])
+                return u;
+
+            open.pop();
+        }
+
+        return -1;
+    }
+
+    void enqueue(final int node)
+    {
+        k2[node] = Math.min(g[node], rhs[node]);
+        k1[node] = k2[node] + heuristic(ox + node / side, oy + node % side, gx, gy) + km;
+        queued[node] = true;
+
+        open.add(node, k1[node], k2[node]);
+    }
+
+    void touch(final int node)
+    {
+        if (stamp[node] != generation)
+        {
+            stamp[node] = generation;
+            g[node] = INF;
+            rhs[node] = INF;
+            parent[node] = -1;
+            queued[node] = false;
+            touched[touchedSize++] = node;
+        }
+    }
+
+    float g(final int node)
+    {
+        return stamp[node] == generation ? g[node] : INF;
+    }
+
+    float edgeCost(final int dx, final int dy, final int x, final int y)
+    {
+        return (dx != 0 && dy != 0 ? SQRT2 : 1f) * (cost == null ? 1f : cost.cost(x, y));
+    }
+
+    boolean less(final float a1, final float a2, final float b1, final float b2)
+    {
+        return a1 < b1 || (a1 == b1 && a2 < b2);
+    }
+
+    int index(final int x, final int y)
+    {
+        return (x - ox) * side + (y - oy);
+    }
+
+    boolean inWindow(final int x, final int y)
+    {
+        return x >= ox && y >= oy && x < ox + side && y < oy + side;
+    }
+
+    boolean passable(final int x, final int y)
+    {
+        return inWindow(x, y) && passable.test(x, y);
+    }
+
+    float heuristic(final int x1, final int y1, final int x2, final int y2)
+    {
+        // octile distance
+        final int dx = Math.abs(x1 - x2);
+        final int dy = Math.abs(y1 - y2);
+
+        return minCost * (Math.max(dx, dy) + (SQRT2 - 1f) * Math.min(dx, dy));
+    }
+}
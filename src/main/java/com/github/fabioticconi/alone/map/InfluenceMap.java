@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.map;
+
+import com.github.fabioticconi.alone.constants.Side;
+
+import java.util.Arrays;
+
+/**
+ * A coarse grid of values, each covering a square block of map cells, that entities stamp into and that
+ * fades away over time. Creatures can then "feel" what's around by looking at the block they are in,
+ * and move along the gradient, without looking at anybody in particular.
+ * <p>
+ * Stamps don't add up: a block keeps the strongest value it has been given. Values can also be added
+ * and left to spread around, like a smell.
+ * <p>
+ * Author: Fabio Ticconi
+ * Date: 18/10/26
+ */
+public class InfluenceMap
+{
+    // below this, it's as good as nothing
+    static final float MIN_VALUE = 0.01f;
+
+    final int shift;
+    final int columns;
+    final int rows;
+
+    final float[] values;
+
+    /**
+     * @param width  of the map, in cells
+     * @param height of the map, in cells
+     * @param shift  the blocks are 2^shift cells wide
+     */
+    public InfluenceMap(final int width, final int height, final int shift)
+    {
+        this.shift = shift;
+
+        columns = ((width - 1) >> shift) + 1;
+        rows = ((height - 1) >> shift) + 1;
+
+        values = new float[columns * rows];
+    }
+
+    /**
+     * Marks the area around (x,y), with the given strength at the centre fading linearly to nothing
+     * just outside the radius.
+     *
+     * @param x
+     * @param y
+     * @param strength
+     * @param radius   in cells
+     */
+    public void stamp(final int x, final int y, final float strength, final int radius)
+    {
+        final int bx = x >> shift;
+        final int by = y >> shift;
+        final int r  = radius >> shift;
+
+        for (int i = Math.max(0, bx - r); i <= Math.min(columns - 1, bx + r); i++)
+        {
+            for (int j = Math.max(0, by - r); j <= Math.min(rows - 1, by + r); j++)
+            {
+                final int   d     = Math.max(Math.abs(i - bx), Math.abs(j - by));
+                final float value = strength * (1f - (float) d / (r + 1));
+                final int   index = i * rows + j;
+
+                if (value > values[index])
+                    values[index] = value;
+            }
+        }
+    }
+
+    /**
+     * Multiplies everything by the given factor.
+     *
+     * @param factor between 0 and 1
+     */
+    public void decay(final float factor)
+    {
+        decay(0, columns, factor);
+    }
+
+    /**
+     * Multiplies by the given factor, but only a range of columns: so that separate stripes of the map
+     * can be processed in parallel.
+     *
+     * @param from   first column
+     * @param to     last column (excluded)
+     * @param factor between 0 and 1
+     */
+    public void decay(final int from, final int to, final float factor)
+    {
+        final int end = Math.min(columns, to) * rows;
+
+        for (int i = Math.max(0, from) * rows; i < end; i++)
+        {
+            final float value = values[i] * factor;
+
+            values[i] = value < MIN_VALUE ? 0f : value;
+        }
+    }
+
+    /**
+     * Adds to the value of the block containing (x,y), up to 1.
+     *
+     * @param x
+     * @param y
+     * @param amount
+     */
+    public void add(final int x, final int y, final float amount)
+    {
+        final int index = (x >> shift) * rows + (y >> shift);
+
+        values[index] = Math.min(1f, values[index] + amount);
+    }
+
+    /**
+     * Spreads part of each block's value to its neighbours, and then fades it, but only for a range of
+     * columns: so the whole map can be processed a slice at a time. Blocks are updated in place.
+     *
+     * @param from   first column
+     * @param to     last column (excluded)
+     * @param rate   how much of the value is replaced by the average of the neighbours, between 0 and 1
+     * @param factor between 0 and 1
+     */
+    public void diffuse(final int from, final int to, final float rate, final float factor)
+    {
+        for (int i = Math.max(0, from); i < Math.min(columns, to); i++)
+        {
+            for (int j = 0; j < rows; j++)
+            {
+                float sum   = 0f;
+                int   count = 0;
+
+                for (int di = -1; di <= 1; di++)
+                {
+                    for (int dj = -1; dj <= 1; dj++)
+                    {
+                        final int ni = i + di;
+                        final int nj = j + dj;
+
+                        if ((di == 0 && dj == 0) || ni < 0 || nj < 0 || ni >= columns || nj >= rows)
+                            continue;
+
+                        sum += values[ni * rows + nj];
+                        count++;
+                    }
+                }
+
+                final int   index = i * rows + j;
+                final float value = ((1f - rate) * values[index] + rate * sum / count) * factor;
+
+                values[index] = value < MIN_VALUE ? 0f : value;
+            }
+        }
+    }
+
+    public int getColumns()
+    {
+        return columns;
+    }
+
+    public void clear()
+    {
+        Arrays.fill(values, 0f);
+    }
+
+    /**
+     * @return the value of the block containing the cell (x,y)
+     */
+    public float get(final int x, final int y)
+    {
+        return values[(x >> shift) * rows + (y >> shift)];
+    }
+
+    /**
+     * Goes downhill: the direction of the neighbouring block with the lowest value, if it's lower than
+     * the block we are in.
+     *
+     * @param x
+     * @param y
+     * @return the side to move towards, or HERE if there's nowhere better to go
+     */
+    public Side getDescent(final int x, final int y)
+    {
+        return getSteepest(x, y, -1f);
+    }
+
+    /**
+     * Goes uphill: the direction of the neighbouring block with the highest value, if it's higher than
+     * the block we are in.
+     *
+     * @param x
+     * @param y
+     * @return the side to move towards, or HERE if there's nowhere better to go
+     */
+    public Side getAscent(final int x, final int y)
+    {
+        return getSteepest(x, y, 1f);
+    }
+
+    Side getSteepest(final int x, final int y, final float sign)
+    {
+        final int bx = x >> shift;
+        final int by = y >> shift;
+
+        float best = sign * values[bx * rows + by];
+        Side  side = Side.HERE;
+
+        for (final Side s : Side.values())
+        {
+            final int i = bx + s.x;
+            final int j = by + s.y;
+
+            if (s == Side.HERE || i < 0 || j < 0 || i >= columns || j >= rows)
+                continue;
+
+            if (sign * values[i * rows + j] > best)
+            {
+                best = sign * values[i * rows + j];
+                side = s;
+            }
+        }
+
+        return side;
+    }
+}
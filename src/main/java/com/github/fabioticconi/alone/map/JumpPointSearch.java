@@ -0,0 +1,489 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.map;
+
+import com.github.fabioticconi.alone.utils.IntMinHeap;
+import rlforj.IBoard;
+import rlforj.math.Point;
+
+/**
+ * Jump Point Search (Harabor and Grastien, 2011) on an 8-connected grid.
+ * <p>
+ * Instead of pushing every neighbour into the open list, it "jumps" along straight and diagonal lines
+ * until something interesting is found: the goal, or a forced neighbour created by an obstacle corner.
+ * In open fields only a handful of nodes are ever expanded.
+ * <p>
+ * If a {@link CostFunction} is given, it becomes the cost-aware variant: pruning only happens on cells
+ * whose neighbours all cost the same as the cell itself, where the usual symmetry argument holds.
+ * Jumps stop on any cell at the border of two cost regions, and those cells get all their neighbours.
+ * <p>
+ * That only pays off if the map actually has regions of uniform cost: with continuous costs every
+ * cell is a border, and the search becomes a (slower) A*. Costs can be quantised for this reason:
+ * the path is then optimal for the quantised costs, but not necessarily for the real ones.
+ * If q is the quantum and m the minimum cost, each quantised cost is within q/2 of the real one, so the
+ * real cost of the path is at most (2m + q) / (2m - q) times the optimal one.
+ * <p>
+ * Like rlforj's AStar, the search is confined to the square of the given radius around the start,
+ * and both the start and the goal are considered walkable even if occupied (by the searcher itself
+ * and by its target, usually).
+ * <p>
+ * Author: Fabio Ticconi
+ * Date: 18/10/26
+ */
+public class JumpPointSearch implements PathPlanner
+{
+    static final float SQRT2 = 1.4142135f;
+
+    final IBoard       board;
+    final CostFunction cost;
+    final float        minCost;
+    final float        quantum;
+    final int          width;
+    final int          height;
+
+    final IntMinHeap open;
+
+    // search window, start and goal of the current search
+    int ox, oy, side;
+    int sx, sy, ex, ey;
+
+    // node data, indexed by window position. A node is valid only if its stamp matches the
+    // current generation, so nothing needs to be cleared between searches
+    float[] g;
+    int[]   parent;
+    int[]   seen;
+    int[]   closed;
+    int     generation;
+
+    // cost of each cell of the window, computed at most once per search
+    float[] costs;
+    int[]   costed;
+
+    // cost of the last successful jump
+    float jumpCost;
+
+    int expanded;
+
+    /**
+     * Uniform-cost Jump Point Search.
+     */
+    public JumpPointSearch(final IBoard board, final int width, final int height)
+    {
+        this(board, width, height, null, 1f);
+    }
+
+    /**
+     * Cost-aware Jump Point Search.
+     *
+     * @param cost    the cost of entering a cell
+     * @param minCost the smallest cost the function can return
+     */
+    public JumpPointSearch(final IBoard board,
+                           final int width,
+                           final int height,
+                           final CostFunction cost,
+                           final float minCost)
+    {
+        this(board, width, height, cost, minCost, 0f);
+    }
+
+    /**
+     * Cost-aware Jump Point Search on quantised costs.
+     *
+     * @param cost    the cost of entering a cell
+     * @param minCost the smallest cost the function can return
+     * @param quantum costs are rounded to a multiple of this (never below minCost), or 0 to keep them as they are
+     */
+    public JumpPointSearch(final IBoard board,
+                           final int width,
+                           final int height,
+                           final CostFunction cost,
+                           final float minCost,
+                           final float quantum)
+    {
+        if (quantum < 0f || quantum >= 2f * minCost)
+            throw new IllegalArgumentException("quantum must be between 0 and twice the minimum cost");
+
+        this.board = board;
+        this.width = width;
+        this.height = height;
+        this.cost = cost;
+        this.minCost = minCost;
+        this.quantum = quantum;
+
+        open = new IntMinHeap(256);
+    }
+
+    /**
+     * @return how many nodes were taken from the open list during the last search
+     */
+    public int getExpanded()
+    {
+        return expanded;
+    }
+
+    @Override
+    public Point[] findPath(final int startX, final int startY, final int endX, final int endY, final int radius)
+    {
+        if (!board.contains(startX, startY) || !board.contains(endX, endY))
+            return null;
+
+        if (startX == endX && startY == endY)
+            return new Point[] { new Point(startX, startY) };
+
+        sx = startX;
+        sy = startY;
+        ex = endX;
+        ey = endY;
+
+        setWindow(radius);
+
+        expanded = 0;
+
+        if (!inWindow(ex, ey))
+            return null;
+
+        generation++;
+        open.clear();
+
+        final int start = index(sx, sy);
+        g[start] = 0f;
+        parent[start] = -1;
+        seen[start] = generation;
+        open.add(start, heuristic(sx, sy));
+
+        while (!open.isEmpty())
+        {
+            final int node = open.pop();
+
+            // stale copy of a node we have already expanded with a better cost
+            if (closed[node] == generation)
+                continue;
+
+            closed[node] = generation;
+            expanded++;
+
+            final int x = ox + node / side;
+            final int y = oy + node % side;
+
+            if (x == ex && y == ey)
+                return buildPath(node);
+
+            successors(node, x, y);
+        }
+
+        return null;
+    }
+
+    void setWindow(final int radius)
+    {
+        if (radius > 0)
+        {
+            ox = sx - radius;
+            oy = sy - radius;
+            side = 2 * radius + 1;
+        }
+        else
+        {
+            ox = 0;
+            oy = 0;
+            side = Math.max(width, height);
+        }
+
+        final int cells = side * side;
+
+        if (g == null || g.length < cells)
+        {
+            g = new float[cells];
+            parent = new int[cells];
+            seen = new int[cells];
+            closed = new int[cells];
+            costs = new float[cells];
+            costed = new int[cells];
+            generation = 0;
+        }
+    }
+
+    int index(final int x, final int y)
+    {
+        return (x - ox) * side + (y - oy);
+    }
+
+    boolean inWindow(final int x, final int y)
+    {
+        return x >= ox && y >= oy && x < ox + side && y < oy + side;
+    }
+
+    boolean walkable(final int x, final int y)
+    {
+        if (!inWindow(x, y) || !board.contains(x, y))
+            return false;
+
+        // the start is occupied by ourselves, the goal (often) by our target
+        if ((x == ex && y == ey) || (x == sx && y == sy))
+            return true;
+
+        return !board.blocksStep(x, y);
+    }
+
+    float heuristic(final int x, final int y)
+    {
+        // octile distance
+        final int dx = Math.abs(x - ex);
+        final int dy = Math.abs(y - ey);
+
+        return minCost * (Math.max(dx, dy) + (SQRT2 - 1f) * Math.min(dx, dy));
+    }
+
+    void successors(final int node, final int x, final int y)
+    {
+        final int p = parent[node];
+
+        // the start node, and nodes at the border of two cost regions, can go anywhere
+        if (p < 0 || onCostBoundary(x, y))
+        {
+            for (int dx = -1; dx <= 1; dx++)
+            {
+                for (int dy = -1; dy <= 1; dy++)
+                {
+                    if (dx != 0 || dy != 0)
+                        jumpFrom(node, x, y, dx, dy);
+                }
+            }
+
+            return;
+        }
+
+        final int dx = Integer.signum(x - (ox + p / side));
+        final int dy = Integer.signum(y - (oy + p % side));
+
+        if (dx != 0 && dy != 0)
+        {
+            // natural neighbours
+            jumpFrom(node, x, y, 0, dy);
+            jumpFrom(node, x, y, dx, 0);
+            jumpFrom(node, x, y, dx, dy);
+
+            // forced neighbours
+            if (!walkable(x - dx, y))
+                jumpFrom(node, x, y, -dx, dy);
+            if (!walkable(x, y - dy))
+                jumpFrom(node, x, y, dx, -dy);
+        }
+        else if (dx != 0)
+        {
+            jumpFrom(node, x, y, dx, 0);
+
+            if (!walkable(x, y + 1))
+                jumpFrom(node, x, y, dx, 1);
+            if (!walkable(x, y - 1))
+                jumpFrom(node, x, y, dx, -1);
+        }
+        else
+        {
+            jumpFrom(node, x, y, 0, dy);
+
+            if (!walkable(x + 1, y))
+                jumpFrom(node, x, y, 1, dy);
+            if (!walkable(x - 1, y))
+                jumpFrom(node, x, y, -1, dy);
+        }
+    }
+
+    /**
+     * True if any walkable neighbour costs differently from (x,y). Only ever true on weighted searches.
+     */
+    boolean onCostBoundary(final int x, final int y)
+    {
+        if (cost == null)
+            return false;
+
+        final float c = cellCost(x, y);
+
+        for (int dx = -1; dx <= 1; dx++)
+        {
+            for (int dy = -1; dy <= 1; dy++)
+            {
+                if ((dx != 0 || dy != 0) && walkable(x + dx, y + dy) && cellCost(x + dx, y + dy) != c)
+                    return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Cost of entering a walkable cell, quantised if required.
+     */
+    float cellCost(final int x, final int y)
+    {
+        if (cost == null)
+            return 1f;
+
+        final int node = index(x, y);
+
+        if (costed[node] != generation)
+        {
+            float c = cost.cost(x, y);
+
+            if (quantum > 0f)
+                c = Math.max(minCost, Math.round(c / quantum) * quantum);
+
+            costs[node] = c;
+            costed[node] = generation;
+        }
+
+        return costs[node];
+    }
+
+    void jumpFrom(final int node, final int x, final int y, final int dx, final int dy)
+    {
+        final int next = jump(x, y, dx, dy);
+
+        if (next < 0 || closed[next] == generation)
+            return;
+
+        final float newG = g[node] + jumpCost;
+
+        if (seen[next] != generation || newG < g[next])
+        {
+            seen[next] = generation;
+            g[next] = newG;
+            parent[next] = node;
+
+            open.add(next, newG + heuristic(ox + next / side, oy + next % side));
+        }
+    }
+
+    /**
+     * Moves from (x,y) towards (dx,dy) until it finds a jump point or hits a wall.
+     *
+     * @return the index of the jump point, or -1 if there is none in that direction
+     */
+    int jump(int x, int y, final int dx, final int dy)
+    {
+        final boolean diagonal = dx != 0 && dy != 0;
+        final float   step     = diagonal ? SQRT2 : 1f;
+
+        jumpCost = 0f;
+
+        while (true)
+        {
+            x += dx;
+            y += dy;
+
+            if (!walkable(x, y))
+                return -1;
+
+            jumpCost += step * cellCost(x, y);
+
+            // pruning is only safe where all neighbours cost the same, so the border must be expanded
+            if ((x == ex && y == ey) || onCostBoundary(x, y))
+                return index(x, y);
+
+            if (diagonal)
+            {
+                if ((walkable(x - dx, y + dy) && !walkable(x - dx, y)) ||
+                    (walkable(x + dx, y - dy) && !walkable(x, y - dy)))
+                    return index(x, y);
+
+                // a diagonal step is a jump point if any of the straight lines starting from it has one
+                if (hasJumpPoint(x, y, dx, 0) || hasJumpPoint(x, y, 0, dy))
+                    return index(x, y);
+            }
+            else if (isForced(x, y, dx, dy))
+            {
+                return index(x, y);
+            }
+        }
+    }
+
+    /**
+     * Straight-only version of {@link #jump(int, int, int, int)}, that doesn't keep track of costs.
+     */
+    boolean hasJumpPoint(int x, int y, final int dx, final int dy)
+    {
+        while (true)
+        {
+            x += dx;
+            y += dy;
+
+            if (!walkable(x, y))
+                return false;
+
+            if ((x == ex && y == ey) || onCostBoundary(x, y))
+                return true;
+
+            if (isForced(x, y, dx, dy))
+                return true;
+        }
+    }
+
+    boolean isForced(final int x, final int y, final int dx, final int dy)
+    {
+        if (dx != 0)
+            return (walkable(x + dx, y + 1) && !walkable(x, y + 1)) || (walkable(x + dx, y - 1) && !walkable(x, y - 1));
+        else
+            return (walkable(x + 1, y + dy) && !walkable(x + 1, y)) || (walkable(x - 1, y + dy) && !walkable(x - 1, y));
+    }
+
+    /**
+     * Walks back the chain of jump points, filling in the cells in between.
+     */
+    Point[] buildPath(final int goal)
+    {
+        int steps = 0;
+        for (int n = goal; parent[n] >= 0; n = parent[n])
+        {
+            final int p = parent[n];
+
+            steps += Math.max(Math.abs(n / side - p / side), Math.abs(n % side - p % side));
+        }
+
+        final Point[] path = new Point[steps + 1];
+
+        int i = steps;
+        int n = goal;
+        while (parent[n] >= 0)
+        {
+            final int p = parent[n];
+
+            int       x  = ox + n / side;
+            int       y  = oy + n % side;
+            final int px = ox + p / side;
+            final int py = oy + p % side;
+            final int dx = Integer.signum(px - x);
+            final int dy = Integer.signum(py - y);
+
+            // jump points are always connected by straight or diagonal lines
+            while (x != px || y != py)
+            {
+                path[i--] = new Point(x, y);
+                x += dx;
+                y += dy;
+            }
+
+            n = p;
+        }
+
+        path[0] = new Point(sx, sy);
+
+        return path;
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.map;
+
+import com.github.fabioticconi.alone.constants.Locomotion;
+import com.github.fabioticconi.alone.constants.Options;
+import com.github.fabioticconi.alone.constants.Pathfinding;
+import com.github.fabioticconi.alone.constants.Side;
+import com.github.fabioticconi.alone.constants.TerrainType;
+import com.github.fabioticconi.alone.systems.MapSystem;
+import rlforj.IBoard;
+import rlforj.math.Point;
+import rlforj.pathfinding.AStar;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * The map as seen by creatures with a given {@link Locomotion}: which cells they can step into,
+ * how much it costs them, which areas are connected, and their own path planner and path cache.
+ * <p>
+ * The version of the layer increases every time a cell changes in a way that matters to paths
+ * (ie, terrain or static obstacles, not creatures moving around).
+ * <p>
+ * Author: Fabio Ticconi
+ * Date: 18/10/26
+ */
+public class NavigationLayer implements IBoard, CostFunction
+{
+    final MapSystem           map;
+    final Locomotion          locomotion;
+    final ConnectedComponents components;
+    final PathCache           cache;
+
+    PathPlanner path;
+    long        version;
+
+    public NavigationLayer(final MapSystem map, final Locomotion locomotion)
+    {
+        this.map = map;
+        this.locomotion = locomotion;
+
+        // creatures come and go, so only terrain and things like trees and boulders can split the map
+        components = new ConnectedComponents(Options.MAP_SIZE_X, Options.MAP_SIZE_Y, this::isPassable);
+
+        cache = new PathCache(Options.PATH_CACHE_SIZE);
+    }
+
+    public Locomotion getLocomotion()
+    {
+        return locomotion;
+    }
+
+    public long getVersion()
+    {
+        return version;
+    }
+
+    public PathCache getCache()
+    {
+        return cache;
+    }
+
+    /**
+     * Selects the algorithm used by {@link #getPath(int, int, int, int, int)}.
+     *
+     * @param type
+     */
+    public void setPathfinding(final Pathfinding type)
+    {
+        switch (type)
+        {
+            case ASTAR:
+                final AStar aStar = new AStar(this, Options.MAP_SIZE_X, Options.MAP_SIZE_Y, true);
+                path = aStar::findPath;
+                break;
+
+            case JPS:
+                path = new JumpPointSearch(this, Options.MAP_SIZE_X, Options.MAP_SIZE_Y);
+                break;
+
+            case WEIGHTED_JPS:
+                // cells never cost less than 1, see MapSystem.Cell#cost
+                path = new JumpPointSearch(this,
+                                           Options.MAP_SIZE_X,
+                                           Options.MAP_SIZE_Y,
+                                           this,
+                                           1f,
+                                           Options.PATH_COST_QUANTUM);
+                break;
+        }
+    }
+
+    /**
+     * True if the terrain of the cell is suitable, regardless of what's in it.
+     *
+     * @param x
+     * @param y
+     * @return
+     */
+    public boolean canEnter(final int x, final int y)
+    {
+        if (!map.contains(x, y))
+            return false;
+
+        final TerrainType type = map.get(x, y).type;
+
+        return type != null && locomotion.terrain.contains(type);
+    }
+
+    /**
+     * True if the terrain is suitable and there are no static obstacles (eg, trees), whether or not
+     * there's a creature in the cell.
+     *
+     * @param x
+     * @param y
+     * @return
+     */
+    public boolean isPassable(final int x, final int y)
+    {
+        return canEnter(x, y) && !map.hasStaticObstacle(x, y);
+    }
+
+    /**
+     * True if the terrain is suitable and there are no obstacles.
+     *
+     * @param x
+     * @param y
+     * @return
+     */
+    public boolean isFree(final int x, final int y)
+    {
+        return canEnter(x, y) && map.isFree(x, y);
+    }
+
+    public boolean isFree(final int x, final int y, final Side direction)
+    {
+        return isFree(x + direction.x, y + direction.y);
+    }
+
+    /**
+     * Take a position and return all free exits in the surrounding "circle".
+     *
+     * @param x
+     * @param y
+     * @return A set of free exits, empty if none is available
+     */
+    public Set<Side> getFreeExits(final int x, final int y)
+    {
+        final Set<Side> exits = new LinkedHashSet<>(8);
+
+        for (final Side side : Side.values())
+        {
+            if (side != Side.HERE && isFree(x, y, side))
+                exits.add(side);
+        }
+
+        return exits;
+    }
+
+    /**
+     * Computes the connected components now, if they haven't been already.
+     */
+    public void prepare()
+    {
+        components.prepare();
+    }
+
+    /**
+     * Immediate, so it's always worth asking before searching for a path.
+     *
+     * @return true if a creature could go from the first cell to the second, if other creatures
+     * got out of the way
+     */
+    public boolean isReachable(final int startX, final int startY, final int endX, final int endY)
+    {
+        return components.connected(startX, startY, endX, endY);
+    }
+
+    public Point[] getPath(final int startX, final int startY, final int endX, final int endY, final int radius)
+    {
+        // no point exploring the whole radius
+        if (!isReachable(startX, startY, endX, endY))
+            return null;
+
+        Point[] p = cache.get(this::isPassable, version, startX, startY, endX, endY);
+
+        if (p != null)
+            return p;
+
+        p = path.findPath(startX, startY, endX, endY, radius);
+
+        cache.put(version, startX, startY, endX, endY, p);
+
+        return p;
+    }
+
+    /**
+     * Must be called when an obstacle appears or disappears.
+     *
+     * @param x
+     * @param y
+     */
+    public void update(final int x, final int y)
+    {
+        if (components.update(x, y))
+            version++;
+    }
+
+    /**
+     * Must be called when the terrain of a cell changes: if the walkability stays the same, the cost
+     * might still be different.
+     *
+     * @param x
+     * @param y
+     */
+    public void terrainChanged(final int x, final int y)
+    {
+        if (components.update(x, y) || locomotion.terrainCost)
+            version++;
+    }
+
+    /**
+     * Must be called when the whole map might have changed.
+     */
+    public void invalidate()
+    {
+        components.invalidate();
+        cache.clear();
+        version++;
+    }
+
+    @Override
+    public boolean contains(final int x, final int y)
+    {
+        return map.contains(x, y);
+    }
+
+    @Override
+    public boolean blocksLight(final int x, final int y)
+    {
+        return map.blocksLight(x, y);
+    }
+
+    @Override
+    public boolean blocksStep(final int x, final int y)
+    {
+        return !isFree(x, y);
+    }
+
+    @Override
+    public void visit(final int x, final int y)
+    {
+
+    }
+
+    @Override
+    public float cost(final int x, final int y)
+    {
+        return locomotion.terrainCost ? map.getCost(x, y) : 1f;
+    }
+}
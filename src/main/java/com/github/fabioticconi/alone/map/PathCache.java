@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.map;
+
+import com.github.fabioticconi.alone.utils.Coords;
+import rlforj.math.Point;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the most recent paths, so that creatures going to the same place from roughly the same
+ * spot (eg, a herd heading for water) don't each have to search for it.
+ * <p>
+ * Paths are stored by the small square region their start is in, and by their exact goal.
+ * A cached path is only returned if the map hasn't changed since it was computed (according to the
+ * version given by the caller), if it's still passable, and if it can be joined to the requester's
+ * actual start by a straight line.
+ * <p>
+ * Only terrain and static obstacles are checked: creatures in the way move on, or get bumped.
+ * <p>
+ * Author: Fabio Ticconi
+ * Date: 18/10/26
+ */
+public class PathCache
+{
+    // regions are squares of 8x8 cells
+    static final int REGION_SHIFT = 3;
+    static final int REGION_SIZE  = 1 << REGION_SHIFT;
+
+    final Map<Long, Entry> entries;
+
+    int hits;
+    int misses;
+
+    public PathCache(final int capacity)
+    {
+        // access-ordered, so the eldest entry is the least recently used
+        entries = new LinkedHashMap<Long, Entry>(capacity * 4 / 3 + 1, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Long, Entry> eldest)
+            {
+                return size() > capacity;
+            }
+        };
+    }
+
+    public int getHits()
+    {
+        return hits;
+    }
+
+    public int getMisses()
+    {
+        return misses;
+    }
+
+    /**
+     * @param passable used to check the cached path isn't blocked, see {@link NavigationLayer#isPassable(int, int)}
+     * @param version  the current version of the map
+     * @return a path from the start to the goal, or null if there's no good one in the cache
+     */
+    public Point[] get(final CellPredicate passable,
+                       final long version,
+                       final int startX,
+                       final int startY,
+                       final int endX,
+                       final int endY)
+    {
+        final Entry entry = entries.get(key(startX, startY, endX, endY));
+
+        if (entry != null && entry.version != version)
+        {
+            entries.remove(key(startX, startY, endX, endY));
+        }
+        else if (entry != null)
+        {
+            final Point[] path = stitch(passable, entry.path, startX, startY);
+
+            if (path != null)
+            {
+                hits++;
+
+                return path;
+            }
+        }
+
+        misses++;
+
+        return null;
+    }
+
+    public void put(final long version,
+                    final int startX,
+                    final int startY,
+                    final int endX,
+                    final int endY,
+                    final Point[] path)
+    {
+        if (path == null || path.length < 2)
+            return;
+
+        entries.put(key(startX, startY, endX, endY), new Entry(path, version));
+    }
+
+    public void clear()
+    {
+        entries.clear();
+    }
+
+    long key(final int startX, final int startY, final int endX, final int endY)
+    {
+        final long region = Coords.packCoords(startX >> REGION_SHIFT, startY >> REGION_SHIFT);
+
+        // regions are small enough that their coordinates fit in the upper 16 bits of each half
+        return (region << 16) | Coords.packCoords(endX, endY);
+    }
+
+    /**
+     * Joins the start to the furthest cell of the path that is close enough and can be reached in
+     * a straight line, then follows the path from there.
+     *
+     * @return the new path, or null if the start cannot be joined or the path is blocked
+     */
+    Point[] stitch(final CellPredicate passable, final Point[] path, final int startX, final int startY)
+    {
+        // the path must still be passable, apart from its ends (the creature and its goal)
+        for (int i = 1; i < path.length - 1; i++)
+        {
+            if (!passable.test(path[i].x, path[i].y))
+                return null;
+        }
+
+        for (int i = path.length - 1; i >= 0; i--)
+        {
+            final int d = Coords.distanceChebyshev(startX, startY, path[i].x, path[i].y);
+
+            if (d > REGION_SIZE || !lineFree(passable, startX, startY, path[i].x, path[i].y))
+                continue;
+
+            final Point[] stitched = new Point[d + path.length - i];
+
+            int x = startX;
+            int y = startY;
+            for (int k = 0; k < d; k++)
+            {
+                stitched[k] = new Point(x, y);
+                x += Integer.signum(path[i].x - x);
+                y += Integer.signum(path[i].y - y);
+            }
+
+            System.arraycopy(path, i, stitched, d, path.length - i);
+
+            return stitched;
+        }
+
+        return null;
+    }
+
+    /**
+     * Checks the cells between the two ends, moving diagonally first and then straight.
+     */
+    boolean lineFree(final CellPredicate passable, int x, int y, final int endX, final int endY)
+    {
+        while (true)
+        {
+            x += Integer.signum(endX - x);
+            y += Integer.signum(endY - y);
+
+            if (x == endX && y == endY)
+                return true;
+
+            if (!passable.test(x, y))
+                return false;
+        }
+    }
+
+    static class Entry
+    {
+        final Point[] path;
+        final long    version;
+
+        Entry(final Point[] path, final long version)
+        {
+            this.path = path;
+            this.version = version;
+        }
+    }
+}
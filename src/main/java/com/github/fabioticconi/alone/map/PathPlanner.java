@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.map;
+
+import rlforj.math.Point;
+
+/**
+ * Anything that can find a path on the map. Same contract as rlforj's AStar, so that
+ * it can be plugged in with a method reference.
+ * <p>
+ * Author: Fabio Ticconi
+ * Date: 18/10/26
+ */
+@FunctionalInterface
+public interface PathPlanner
+{
+    /**
+     * Finds a path between the two cells, only exploring the square of the given radius around the start.
+     *
+     * @return the path, including both start (at index 0) and end, or null if none could be found
+     */
+    Point[] findPath(int startX, int startY, int endX, int endY, int radius);
+}
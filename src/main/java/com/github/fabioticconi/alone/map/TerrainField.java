@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.map;
+
+import com.github.fabioticconi.alone.utils.Coords;
+
+import java.util.Arrays;
+
+/**
+ * For every cell of the map, the closest cell with a given property (eg, the nearest grass).
+ * <p>
+ * Distances are chebyshev, ie the number of steps needed to get there on an empty map. The field is
+ * built with the usual two raster passes, carrying around the closest cell found so far rather than just
+ * its distance, and then kept up to date when single cells change: a new matching cell pushes its
+ * influence outwards, while a lost one has the area it used to serve filled in again from the border.
+ * <p>
+ * Author: Fabio Ticconi
+ * Date: 18/10/26
+ */
+public class TerrainField
+{
+    static final int NONE = -1;
+
+    final int width;
+    final int height;
+
+    // index of the closest matching cell, or NONE
+    final int[] nearest;
+
+    // work queue for the incremental updates
+    int[] queue;
+
+    public TerrainField(final int width, final int height)
+    {
+        this.width = width;
+        this.height = height;
+
+        nearest = new int[width * height];
+        queue = new int[256];
+    }
+
+    /**
+     * Computes the field from scratch.
+     *
+     * @param matches which cells we are looking for
+     */
+    public void build(final CellPredicate matches)
+    {
+        Arrays.fill(nearest, NONE);
+
+        for (int x = 0; x < width; x++)
+        {
+            for (int y = 0; y < height; y++)
+            {
+                if (matches.test(x, y))
+                    nearest[index(x, y)] = index(x, y);
+            }
+        }
+
+        // forward pass, from the top-left corner
+        for (int x = 0; x < width; x++)
+        {
+            for (int y = 0; y < height; y++)
+            {
+                relax(x, y, x - 1, y - 1);
+                relax(x, y, x - 1, y);
+                relax(x, y, x - 1, y + 1);
+                relax(x, y, x, y - 1);
+            }
+        }
+
+        // backward pass, from the bottom-right corner
+        for (int x = width - 1; x >= 0; x--)
+        {
+            for (int y = height - 1; y >= 0; y--)
+            {
+                relax(x, y, x + 1, y + 1);
+                relax(x, y, x + 1, y);
+                relax(x, y, x + 1, y - 1);
+                relax(x, y, x, y + 1);
+            }
+        }
+    }
+
+    /**
+     * Brings the field up to date after a single cell has changed.
+     *
+     * @param matches which cells we are looking for
+     * @param x
+     * @param y
+     */
+    public void update(final CellPredicate matches, final int x, final int y)
+    {
+        final int i = index(x, y);
+
+        if (matches.test(x, y))
+        {
+            if (nearest[i] == i)
+                return;
+
+            nearest[i] = i;
+
+            propagate(push(0, i));
+        }
+        else if (nearest[i] == i)
+        {
+            // everything that was closest to this cell has to find something else
+            int tail = push(0, i);
+            nearest[i] = NONE;
+
+            for (int head = 0; head < tail; head++)
+            {
+                final int cx = queue[head] / height;
+                final int cy = queue[head] % height;
+
+                for (int dx = -1; dx <= 1; dx++)
+                {
+                    for (int dy = -1; dy <= 1; dy++)
+                    {
+                        final int nx = cx + dx;
+                        final int ny = cy + dy;
+
+                        if (contains(nx, ny) && nearest[index(nx, ny)] == i)
+                        {
+                            nearest[index(nx, ny)] = NONE;
+                            tail = push(tail, index(nx, ny));
+                        }
+                    }
+                }
+            }
+
+            // then we fill the hole again from its border
+            final int size = tail;
+            for (int n = 0; n < size; n++)
+            {
+                final int cx = queue[n] / height;
+                final int cy = queue[n] % height;
+
+                for (int dx = -1; dx <= 1; dx++)
+                {
+                    for (int dy = -1; dy <= 1; dy++)
+                    {
+                        relax(cx, cy, cx + dx, cy + dy);
+                    }
+                }
+            }
+
+            propagate(size);
+        }
+    }
+
+    /**
+     * @return the index (x * height + y) of the closest matching cell, or -1 if there's none
+     */
+    public int getNearest(final int x, final int y)
+    {
+        return nearest[index(x, y)];
+    }
+
+    public int getNearestX(final int x, final int y)
+    {
+        return nearest[index(x, y)] / height;
+    }
+
+    public int getNearestY(final int x, final int y)
+    {
+        return nearest[index(x, y)] % height;
+    }
+
+    /**
+     * @return how many steps away the closest matching cell is, or Integer.MAX_VALUE if there's none
+     */
+    public int getDistance(final int x, final int y)
+    {
+        return distance(x, y, nearest[index(x, y)]);
+    }
+
+    /**
+     * Spreads the cells currently in the queue, until nothing improves anymore.
+     */
+    void propagate(int tail)
+    {
+        // not a real queue: cells can be pushed again after being popped, so it's a ring
+        int head = 0;
+        int size = tail;
+
+        while (size > 0)
+        {
+            final int c = queue[head];
+            head = (head + 1) % queue.length;
+            size--;
+
+            final int cx = c / height;
+            final int cy = c % height;
+
+            for (int dx = -1; dx <= 1; dx++)
+            {
+                for (int dy = -1; dy <= 1; dy++)
+                {
+                    final int nx = cx + dx;
+                    final int ny = cy + dy;
+
+                    if ((dx == 0 && dy == 0) || !contains(nx, ny))
+                        continue;
+
+                    if (!improves(nx, ny, nearest[c]))
+                        continue;
+
+                    nearest[index(nx, ny)] = nearest[c];
+
+                    if (size == queue.length)
+                    {
+                        // unroll the ring into a bigger array
+                        final int[] bigger = new int[2 * queue.length];
+
+                        for (int n = 0; n < size; n++)
+                        {
+                            bigger[n] = queue[(head + n) % queue.length];
+                        }
+
+                        queue = bigger;
+                        head = 0;
+                    }
+
+                    queue[(head + size) % queue.length] = index(nx, ny);
+                    size++;
+                }
+            }
+        }
+    }
+
+    void relax(final int x, final int y, final int nx, final int ny)
+    {
+        if (!contains(nx, ny))
+            return;
+
+        final int candidate = nearest[index(nx, ny)];
+
+        if (improves(x, y, candidate))
+            nearest[index(x, y)] = candidate;
+    }
+
+    boolean improves(final int x, final int y, final int candidate)
+    {
+        return candidate != NONE && distance(x, y, candidate) < distance(x, y, nearest[index(x, y)]);
+    }
+
+    int distance(final int x, final int y, final int cell)
+    {
+        if (cell == NONE)
+            return Integer.MAX_VALUE;
+
+        return Coords.distanceChebyshev(x, y, cell / height, cell % height);
+    }
+
+    int push(final int tail, final int cell)
+    {
+        if (tail == queue.length)
+            queue = Arrays.copyOf(queue, 2 * queue.length);
+
+        queue[tail] = cell;
+
+        return tail + 1;
+    }
+
+    int index(final int x, final int y)
+    {
+        return x * height + y;
+    }
+
+    boolean contains(final int x, final int y)
+    {
+        return x >= 0 && y >= 0 && x < width && y < height;
+    }
+}
@@ -21,13 +21,17 @@ package com.github.fabioticconi.alone.screens;
 import asciiPanel.AsciiPanel;
 import com.artemis.ComponentMapper;
 import com.artemis.utils.BitVector;
+import com.artemis.utils.IntBag;
+import com.github.fabioticconi.alone.components.Obstacle;
 import com.github.fabioticconi.alone.components.Position;
 import com.github.fabioticconi.alone.components.Target;
 import com.github.fabioticconi.alone.components.attributes.Sight;
+import com.github.fabioticconi.alone.constants.Metric;
 import com.github.fabioticconi.alone.systems.ItemSystem;
 import com.github.fabioticconi.alone.systems.MapSystem;
 import com.github.fabioticconi.alone.systems.ThrowSystem;
 import com.github.fabioticconi.alone.utils.Coords;
+import com.github.fabioticconi.alone.utils.NearestNeighbours;
 import rlforj.math.Point;
 
 import java.awt.*;
@@ -45,11 +49,14 @@ public class LookScreen extends PlayScreen
     ComponentMapper<Target>   mTarget;
     ComponentMapper<Position> mPos;
     ComponentMapper<Sight>    mSight;
+    ComponentMapper<Obstacle> mObstacle;
 
     ThrowSystem sThrow;
     MapSystem   map;
     ItemSystem  sItem;
 
+    final NearestNeighbours nearest = new NearestNeighbours();
+
     @Override
     public float handleKeys(final BitVector keys)
     {
@@ -64,6 +71,19 @@ public class LookScreen extends PlayScreen
             t = mTarget.create(playerId);
 
             t.pos.set(p);
+
+            // we start from the closest creature in sight, if there's any
+            final IntBag closest = nearest.find(map.getObstacles(),
+                                                p.x,
+                                                p.y,
+                                                1,
+                                                mSight.get(playerId).value,
+                                                Metric.EUCLIDEAN,
+                                                id -> id != playerId && !mObstacle.has(id) && isVisible(p, id),
+                                                new IntBag(1));
+
+            if (!closest.isEmpty())
+                t.pos.set(mPos.get(closest.get(0)));
         }
 
         if (keys.get(KeyEvent.VK_T))
@@ -123,6 +143,13 @@ public class LookScreen extends PlayScreen
         return 0f;
     }
 
+    boolean isVisible(final Position p, final int entityId)
+    {
+        final Position target = mPos.get(entityId);
+
+        return map.getLineOfSight(p.x, p.y, target.x, target.y) != null;
+    }
+
     @Override
     public void display(final AsciiPanel terminal)
     {
@@ -21,47 +21,179 @@ import com.artemis.Aspect;
 import com.artemis.ComponentMapper;
 import com.artemis.annotations.Wire;
 import com.artemis.systems.DelayedIteratingSystem;
+import com.artemis.utils.BitVector;
+import com.artemis.utils.IntBag;
 import com.github.fabioticconi.alone.behaviours.*;
 import com.github.fabioticconi.alone.components.AI;
 import com.github.fabioticconi.alone.components.Alertness;
 import com.github.fabioticconi.alone.components.Dead;
+import com.github.fabioticconi.alone.components.Group;
+import com.github.fabioticconi.alone.components.Heard;
+import com.github.fabioticconi.alone.components.Hunger;
+import com.github.fabioticconi.alone.components.Position;
 import com.github.fabioticconi.alone.components.Stamina;
+import com.github.fabioticconi.alone.components.attributes.Sight;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 /**
+ * General processing of AIs.
+ * <p>
+ * Creatures whose AI is due are first collected. Then all of them are evaluated at once, on a
+ * fork-join pool: behaviours only read the world at this point, and write down what they found in
+ * a {@link Context} (one per creature and behaviour). Finally, the best behaviour of each creature is applied,
+ * one creature at a time and in order of entity id, so that the outcome doesn't depend on how
+ * the evaluations were scheduled.
+ * <p>
+ * In batch mode, the creatures are instead sorted into one {@link Batch} per behaviour, and each
+ * behaviour evaluates its whole batch in one go (split in chunks over the pool). What most
+ * behaviours need (position, sight, hunger) is copied in packed arrays first.
+ * <p>
+ * Either way, behaviours are tried starting from the one that could give the highest score
+ * ({@link Behaviour#upperBound(int)}), and those that can't beat the best score found so far
+ * are not evaluated at all.
+ * <p>
+ * Followers that can see their leader leave fleeing and wandering to it, and only keep their place in
+ * the formation (or feed, if they are hungry): see {@link AIProfile#follower}.
+ * <p>
+ * Calm creatures tick less often than alert ones, and are alerted (and woken up) by what they
+ * perceive: see {@link #alert(int, float)}.
+ * <p>
+ * Far from the player, AIs tick less often and skip the behaviours that are too detailed for their
+ * level of detail (see {@link LodSystem}). When the tick is over budget (see {@link BudgetSystem}), they
+ * might also have to wait for a later tick.
+ *
  * @author Fabio Ticconi
  */
 public class AISystem extends DelayedIteratingSystem
 {
+    static final Logger log = LoggerFactory.getLogger(AISystem.class);
+
     // time, in millis, around which a each creature should
     // be updated here
     public static final float BASE_TICKTIME = 0.5f;
 
+    // how many times less often a completely calm creature ticks, compared to a fully alert one
+    static final float IDLE_FACTOR = 4f;
+    // how much alertness is left after each tick, if nothing keeps it up
+    static final float ALERT_DECAY = 0.75f;
+
+    // in batch mode, how many members of a batch each task evaluates
+    static final int CHUNK = 64;
+
+    // what followers still decide for themselves: where to go is up to the leader, but nobody can eat for them
+    static final String[] FOLLOWER_BEHAVIOURS = { "flock", "graze", "scavenge" };
+
     @Wire
     Random r;
 
     ComponentMapper<AI>        mAI;
     ComponentMapper<Alertness> mAlert;
     ComponentMapper<Stamina>   mStamina;
+    ComponentMapper<Heard>     mHeard;
+    ComponentMapper<Dead>      mDead;
+    ComponentMapper<Position>  mPosition;
+    ComponentMapper<Sight>     mSight;
+    ComponentMapper<Hunger>    mHunger;
+    ComponentMapper<Group>     mGroup;
+
+    MapSystem      map;
+    LodSystem      sLod;
+    ActionSystem   sAction;
+    BudgetSystem   sBudget;
+    FlockBehaviour sFlock;
+
+    // every behaviour there is: by name, and by index (in order of name)
+    final HashMap<String, Behaviour> behaviours;
+    String[]                         names;
+    Behaviour[]                      registry;
+
+    // compiled behaviours of each kind of creature
+    final HashMap<String, AIProfile> profiles;
 
-    HashMap<String, Behaviour> behaviours;
+    final int     threads;
+    final boolean batched;
+    ForkJoinPool  pool;
+
+    // creatures due this tick, their current state, what each behaviour found out about them, and the winner
+    final IntBag due;
+    Context[]    idle;
+    Context[][]  found;
+    Context[]    winners;
+
+    // creatures that were due, but had to wait for a later tick, oldest first
+    final IntBag    backlog;
+    final BitVector waiting;
+    final IntBag    pending;
+    // how long, on average, it takes to evaluate a creature
+    long            nanosPerCreature;
+
+    // per-creature mode, each thread ranks the behaviours of the creature it's evaluating in here
+    final ThreadLocal<Ranking> rankings;
+
+    // batch mode, one batch for each behaviour index
+    final Batch.Creatures creatures;
+    Batch[]               batches;
+    boolean[]             done;
+    float[]               toBeat;
 
     /**
      * General processing of AIs. Evaluates the best current strategy and
      * applies it.
+     *
+     * @param threads how many threads evaluate the AIs (1 or less means on the game thread)
+     * @param batched  whether each behaviour evaluates all its creatures in one go
      */
-    public AISystem()
+    public AISystem(final int threads, final boolean batched)
     {
         super(Aspect.all(AI.class, Alertness.class, Stamina.class).exclude(Dead.class));
 
+        this.threads = threads;
+        this.batched = batched;
+
         behaviours = new HashMap<>();
+        profiles = new HashMap<>();
+
+        due = new IntBag();
+        idle = new Context[0];
+        found = new Context[0][];
+        winners = new Context[0];
+
+        backlog = new IntBag();
+        waiting = new BitVector();
+        pending = new IntBag();
+
+        rankings = ThreadLocal.withInitial(Ranking::new);
+
+        creatures = new Batch.Creatures();
+        toBeat = new float[0];
     }
 
     @Override
     protected void initialize()
     {
+        register();
+
+        if (threads > 1)
+            pool = new ForkJoinPool(threads);
+    }
+
+    /**
+     * Collects the behaviours. It can be called before this system is initialised, as other
+     * systems might need to compile their profiles first.
+     */
+    void register()
+    {
+        if (registry != null)
+            return;
+
         behaviours.put("flee", world.getSystem(FleeBehaviour.class));
         behaviours.put("chase", world.getSystem(ChaseBehaviour.class));
         behaviours.put("fleefromaction", world.getSystem(FleeFromActionBehaviour.class));
@@ -70,6 +202,124 @@ public class AISystem extends DelayedIteratingSystem
         behaviours.put("scavenge", world.getSystem(ScavengeBehaviour.class));
         behaviours.put("underwater", world.getSystem(UnderwaterBehaviour.class));
         behaviours.put("wander", world.getSystem(WanderBehaviour.class));
+
+        // indices follow the names, so batches are always considered in the same order (to break ties)
+        names = behaviours.keySet().toArray(new String[0]);
+        Arrays.sort(names);
+
+        registry = new Behaviour[names.length];
+        batches = new Batch[names.length];
+        done = new boolean[names.length];
+
+        for (int n = 0; n < names.length; n++)
+        {
+            registry[n] = behaviours.get(names[n]);
+            batches[n] = new Batch(creatures, registry[n]);
+        }
+    }
+
+    /**
+     * Resolves the behaviours of a kind of creature once and for all, and keeps the result.
+     *
+     * @param tag            the kind of creature
+     * @param behaviourNames as in its template
+     * @return the profile to give to the AI of every creature of this kind
+     */
+    public AIProfile compile(final String tag, final String[] behaviourNames)
+    {
+        final AIProfile profile = resolve(tag, behaviourNames);
+
+        profiles.put(tag, profile);
+
+        return profile;
+    }
+
+    /**
+     * @param tag the kind of creature
+     * @return the profile compiled for it, or null
+     */
+    public AIProfile getProfile(final String tag)
+    {
+        return profiles.get(tag);
+    }
+
+    AIProfile resolve(final String tag, final String[] behaviourNames)
+    {
+        register();
+
+        final Behaviour[] resolved = new Behaviour[behaviourNames.length];
+        final int[]       indices  = new int[behaviourNames.length];
+
+        int size = 0;
+        for (final String bName : behaviourNames)
+        {
+            final int index = Arrays.binarySearch(names, bName);
+
+            if (index < 0)
+            {
+                log.warn("{} has unknown behaviour {}", tag, bName);
+                continue;
+            }
+
+            resolved[size] = registry[index];
+            indices[size] = index;
+            size++;
+        }
+
+        return new AIProfile(tag,
+                             Arrays.copyOf(resolved, size),
+                             Arrays.copyOf(indices, size),
+                             resolveFollower(tag, resolved, indices, size));
+    }
+
+    /**
+     * @return the behaviours left to a creature that follows a leader, or null if it never follows
+     */
+    AIProfile resolveFollower(final String tag, final Behaviour[] resolved, final int[] indices, final int size)
+    {
+        final Behaviour[] kept        = new Behaviour[size];
+        final int[]       keptIndices = new int[size];
+
+        boolean flocks = false;
+        int     length = 0;
+        for (int n = 0; n < size; n++)
+        {
+            final String name = names[indices[n]];
+
+            flocks |= name.equals("flock");
+
+            if (Arrays.asList(FOLLOWER_BEHAVIOURS).contains(name))
+            {
+                kept[length] = resolved[n];
+                keptIndices[length] = indices[n];
+                length++;
+            }
+        }
+
+        if (!flocks || length == size)
+            return null;
+
+        return new AIProfile(tag + " (follower)", Arrays.copyOf(kept, length), Arrays.copyOf(keptIndices, length));
+    }
+
+    /**
+     * @return the behaviours the creature should evaluate now
+     */
+    AIProfile profileOf(final int entityId, final AI ai)
+    {
+        final AIProfile follower = ai.profile.follower;
+
+        if (follower == null || sFlock.getLodLimit() < ai.lod || !sFlock.isFollowing(entityId))
+            return ai.profile;
+
+        return follower;
+    }
+
+    @Override
+    protected void dispose()
+    {
+        if (pool != null)
+            pool.shutdownNow();
     }
 
     /*
@@ -104,13 +354,16 @@ public class AISystem extends DelayedIteratingSystem
     @Override
     protected void processExpired(final int entityId)
     {
-        // Alertness can be modified by many things. It's net effect here is
+        // Alertness can be modified by many things. Its net effect here is
         // as a "cooldown modifier", influencing how often a creature's AI ticks
-        // FIXME right now this is not used at all
-        final float alertness = 1f - mAlert.get(entityId).value;
+        final float idleness = 1f + (IDLE_FACTOR - 1f) * (1f - mAlert.get(entityId).value);
 
         final AI ai = mAI.get(entityId);
 
+        // made in some other way than from a template
+        if (ai.profile == null)
+            ai.profile = resolve("entity " + entityId, ai.behaviours);
+
         if (ai.time <= 0f)
         {
             // whatever action had been issued before, it's definitely finished now,
@@ -121,48 +374,438 @@ public class AISystem extends DelayedIteratingSystem
 
         final Stamina stamina = mStamina.get(entityId);
 
-        // if we are exhausted, we'll skip this turn's AI
-        if (stamina.exhausted)
+        // if we are exhausted, we'll skip this turn's AI: and if we are following a plan,
+        // we don't think again until it's done (or something happens, see alert)
+        if (!stamina.exhausted && !sAction.hasPlan(entityId))
+            due.add(entityId);
+        else
+            mHeard.remove(entityId);
+
+        // whatever the outcome of the evaluation, the next tick is still randomised
+        ai.lod = sLod.getLevel(entityId);
+        ai.cooldown = (r.nextFloat() * BASE_TICKTIME + 0.5f) * idleness * sLod.getCooldownFactor(ai.lod);
+
+        offerDelay(ai.cooldown);
+    }
+
+    @Override
+    protected void end()
+    {
+        admit();
+
+        final int size = due.size();
+
+        if (size == 0)
+            return;
+
+        final long start = System.nanoTime();
+
+        // same order whatever the order they became due in
+        Arrays.sort(due.getData(), 0, size);
+
+        if (idle.length < size)
+        {
+            final int oldLength = idle.length;
+
+            idle = Arrays.copyOf(idle, size);
+            found = Arrays.copyOf(found, size);
+            winners = Arrays.copyOf(winners, size);
+            toBeat = Arrays.copyOf(toBeat, size);
+
+            for (int i = oldLength; i < size; i++)
+            {
+                idle[i] = new Context();
+                found[i] = new Context[registry.length];
+            }
+        }
+
+        // nothing lazy must be left for the evaluations to build
+        map.prepare();
+
+        if (batched)
+        {
+            evaluateBatches(size);
+        }
+        else if (pool == null || size == 1)
+        {
+            for (int i = 0; i < size; i++)
+                evaluate(i);
+        }
+        else
+        {
+            pool.submit(() -> IntStream.range(0, size).parallel().forEach(this::evaluate)).join();
+        }
+
+        for (int i = 0; i < size; i++)
         {
-            ai.cooldown = (r.nextFloat() * BASE_TICKTIME + 0.5f) * alertness;
+            commit(winners[i]);
+        }
+
+        due.clear();
 
-            offerDelay(ai.cooldown);
+        final long perCreature = (System.nanoTime() - start) / size;
 
+        nanosPerCreature = nanosPerCreature == 0L ? perCreature : (7L * nanosPerCreature + perCreature) / 8L;
+    }
+
+    /**
+     * Decides which of the creatures due, and of those left waiting before, are evaluated in this tick.
+     * Those close to the player, or that heard something, always are; the others only as long as there's time
+     * left in the tick, oldest first. The rest wait in the backlog.
+     */
+    void admit()
+    {
+        if (backlog.isEmpty() && !sBudget.isOver() && nanosPerCreature * due.size() <= sBudget.getRemaining())
             return;
+
+        pending.clear();
+
+        // those that waited before go first, so that everybody gets their turn eventually
+        for (int i = 0, size = backlog.size(); i < size; i++)
+        {
+            final int entityId = backlog.get(i);
+
+            // it might have died, or gone dormant, while waiting
+            if (mAI.has(entityId) && !mDead.has(entityId))
+                pending.add(entityId);
+        }
+
+        for (int i = 0, size = due.size(); i < size; i++)
+        {
+            final int entityId = due.get(i);
+
+            if (!waiting.get(entityId))
+                pending.add(entityId);
         }
 
+        due.clear();
+        backlog.clear();
+        waiting.clear();
+
+        final long remaining = Math.max(0L, sBudget.getRemaining());
+
+        long allowed = nanosPerCreature == 0L ? Long.MAX_VALUE : remaining / nanosPerCreature;
+
+        for (int i = 0, size = pending.size(); i < size; i++)
+        {
+            final int entityId = pending.get(i);
+
+            if (mAI.get(entityId).lod == 0 || mHeard.has(entityId) || allowed-- > 0L)
+            {
+                due.add(entityId);
+            }
+            else
+            {
+                backlog.add(entityId);
+                waiting.set(entityId);
+            }
+        }
+
+        if (!backlog.isEmpty())
+            sBudget.defer(BudgetSystem.Work.AI, backlog.size());
+    }
+
+    /**
+     * Finds the behaviour that can beat the active score of the i-th creature due. Only reads the world.
+     */
+    void evaluate(final int i)
+    {
+        final int entityId = due.get(i);
+
+        final AI ai = mAI.get(entityId);
+
         // if any behaviour can beat the active score, it means it's urgent and we accept
         // that we might be interrupting a currently-running action
-        float     maxScore      = ai.score;
-        Behaviour bestBehaviour = null;
+        Context winner = idle[i].reset(entityId);
+
+        winner.score = ai.score;
+
+        // the most promising first, so we can stop as soon as the others can't do better
+        final Ranking ranking = rankings.get().rank(profileOf(entityId, ai), entityId, ai.lod);
+
+        for (int n = 0; n < ranking.size; n++)
+        {
+            if (ranking.bounds[n] <= winner.score)
+                break;
+
+            final Behaviour behaviour = ranking.behaviours[n];
+            final int       index     = ranking.indices[n];
+
+            // each behaviour fills in its own kind of context
+            if (found[i][index] == null)
+                found[i][index] = behaviour.newContext();
+
+            final Context ctx   = found[i][index].reset(entityId);
+            final float   score = behaviour.evaluate(entityId, ctx);
+
+            if (score > winner.score)
+            {
+                ctx.score = score;
+                ctx.behaviour = behaviour;
+
+                winner = ctx;
+            }
+        }
+
+        winners[i] = winner;
+    }
+
+    /**
+     * Evaluates all creatures due, one behaviour at a time. Only reads the world.
+     */
+    void evaluateBatches(final int size)
+    {
+        creatures.ensureCapacity(size);
+        creatures.size = size;
+
+        for (final Batch batch : batches)
+        {
+            batch.clear();
+        }
+
+        for (int i = 0; i < size; i++)
+        {
+            final int entityId = due.get(i);
+
+            final Position p = mPosition.get(entityId);
+            final Sight    s = mSight.get(entityId);
+            final Hunger   h = mHunger.get(entityId);
+            final Group    g = mGroup.get(entityId);
+            final Heard    e = mHeard.get(entityId);
+
+            creatures.entities[i] = entityId;
+            creatures.x[i] = p == null ? -1 : p.x;
+            creatures.y[i] = p == null ? -1 : p.y;
+            creatures.sight[i] = s == null ? 0 : s.value;
+            creatures.hunger[i] = h == null ? 0f : h.value / h.maxValue;
+            creatures.group[i] = g == null ? -1 : g.groupId;
+            creatures.heard[i] = e == null ? 0f : e.intensity;
+
+            final AI        ai      = mAI.get(entityId);
+            final AIProfile profile = profileOf(entityId, ai);
+
+            for (int n = 0; n < profile.indices.length; n++)
+            {
+                if (profile.behaviours[n].getLodLimit() < ai.lod)
+                    continue;
+
+                batches[profile.indices[n]].add(i, profile.behaviours[n].upperBound(entityId));
+            }
+
+            // nothing to beat yet but the active score
+            winners[i] = idle[i].reset(entityId);
+            winners[i].score = ai.score;
+            toBeat[i] = winners[i].score;
+        }
 
-        for (final String bName : ai.behaviours)
+        Arrays.fill(done, false);
+
+        while (true)
         {
-            final Behaviour behaviour = behaviours.get(bName);
+            // the most promising batch, after dropping the creatures for which it can't make a difference
+            int   next    = -1;
+            float nextSum = 0f;
+
+            for (int n = 0; n < names.length; n++)
+            {
+                if (done[n])
+                    continue;
+
+                final float sum = batches[n].retain(toBeat);
+
+                if (sum > nextSum)
+                {
+                    next = n;
+                    nextSum = sum;
+                }
+            }
+
+            if (next < 0)
+                break;
+
+            done[next] = true;
 
-            final float temp = behaviour.evaluate(entityId);
+            final Behaviour behaviour = registry[next];
+            final Batch     batch     = batches[next];
 
-            if (temp > maxScore)
+            final int chunks = (batch.size + CHUNK - 1) / CHUNK;
+
+            // a creature is only in one chunk, so it's only ever evaluated by one thread at a time
+            if (pool == null || chunks == 1)
+            {
+                behaviour.evaluate(batch, 0, batch.size);
+            }
+            else
+            {
+                pool.submit(() -> IntStream.range(0, chunks)
+                                           .parallel()
+                                           .forEach(c -> behaviour.evaluate(batch,
+                                                                            c * CHUNK,
+                                                                            Math.min(batch.size, (c + 1) * CHUNK))))
+                    .join();
+            }
+
+            for (int k = 0; k < batch.size; k++)
             {
-                maxScore = temp;
-                bestBehaviour = behaviour;
+                final int i = batch.members[k];
+
+                if (batch.scores[k] > winners[i].score)
+                {
+                    final Context ctx = batch.contexts[k];
+
+                    ctx.score = batch.scores[k];
+                    ctx.behaviour = behaviour;
+
+                    winners[i] = ctx;
+                    toBeat[i] = ctx.score;
+                }
             }
         }
 
+        // batches only look at the packed arrays, but the winners need to know where they are
+        for (int i = 0; i < size; i++)
+        {
+            winners[i].pos = mPosition.get(creatures.entities[i]);
+        }
+    }
+
+    /**
+     * Runs the behaviour chosen for the creature, if any, and updates its AI.
+     */
+    void commit(final Context ctx)
+    {
+        final int entityId = ctx.entityId;
+
+        // someone acting before us might have killed us
+        if (mDead.has(entityId))
+            return;
+
+        final AI ai = mAI.get(entityId);
+
         // run the new behaviour and update the context
-        if (bestBehaviour != null && maxScore > 0f)
+        if (ctx.behaviour != null && ctx.score > 0f)
         {
-            // System.out.println(entityId + ": " + bestBehaviour.getClass().getSimpleName() + " (" + maxScore + ")");
+            // System.out.println(entityId + ": " + ctx.behaviour.getClass().getSimpleName() + " (" + ctx.score + ")");
 
-            ai.time = bestBehaviour.update();
-            ai.activeBehaviour = bestBehaviour;
-            ai.score = maxScore;
+            ai.time = ctx.behaviour.update(ctx);
+            ai.activeBehaviour = ctx.behaviour;
+            ai.score = ctx.score;
         }
 
-        // whatever the outcome of the above, the next tick is still randomised
+        // we calm down, unless we are busy with something that matters
+        final Alertness alertness = mAlert.get(entityId);
+        alertness.value = Math.max(alertness.value * ALERT_DECAY, ai.time > 0f ? ai.score : 0f);
 
-        ai.cooldown = (r.nextFloat() * BASE_TICKTIME + 0.5f) * alertness;
+        // whatever we heard, we had our chance to react to it
+        mHeard.remove(entityId);
+    }
 
-        offerDelay(ai.cooldown);
+    /**
+     * Something happened that the entity should pay attention to: it becomes at least as alert as given,
+     * and its AI ticks right away.
+     *
+     * @param entityId
+     * @param value    between 0 (not worth a look) and 1 (danger)
+     */
+    public void alert(final int entityId, final float value)
+    {
+        final Alertness alertness = mAlert.get(entityId);
+
+        if (alertness == null || alertness.value >= value)
+            return;
+
+        alertness.value = value;
+
+        // whatever we were planning to do, we'll reconsider it
+        sAction.cancelPlan(entityId);
+
+        wake(entityId);
+    }
+
+    /**
+     * Makes the AI of the entity tick as soon as possible, instead of waiting for its cooldown.
+     *
+     * @param entityId
+     */
+    public void wake(final int entityId)
+    {
+        hasten(entityId, 0f);
+    }
+
+    /**
+     * Makes the AI of the entity tick within the given time, if it was going to wait longer than that.
+     *
+     * @param entityId
+     * @param maxCooldown
+     */
+    public void hasten(final int entityId, final float maxCooldown)
+    {
+        final AI ai = mAI.get(entityId);
+
+        if (ai == null || ai.cooldown <= maxCooldown)
+            return;
+
+        ai.cooldown = maxCooldown;
+
+        offerDelay(maxCooldown);
+    }
+
+    /**
+     * The behaviours of a creature, sorted by the best score they could give it (highest first).
+     */
+    class Ranking
+    {
+        Behaviour[] behaviours;
+        int[]       indices;
+        float[]     bounds;
+        int         size;
+
+        Ranking()
+        {
+            behaviours = new Behaviour[8];
+            indices = new int[8];
+            bounds = new float[8];
+        }
+
+        Ranking rank(final AIProfile profile, final int entityId, final int lod)
+        {
+            final int length = profile.behaviours.length;
+
+            if (length > behaviours.length)
+            {
+                behaviours = new Behaviour[length];
+                indices = new int[length];
+                bounds = new float[length];
+            }
+
+            size = 0;
+
+            for (int k = 0; k < length; k++)
+            {
+                final Behaviour behaviour = profile.behaviours[k];
+
+                // too detailed for where the creature is
+                if (behaviour.getLodLimit() < lod)
+                    continue;
+
+                final float bound = behaviour.upperBound(entityId);
+
+                // insertion sort, as there are only a few: ties keep their original order
+                int n = size++;
+                while (n > 0 && bounds[n - 1] < bound)
+                {
+                    behaviours[n] = behaviours[n - 1];
+                    indices[n] = indices[n - 1];
+                    bounds[n] = bounds[n - 1];
+                    n--;
+                }
+
+                behaviours[n] = behaviour;
+                indices[n] = profile.indices[k];
+                bounds[n] = bound;
+            }
+
+            return this;
+        }
     }
 }
@@ -24,14 +24,26 @@ import com.artemis.systems.DelayedIteratingSystem;
 import com.github.fabioticconi.alone.components.Dead;
 import com.github.fabioticconi.alone.components.actions.Action;
 import com.github.fabioticconi.alone.components.actions.ActionContext;
+import com.github.fabioticconi.alone.components.actions.ActionQueue;
+
+import java.util.List;
 
 /**
+ * Runs actions once their delay has passed.
+ * <p>
+ * An entity can also be given a plan, that is a few actions to be done one after the other: each step
+ * starts as soon as the previous is done, provided it's still possible. When the plan is over, or it
+ * can't go on, the AI of the entity is woken up to decide what to do next.
+ * <p>
  * Author: Fabio Ticconi
  * Date: 15/10/17
  */
 public class ActionSystem extends DelayedIteratingSystem
 {
-    ComponentMapper<Action> mAction;
+    ComponentMapper<Action>      mAction;
+    ComponentMapper<ActionQueue> mQueue;
+
+    AISystem sAI;
 
     public ActionSystem()
     {
@@ -58,6 +70,24 @@ public class ActionSystem extends DelayedIteratingSystem
         a.context.doAction();
 
         mAction.remove(entityId);
+
+        final ActionQueue queue = mQueue.get(entityId);
+
+        if (queue == null)
+            return;
+
+        final ActionContext next = queue.next();
+
+        if (next != null)
+        {
+            start(next);
+
+            return;
+        }
+
+        // the plan is done, or broken: time to think again
+        mQueue.remove(entityId);
+        sAI.wake(entityId);
     }
 
     public float act(final ActionContext context)
@@ -92,6 +122,9 @@ public class ActionSystem extends DelayedIteratingSystem
             }
         }
 
+        // doing something else entirely, so whatever we had planned is off
+        mQueue.remove(actorId);
+
         final boolean tryAct = context.tryAction();
 
         if (!tryAct)
@@ -108,16 +141,68 @@ public class ActionSystem extends DelayedIteratingSystem
         }
         else
         {
-            a = mAction.create(actorId);
-
-            a.targets = context.targets;
-
-            // inside the context there's the original delay, but we copy it instead of directly using that
-            // so that we can decrease without modifying the context (useful if we need to know how much
-            // time has already passed if something, eg an interruption, happens)
-            a.set(context, context.delay);
+            start(context);
         }
 
         return context.delay;
     }
+
+    /**
+     * Starts the first step of the plan right away, and queues the others. They must all be for the same entity.
+     *
+     * @param steps
+     * @return the delay of the first step, or 0 if it couldn't be started (and so the plan was dropped)
+     */
+    public float plan(final List<ActionContext> steps)
+    {
+        if (steps.isEmpty())
+            return 0f;
+
+        final ActionContext first = steps.get(0);
+        final float         delay = act(first);
+
+        if (delay <= 0f || steps.size() == 1)
+            return delay;
+
+        final ActionQueue queue = mQueue.create(first.actorId);
+
+        queue.steps.clear();
+        queue.steps.addAll(steps.subList(1, steps.size()));
+
+        return delay;
+    }
+
+    /**
+     * @param entityId
+     * @return true if the entity has more to do after its current action
+     */
+    public boolean hasPlan(final int entityId)
+    {
+        return mQueue.has(entityId);
+    }
+
+    /**
+     * Drops whatever the entity was planning to do after its current action.
+     *
+     * @param entityId
+     */
+    public void cancelPlan(final int entityId)
+    {
+        mQueue.remove(entityId);
+    }
+
+    void start(final ActionContext context)
+    {
+        final Action a = mAction.create(context.actorId);
+
+        a.targets = context.targets;
+
+        // inside the context there's the original delay, but we copy it instead of directly using that
+        // so that we can decrease without modifying the context (useful if we need to know how much
+        // time has already passed if something, eg an interruption, happens)
+        a.set(context, context.delay);
+
+        // the component might have been reused rather than added, so we must tell when it's due ourselves
+        offerDelay(context.delay);
+    }
 }
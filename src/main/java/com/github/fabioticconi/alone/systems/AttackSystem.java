@@ -47,6 +47,9 @@ public class AttackSystem extends PassiveSystem
 {
     static final Logger log = LoggerFactory.getLogger(AttackSystem.class);
 
+    // how many steps away a fight can be heard
+    static final int NOISE = 8;
+
     ComponentMapper<Strength> mStrength;
     ComponentMapper<Agility>  mAgility;
     ComponentMapper<Health>   mHealth;
@@ -63,6 +66,7 @@ public class AttackSystem extends PassiveSystem
     StaminaSystem sStamina;
     ItemSystem    sItem;
     MessageSystem msg;
+    NoiseSystem   sNoise;
 
     public AttackAction attack(final int entityId, final int targetId)
     {
@@ -135,6 +139,8 @@ public class AttackSystem extends PassiveSystem
             sStamina.consume(actorId, cost);
             sStamina.consume(targetId, 0.25f);
 
+            sNoise.makeNoise(actorId, p.x, p.y, NOISE);
+
             final float toHit = Util.clamp((cAgility.value - tAgility.value + 4) / 8f, 0.05f, 0.95f);
 
             if (r.nextFloat() < toHit)
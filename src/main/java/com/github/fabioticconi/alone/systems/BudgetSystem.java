@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.systems;
+
+import com.artemis.BaseSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+
+/**
+ * Keeps track of how much of the tick's time budget has been used.
+ * <p>
+ * It must be the first of the game logic systems, as the tick starts when it runs. Systems doing work that
+ * can wait (evaluating far creatures, planning paths, updating vitals) look at the budget and, when it's
+ * been used up, leave that work for a later tick and report it here. Those checking late in the tick, like
+ * the vitals, must come after the systems that use up most of it. What was put off, and how often,
+ * is logged every now and then.
+ * <p>
+ * With a budget of zero there's no limit, and nothing is ever put off.
+ * <p>
+ * Author: Fabio Ticconi
+ * Date: 18/10/26
+ */
+public class BudgetSystem extends BaseSystem
+{
+    static final Logger log = LoggerFactory.getLogger(BudgetSystem.class);
+
+    final long  budgetNanos;
+    final float reportInterval;
+
+    long  tickStart;
+    float elapsed;
+
+    // since the last report
+    int          ticks;
+    int          ticksOver;
+    int          ticksDropped;
+    final long[] deferred;
+    boolean      over;
+
+    /**
+     * @param budget         how many milliseconds a tick can take before work is put off (0 means no limit)
+     * @param reportInterval how often (in seconds) to log what was put off
+     */
+    public BudgetSystem(final float budget, final float reportInterval)
+    {
+        this.budgetNanos = (long) (budget * 1000000L);
+        this.reportInterval = reportInterval;
+
+        deferred = new long[Work.values().length];
+    }
+
+    @Override
+    protected void processSystem()
+    {
+        tickStart = System.nanoTime();
+        over = false;
+        ticks++;
+
+        elapsed += world.getDelta();
+
+        if (elapsed < reportInterval)
+            return;
+
+        if (ticksOver > 0 || ticksDropped > 0)
+        {
+            log.info("over budget in {} of {} ticks, {} ticks dropped; put off: {} AIs, {} paths, {} vitals",
+                     ticksOver,
+                     ticks,
+                     ticksDropped,
+                     deferred[Work.AI.ordinal()],
+                     deferred[Work.PATHS.ordinal()],
+                     deferred[Work.VITALS.ordinal()]);
+        }
+
+        elapsed = 0f;
+        ticks = 0;
+        ticksOver = 0;
+        ticksDropped = 0;
+        Arrays.fill(deferred, 0L);
+    }
+
+    /**
+     * @return how many nanoseconds are left in this tick (a lot, if there's no limit)
+     */
+    public long getRemaining()
+    {
+        if (budgetNanos <= 0L)
+            return Long.MAX_VALUE;
+
+        return budgetNanos - (System.nanoTime() - tickStart);
+    }
+
+    /**
+     * @return true if this tick has already used up its budget
+     */
+    public boolean isOver()
+    {
+        return getRemaining() <= 0L;
+    }
+
+    /**
+     * Records that some work was left for a later tick.
+     *
+     * @param work  what kind of work
+     * @param count how much of it (eg, how many creatures)
+     */
+    public void defer(final Work work, final int count)
+    {
+        deferred[work.ordinal()] += count;
+
+        if (!over)
+        {
+            over = true;
+            ticksOver++;
+        }
+    }
+
+    /**
+     * Records that the game loop couldn't keep up, and skipped some ticks altogether.
+     *
+     * @param count
+     */
+    public void drop(final int count)
+    {
+        ticksDropped += count;
+    }
+
+    /**
+     * @param work
+     * @return how much of that work was put off since the last report
+     */
+    public long getDeferred(final Work work)
+    {
+        return deferred[work.ordinal()];
+    }
+
+    public enum Work
+    {
+        AI,
+        PATHS,
+        VITALS
+    }
+}
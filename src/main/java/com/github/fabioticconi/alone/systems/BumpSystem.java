@@ -23,12 +23,15 @@ import com.github.fabioticconi.alone.components.*;
 import com.github.fabioticconi.alone.components.actions.ActionContext;
 import com.github.fabioticconi.alone.components.attributes.Sight;
 import com.github.fabioticconi.alone.constants.Side;
+import com.github.fabioticconi.alone.map.NavigationLayer;
 import com.github.fabioticconi.alone.utils.Coords;
 import net.mostlyoriginal.api.system.core.PassiveSystem;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import rlforj.math.Point;
 
+import java.util.ArrayList;
+
 /**
  * Author: Fabio Ticconi
  * Date: 11/10/17
@@ -37,6 +40,15 @@ public class BumpSystem extends PassiveSystem
 {
     static final Logger log = LoggerFactory.getLogger(BumpSystem.class);
 
+    // straight to the target first, then slightly off
+    static final int[] GREEDY_ROTATIONS = { 0, 1, -1 };
+
+    // ways around a herd-mate that is in the way
+    static final int[] SIDESTEP_ROTATIONS = { 1, -1 };
+
+    // how many steps a walk is planned ahead
+    static final int PLAN_LENGTH = 8;
+
     ComponentMapper<Health>    mHealth;
     ComponentMapper<Cuttable>  mCuttable;
     ComponentMapper<Pushable>  mPushable;
@@ -46,18 +58,39 @@ public class BumpSystem extends PassiveSystem
     ComponentMapper<Sight>     mSight;
     ComponentMapper<Path>      mPath;
 
-    ActionSystem   sAction;
-    AttackSystem   sAttack;
-    TreeSystem     sTree;
-    PushSystem     sPush;
-    CrushSystem    sCrush;
-    MovementSystem sMove;
-    MapSystem      map;
+    ActionSystem      sAction;
+    AttackSystem      sAttack;
+    TreeSystem        sTree;
+    PushSystem        sPush;
+    CrushSystem       sCrush;
+    MovementSystem    sMove;
+    PathRequestSystem sPathRequest;
+    ReservationSystem sReservation;
+    MapSystem         map;
 
     public float bumpAction(final int actorId, final Side direction)
+    {
+        final ActionContext c = bump(actorId, direction);
+
+        final float delay = sAction.act(c);
+
+        reserve(c, delay);
+
+        return delay;
+    }
+
+    /**
+     * Decides what stepping in that direction means right now: moving, stepping around a herd-mate, or
+     * doing something to whatever is in the way. Nothing is started.
+     *
+     * @param actorId
+     * @param direction
+     * @return the action, or null if there's nothing to do
+     */
+    ActionContext bump(final int actorId, final Side direction)
     {
         if (direction.equals(Side.HERE))
-            return 0f;
+            return null;
 
         final Position p = mPos.get(actorId);
 
@@ -65,7 +98,7 @@ public class BumpSystem extends PassiveSystem
         final int newY = p.y + direction.y;
 
         if (!map.contains(newX, newY))
-            return 0f;
+            return null;
 
         ActionContext c = null;
 
@@ -73,11 +106,17 @@ public class BumpSystem extends PassiveSystem
 
         if (targetId < 0)
         {
-            c = sMove.move(actorId, direction);
-            sAction.act(c);
-            return c.delay;
+            // a herd-mate is already stepping there
+            if (sReservation.isReservedAgainst(actorId, newX, newY))
+                return sidestep(actorId, p, direction);
+
+            return sMove.move(actorId, direction);
         }
 
+        // we don't push our way through our own herd
+        if (sReservation.isGroupMate(actorId, targetId))
+            return sidestep(actorId, p, direction);
+
         // BUMPING!
 
         // if we were path-moving, now, whatever happens next, we stop
@@ -104,7 +143,7 @@ public class BumpSystem extends PassiveSystem
             log.warn("{} bumped into {} but couldn't do anything", actorId, targetId);
         }
 
-        return sAction.act(c);
+        return c;
     }
 
     public float bumpAction(final int actorId, final Position target)
@@ -125,22 +164,231 @@ public class BumpSystem extends PassiveSystem
         }
 
         // let's give them the opportunity to plan a path even if the creature is at the border of the vision
-        // but apparently "enclosed" - so we increase the radius of the grid to be explored by AStar
-        final Point[] path = map.getPath(pos.x, pos.y, target.x, target.y, sight.value + 2);
+        // but apparently "enclosed" - so we increase the radius of the grid to be explored by the planner
+        final PathRequestSystem.Request request = sPathRequest.request(actorId,
+                                                                       pos.x,
+                                                                       pos.y,
+                                                                       target.x,
+                                                                       target.y,
+                                                                       sight.value + 2);
+
+        if (!request.isReady())
+        {
+            // the path is still being computed, so we just try to get closer in the meantime
+            return greedyStep(actorId, pos, target);
+        }
+
+        final Point p = request.next(pos.x, pos.y);
 
-        if (path == null || path.length < 2)
+        if (p == null)
         {
             // the target position is the same as the entity's position,
-            // or the target is not visible. Either way, we don't move.
+            // or the target is not reachable. Either way, we don't move.
 
             log.warn("{} cannot find a path from {} to {}", actorId, pos, target);
 
             return 0f;
         }
 
-        // position 0 is "HERE"
-        final Point p = path[1];
-
         return bumpAction(actorId, Side.getSide(pos.x, pos.y, p.x, p.y));
     }
+
+    /**
+     * Walks along the path to the target and, once within reach, does the given action, all as a single plan
+     * (see {@link ActionSystem#plan(java.util.List)}). If the target is too far, only the first few steps are
+     * planned. Each step is a bump into the next cell of the path, decided when it's its turn.
+     * <p>
+     * When there's no path yet, or the first step can't be taken, it falls back to a normal bump.
+     *
+     * @param actorId
+     * @param target
+     * @param reach   how close to the target the actor must be to do the action
+     * @param then    the action to do at the end
+     * @return the delay of what was started
+     */
+    public float walkThen(final int actorId, final Position target, final int reach, final ActionContext then)
+    {
+        final Position pos = mPos.get(actorId);
+
+        if (Coords.distanceChebyshev(pos.x, pos.y, target.x, target.y) <= reach)
+            return sAction.act(then);
+
+        if (then == null)
+            return bumpAction(actorId, target);
+
+        final Sight sight = mSight.get(actorId);
+
+        final PathRequestSystem.Request request = sPathRequest.request(actorId,
+                                                                       pos.x,
+                                                                       pos.y,
+                                                                       target.x,
+                                                                       target.y,
+                                                                       sight.value + 2);
+
+        final int start = request.isReady() ? request.indexOf(pos.x, pos.y) : -1;
+
+        if (start < 0)
+            return bumpAction(actorId, target);
+
+        final Point[]                  path  = request.getPath();
+        final ArrayList<ActionContext> steps = new ArrayList<>(PLAN_LENGTH + 1);
+
+        int x = pos.x;
+        int y = pos.y;
+
+        for (int i = start + 1; i < path.length && steps.size() < PLAN_LENGTH; i++)
+        {
+            steps.add(walk(actorId, path[i].x, path[i].y));
+
+            x = path[i].x;
+            y = path[i].y;
+
+            if (Coords.distanceChebyshev(x, y, target.x, target.y) <= reach)
+            {
+                steps.add(then);
+                break;
+            }
+        }
+
+        final float delay = sAction.plan(steps);
+
+        // the way is blocked, but bumping might still get us somewhere
+        return delay > 0f ? delay : bumpAction(actorId, target);
+    }
+
+    /**
+     * Steps towards the target, or just beside that direction if it's blocked.
+     *
+     * @param actorId
+     * @param pos
+     * @param target
+     * @return
+     */
+    float greedyStep(final int actorId, final Position pos, final Position target)
+    {
+        final Side            direction = Side.getSide(pos.x, pos.y, target.x, target.y);
+        final NavigationLayer layer     = map.getLayer(sMove.getLocomotion(actorId));
+
+        for (final int rotation : GREEDY_ROTATIONS)
+        {
+            final Side side = direction.rotate(rotation);
+
+            if (layer.isFree(pos.x, pos.y, side))
+                return bumpAction(actorId, side);
+        }
+
+        return 0f;
+    }
+
+    /**
+     * @param actorId
+     * @param x
+     * @param y
+     * @return a step into that cell, which must be next to the actor by the time it's done
+     */
+    public WalkAction walk(final int actorId, final int x, final int y)
+    {
+        final WalkAction a = new WalkAction();
+
+        a.actorId = actorId;
+        a.x = x;
+        a.y = y;
+
+        return a;
+    }
+
+    /**
+     * If a move has started, the cell is ours until we get there.
+     *
+     * @param c
+     * @param delay
+     */
+    void reserve(final ActionContext c, final float delay)
+    {
+        if (!(c instanceof MovementSystem.MoveAction) || delay <= 0f)
+            return;
+
+        final Position p    = mPos.get(c.actorId);
+        final Side     side = ((MovementSystem.MoveAction) c).direction;
+
+        sReservation.reserve(c.actorId, p.x + side.x, p.y + side.y, delay);
+    }
+
+    /**
+     * Steps just beside the given direction, if there's a free cell that no herd-mate is heading to.
+     * Otherwise we wait.
+     *
+     * @param actorId
+     * @param pos
+     * @param direction
+     * @return
+     */
+    ActionContext sidestep(final int actorId, final Position pos, final Side direction)
+    {
+        final NavigationLayer layer = map.getLayer(sMove.getLocomotion(actorId));
+
+        for (final int rotation : SIDESTEP_ROTATIONS)
+        {
+            final Side side = direction.rotate(rotation);
+
+            final int x = pos.x + side.x;
+            final int y = pos.y + side.y;
+
+            if (layer.isFree(x, y) && !sReservation.isReservedAgainst(actorId, x, y))
+                return sMove.move(actorId, side);
+        }
+
+        return null;
+    }
+
+    /**
+     * A step of a planned walk. What it actually does is only decided when it's about to start, the same
+     * way as {@link #bumpAction(int, Side)}: the cell might have been taken, or reserved by a herd-mate,
+     * since the plan was made.
+     */
+    public class WalkAction extends ActionContext
+    {
+        public int x;
+        public int y;
+
+        ActionContext bump;
+
+        @Override
+        public boolean tryAction()
+        {
+            final Position p = mPos.get(actorId);
+
+            // we've been pushed off the path (or had to step around someone)
+            if (Coords.distanceChebyshev(p.x, p.y, x, y) != 1)
+                return false;
+
+            bump = bump(actorId, Side.getSide(p.x, p.y, x, y));
+
+            if (bump == null || !bump.tryAction())
+                return false;
+
+            cost = bump.cost;
+            delay = bump.delay;
+
+            targets.clear();
+            targets.addAll(bump.targets);
+
+            // only called right before starting, so the move can already be reserved
+            reserve(bump, delay);
+
+            return true;
+        }
+
+        @Override
+        public void doAction()
+        {
+            bump.doAction();
+        }
+
+        @Override
+        public boolean equals(final Object o)
+        {
+            return super.equals(o) && x == ((WalkAction) o).x && y == ((WalkAction) o).y;
+        }
+    }
 }
@@ -60,6 +60,7 @@ public class CreatureSystem extends PassiveSystem
     MapSystem   sMap;
     ItemSystem  sItems;
     MapSystem   map;
+    AISystem    sAI;
 
     PlayerManager pManager;
 
@@ -110,6 +111,10 @@ public class CreatureSystem extends PassiveSystem
         {
             final CreatureTemplate temp = entry.getValue();
             temp.tag = entry.getKey();
+
+            // behaviours are looked up here once, rather than by name at every AI tick
+            if (temp.ai != null)
+                sAI.compile(temp.tag, temp.ai.behaviours);
         }
     }
 
@@ -208,11 +213,15 @@ public class CreatureSystem extends PassiveSystem
             edit.add(template.carnivore);
         if (template.ai != null)
         {
-            template.ai.cooldown = r.nextFloat() * AISystem.BASE_TICKTIME + 1.0f;
-            edit.add(template.ai);
+            // the AI state is per creature, only the profile is shared
+            final AI ai = edit.create(AI.class);
+
+            ai.behaviours = template.ai.behaviours;
+            ai.profile = sAI.getProfile(tag);
+            ai.cooldown = r.nextFloat() * AISystem.BASE_TICKTIME + 1.0f;
         }
         if (template.group != null)
-            edit.add(template.group);
+            edit.create(Group.class).groupId = template.group.groupId;
         if (template.sprite != null)
             edit.add(template.sprite);
         if (template.player != null)
@@ -224,6 +233,10 @@ public class CreatureSystem extends PassiveSystem
 
         edit.create(Alertness.class).value = 0.0f;
 
+        // made now rather than when first needed, as the AI is not allowed to add components
+        if (template.ai != null)
+            edit.create(Memory.class);
+
         makeDerivative(id);
 
         return id;
@@ -246,8 +259,8 @@ public class CreatureSystem extends PassiveSystem
         pManager.setPlayer(world.getEntity(id), "player");
         world.edit(id).add(new Name("You", "you"));
 
-        // add a herd of buffalos
-        int    groupId = sGroup.createGroup();
+        // add a herd of buffalos, following a leader
+        int    groupId = sGroup.createGroup(true);
         IntBag group   = sGroup.getGroup(groupId);
         for (int i = 0; i < 4; i++)
         {
@@ -42,6 +42,9 @@ public class CrushSystem extends PassiveSystem
 {
     static final Logger log = LoggerFactory.getLogger(CrushSystem.class);
 
+    // how many steps away a boulder being crushed can be heard
+    static final int NOISE = 10;
+
     ComponentMapper<Crushable> mCrush;
     ComponentMapper<Speed>     mSpeed;
     ComponentMapper<Strength>  mStr;
@@ -52,6 +55,7 @@ public class CrushSystem extends PassiveSystem
     ItemSystem    sItem;
     MessageSystem msg;
     MapSystem     map;
+    NoiseSystem   sNoise;
 
     public CrushAction crush(final int entityId, final int targetId)
     {
@@ -127,6 +131,8 @@ public class CrushSystem extends PassiveSystem
 
             // consume a fixed amount of stamina
             sStamina.consume(actorId, cost);
+
+            sNoise.makeNoise(actorId, p.x, p.y, NOISE);
         }
     }
 }
@@ -18,26 +18,208 @@
 
 package com.github.fabioticconi.alone.systems;
 
+import com.artemis.Aspect;
 import com.artemis.ComponentMapper;
+import com.artemis.EntitySubscription;
 import com.artemis.utils.Bag;
 import com.artemis.utils.IntBag;
 import com.artemis.utils.IntDeque;
 import com.github.fabioticconi.alone.components.Group;
+import com.github.fabioticconi.alone.components.Position;
 import net.mostlyoriginal.api.system.core.PassiveSystem;
 
+import java.util.Arrays;
+
 public class GroupSystem extends PassiveSystem
 {
-    ComponentMapper<Group> mGroup;
+    ComponentMapper<Group>    mGroup;
+    ComponentMapper<Position> mPosition;
+
+    MapSystem map;
 
     Bag<IntBag> groups;
+    Bag<Stats>  stats;
 
     IntDeque recycling;
 
+    // group, last known position and place in the formation of every member on the map (-1 if not tracked)
+    int[] memberOf;
+    int[] memberX;
+    int[] memberY;
+    int[] memberSlot;
+
     public GroupSystem()
     {
         groups = new Bag<>();
+        stats = new Bag<>();
 
         recycling = new IntDeque();
+
+        memberOf = new int[64];
+        memberX = new int[64];
+        memberY = new int[64];
+        memberSlot = new int[64];
+
+        Arrays.fill(memberOf, -1);
+    }
+
+    @Override
+    protected void initialize()
+    {
+        // members join the statistics when they are on the map, and leave them when they die
+        world.getAspectSubscriptionManager()
+             .get(Aspect.all(Group.class, Position.class))
+             .addSubscriptionListener(new EntitySubscription.SubscriptionListener()
+             {
+                 @Override
+                 public void inserted(final IntBag entities)
+                 {
+                     for (int i = 0, size = entities.size(); i < size; i++)
+                     {
+                         final int entityId = entities.get(i);
+                         final int groupId  = mGroup.get(entityId).groupId;
+
+                         final IntBag group = groups.safeGet(groupId);
+
+                         if (group == null)
+                             continue;
+
+                         if (!group.contains(entityId))
+                             group.add(entityId);
+
+                         final Position p = mPosition.get(entityId);
+
+                         track(entityId, groupId, p.x, p.y);
+                     }
+                 }
+
+                 @Override
+                 public void removed(final IntBag entities)
+                 {
+                     for (int i = 0, size = entities.size(); i < size; i++)
+                     {
+                         final int entityId = entities.get(i);
+
+                         if (entityId >= memberOf.length || memberOf[entityId] < 0)
+                             continue;
+
+                         // dead creatures are not part of the group anymore
+                         groups.get(memberOf[entityId]).removeValue(entityId);
+
+                         untrack(entityId);
+                     }
+                 }
+             });
+
+        map.getObstacles().addListener(this::cellChanged);
+    }
+
+    void cellChanged(final int x, final int y)
+    {
+        final int entityId = map.getObstacles().get(x, y);
+
+        if (entityId >= 0)
+            moved(entityId, x, y);
+    }
+
+    void moved(final int entityId, final int x, final int y)
+    {
+        if (entityId >= memberOf.length || memberOf[entityId] < 0)
+            return;
+
+        if (memberX[entityId] == x && memberY[entityId] == y)
+            return;
+
+        stats.get(memberOf[entityId]).move(memberX[entityId], memberY[entityId], x, y);
+
+        memberX[entityId] = x;
+        memberY[entityId] = y;
+    }
+
+    void track(final int entityId, final int groupId, final int x, final int y)
+    {
+        if (entityId >= memberOf.length)
+        {
+            final int oldLength = memberOf.length;
+            final int newLength = Math.max(2 * oldLength, entityId + 1);
+
+            memberOf = Arrays.copyOf(memberOf, newLength);
+            memberX = Arrays.copyOf(memberX, newLength);
+            memberY = Arrays.copyOf(memberY, newLength);
+            memberSlot = Arrays.copyOf(memberSlot, newLength);
+
+            Arrays.fill(memberOf, oldLength, newLength, -1);
+        }
+
+        if (memberOf[entityId] >= 0)
+            untrack(entityId);
+
+        memberOf[entityId] = groupId;
+        memberX[entityId] = x;
+        memberY[entityId] = y;
+
+        final Stats st = stats.get(groupId);
+
+        st.add(x, y);
+
+        // the first member to show up leads, until someone else is elected
+        if (st.led && st.leaderId < 0)
+            st.leaderId = entityId;
+
+        st.updateSlots();
+    }
+
+    void untrack(final int entityId)
+    {
+        if (entityId >= memberOf.length || memberOf[entityId] < 0)
+            return;
+
+        final Stats st = stats.get(memberOf[entityId]);
+
+        st.remove(memberX[entityId], memberY[entityId]);
+
+        memberOf[entityId] = -1;
+
+        if (st.leaderId == entityId)
+            elect(st);
+
+        st.updateSlots();
+    }
+
+    /**
+     * The member closest to the centre of the group becomes the new leader, so that the
+     * followers don't have to cross the whole herd to get in formation.
+     */
+    void elect(final Stats st)
+    {
+        st.leaderId = -1;
+
+        if (!st.led || st.count == 0)
+            return;
+
+        final IntBag group = groups.get(st.groupId);
+
+        final long cx = Math.floorDiv(st.sumX, st.count);
+        final long cy = Math.floorDiv(st.sumY, st.count);
+
+        long best = Long.MAX_VALUE;
+        for (int i = 0, size = group.size(); i < size; i++)
+        {
+            final int entityId = group.get(i);
+
+            if (entityId >= memberOf.length || memberOf[entityId] != st.groupId)
+                continue;
+
+            final long dx = memberX[entityId] - cx;
+            final long dy = memberY[entityId] - cy;
+            final long d  = dx * dx + dy * dy;
+
+            if (d < best)
+            {
+                best = d;
+                st.leaderId = entityId;
+            }
+        }
     }
 
     /**
@@ -46,6 +228,18 @@ public class GroupSystem extends PassiveSystem
      * @return the id of the group
      */
     public int createGroup()
+    {
+        return createGroup(false);
+    }
+
+    /**
+     * Creates a new, empty group. If led, one of the members is elected as leader and the others
+     * follow it, instead of each finding its own way to the rest of the group.
+     *
+     * @param led whether the group has a leader
+     * @return the id of the group
+     */
+    public int createGroup(final boolean led)
     {
         final IntBag newGroup = new IntBag(5);
 
@@ -60,6 +254,7 @@ public class GroupSystem extends PassiveSystem
         }
 
         groups.set(newId, newGroup);
+        stats.set(newId, new Stats(this, newId, led));
 
         return newId;
     }
@@ -77,7 +272,13 @@ public class GroupSystem extends PassiveSystem
     {
         final IntBag group = groups.get(groupId);
 
+        for (int i = 0, size = group.size(); i < size; i++)
+        {
+            untrack(group.get(i));
+        }
+
         groups.set(groupId, null);
+        stats.set(groupId, null);
         recycling.add(groupId);
 
         return group;
@@ -114,6 +315,29 @@ public class GroupSystem extends PassiveSystem
         return groups.get(groupId);
     }
 
+    /**
+     * Returns centre, bounds and size of the members of the group that are on the map. They are kept
+     * up to date as members move, join, leave or die, so reading them is cheap.
+     *
+     * @param groupId
+     * @return the statistics of the group, or null if the group doesn't exist
+     */
+    public Stats getStats(final int groupId)
+    {
+        return stats.safeGet(groupId);
+    }
+
+    /**
+     * @param groupId
+     * @return the leader of the group, or -1 if the group has no leader (or no members on the map)
+     */
+    public int getLeader(final int groupId)
+    {
+        final Stats st = stats.safeGet(groupId);
+
+        return st == null ? -1 : st.leaderId;
+    }
+
     /**
      * Creates a new group and adds the entity to it. Also takes care of adding
      * the Group component.
@@ -142,6 +366,11 @@ public class GroupSystem extends PassiveSystem
 
         mGroup.create(entityId).groupId = groupId;
 
+        final Position p = mPosition.get(entityId);
+
+        if (p != null)
+            track(entityId, groupId, p.x, p.y);
+
         return groupId;
     }
 
@@ -162,7 +391,8 @@ public class GroupSystem extends PassiveSystem
 
         final IntBag group = groups.get(groupId);
 
-        group.remove(entityId);
+        group.removeValue(entityId);
+        untrack(entityId);
 
         mGroup.remove(entityId);
     }
@@ -183,8 +413,207 @@ public class GroupSystem extends PassiveSystem
 
         final IntBag group = groups.get(g.groupId);
 
-        group.remove(entityId);
+        group.removeValue(entityId);
+        untrack(entityId);
 
         mGroup.remove(entityId);
     }
+
+    /**
+     * Centre, bounding box, size and leader of a group. The sums of the coordinates are updated in place, while
+     * the bounding box is only recomputed when a member leaves its border. A new leader is only elected
+     * when the old one dies or leaves.
+     * <p>
+     * The place of each member in the formation around the leader is assigned again whenever someone joins or
+     * leaves, on the game thread, so that followers can read it from anywhere.
+     */
+    public static class Stats
+    {
+        final GroupSystem system;
+        final int         groupId;
+        final boolean     led;
+
+        int leaderId;
+
+        int  count;
+        long sumX;
+        long sumY;
+
+        int     minX;
+        int     minY;
+        int     maxX;
+        int     maxY;
+        boolean boundsDirty;
+
+        Stats(final GroupSystem system, final int groupId, final boolean led)
+        {
+            this.system = system;
+            this.groupId = groupId;
+            this.led = led;
+
+            leaderId = -1;
+        }
+
+        void add(final int x, final int y)
+        {
+            if (count == 0)
+            {
+                minX = maxX = x;
+                minY = maxY = y;
+            }
+            else
+            {
+                minX = Math.min(minX, x);
+                minY = Math.min(minY, y);
+                maxX = Math.max(maxX, x);
+                maxY = Math.max(maxY, y);
+            }
+
+            count++;
+            sumX += x;
+            sumY += y;
+        }
+
+        void remove(final int x, final int y)
+        {
+            count--;
+            sumX -= x;
+            sumY -= y;
+
+            if (x == minX || x == maxX || y == minY || y == maxY)
+                boundsDirty = true;
+        }
+
+        void move(final int oldX, final int oldY, final int x, final int y)
+        {
+            remove(oldX, oldY);
+            add(x, y);
+        }
+
+        /**
+         * @return how many members are on the map
+         */
+        public int getCount()
+        {
+            return count;
+        }
+
+        /**
+         * @return the leader of the group, or -1 if it has none
+         */
+        public int getLeader()
+        {
+            return leaderId;
+        }
+
+        /**
+         * @param entityId a member of the group, on the map
+         * @return its place in the formation, from 0 to {@link #getCount()} - 2, or -1 for the leader
+         */
+        public int getSlot(final int entityId)
+        {
+            return system.memberSlot[entityId];
+        }
+
+        public long getSumX()
+        {
+            return sumX;
+        }
+
+        public long getSumY()
+        {
+            return sumY;
+        }
+
+        /**
+         * @param centre where to put the centre of the group (rounded down)
+         * @return false if the group is empty
+         */
+        public boolean getCentre(final Position centre)
+        {
+            if (count == 0)
+                return false;
+
+            centre.x = (int) Math.floorDiv(sumX, count);
+            centre.y = (int) Math.floorDiv(sumY, count);
+
+            return true;
+        }
+
+        public int getMinX()
+        {
+            updateBounds();
+            return minX;
+        }
+
+        public int getMinY()
+        {
+            updateBounds();
+            return minY;
+        }
+
+        public int getMaxX()
+        {
+            updateBounds();
+            return maxX;
+        }
+
+        public int getMaxY()
+        {
+            updateBounds();
+            return maxY;
+        }
+
+        void updateSlots()
+        {
+            final IntBag group = system.groups.get(groupId);
+
+            int slot = 0;
+            for (int i = 0, size = group.size(); i < size; i++)
+            {
+                final int entityId = group.get(i);
+
+                if (entityId >= system.memberOf.length || system.memberOf[entityId] != groupId)
+                    continue;
+
+                system.memberSlot[entityId] = entityId == leaderId ? -1 : slot++;
+            }
+        }
+
+        void updateBounds()
+        {
+            if (!boundsDirty)
+                return;
+
+            boundsDirty = false;
+
+            final IntBag group = system.groups.get(groupId);
+
+            boolean first = true;
+            for (int i = 0, size = group.size(); i < size; i++)
+            {
+                final int entityId = group.get(i);
+
+                if (entityId >= system.memberOf.length || system.memberOf[entityId] != groupId)
+                    continue;
+
+                final int x = system.memberX[entityId];
+                final int y = system.memberY[entityId];
+
+                if (first)
+                {
+                    minX = maxX = x;
+                    minY = maxY = y;
+                    first = false;
+                }
+                else
+                {
+                    minX = Math.min(minX, x);
+                    minY = Math.min(minY, y);
+                    maxX = Math.max(maxX, x);
+                    maxY = Math.max(maxY, y);
+                }
+            }
+        }
+    }
 }
@@ -20,7 +20,6 @@ package com.github.fabioticconi.alone.systems;
 
 import com.artemis.Aspect;
 import com.artemis.ComponentMapper;
-import com.artemis.systems.IntervalIteratingSystem;
 import com.github.fabioticconi.alone.components.Dead;
 import com.github.fabioticconi.alone.components.Health;
 
@@ -28,7 +27,7 @@ import com.github.fabioticconi.alone.components.Health;
  * Author: Fabio Ticconi
  * Date: 02/10/17
  */
-public class HealthSystem extends IntervalIteratingSystem
+public class HealthSystem extends VitalSystem
 {
     ComponentMapper<Health> mHealth;
     ComponentMapper<Dead>   mDead;
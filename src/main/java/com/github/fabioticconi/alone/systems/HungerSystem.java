@@ -19,7 +19,6 @@ package com.github.fabioticconi.alone.systems;
 
 import com.artemis.Aspect;
 import com.artemis.ComponentMapper;
-import com.artemis.systems.IntervalIteratingSystem;
 import com.github.fabioticconi.alone.components.*;
 import com.github.fabioticconi.alone.components.actions.ActionContext;
 import com.github.fabioticconi.alone.messages.CannotMsg;
@@ -31,10 +30,13 @@ import org.slf4j.LoggerFactory;
 /**
  * @author Fabio Ticconi
  */
-public class HungerSystem extends IntervalIteratingSystem
+public class HungerSystem extends VitalSystem
 {
     static final Logger log = LoggerFactory.getLogger(HungerSystem.class);
 
+    // past this fraction of the maximum hunger, a creature starts caring about food
+    public static final float HUNGRY = 0.4f;
+
     ComponentMapper<Hunger>   mHunger;
     ComponentMapper<Health>   mHealth;
     ComponentMapper<Position> mPosition;
@@ -42,6 +44,7 @@ public class HungerSystem extends IntervalIteratingSystem
 
     MessageSystem msg;
     MapSystem     map;
+    AISystem      sAI;
 
     public HungerSystem(final float interval)
     {
@@ -53,10 +56,16 @@ public class HungerSystem extends IntervalIteratingSystem
     {
         final Hunger h = mHunger.get(entityId);
 
+        final boolean wasHungry = h.value >= HUNGRY * h.maxValue;
+
         // increase hunger a little bit every tick
         h.value = h.value + getIntervalDelta() * 0.01f;
 
         h.value = Math.min(h.value, h.maxValue);
+
+        // time to look for food, even if nothing else is going on
+        if (!wasHungry && h.value >= HUNGRY * h.maxValue)
+            sAI.alert(entityId, 0.5f);
     }
 
     public EatAction eat(final int entityId, final int corpseId)
@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.systems;
+
+import com.artemis.Aspect;
+import com.artemis.BaseSystem;
+import com.artemis.ComponentMapper;
+import com.artemis.EntitySubscription;
+import com.artemis.utils.Bag;
+import com.artemis.utils.IntBag;
+import com.github.fabioticconi.alone.components.AI;
+import com.github.fabioticconi.alone.components.Player;
+import com.github.fabioticconi.alone.components.Position;
+import com.github.fabioticconi.alone.utils.Coords;
+
+import java.util.Arrays;
+
+/**
+ * Level of detail of the simulation.
+ * <p>
+ * Around the player (and any other point of interest) there are concentric rings: the further out a
+ * creature is, the less often its AI ticks (twice as rarely for every ring) and the fewer behaviours
+ * it considers. What nobody is going to see doesn't need to be accurate.
+ * <p>
+ * When a point of interest moves, the creatures in the innermost ring around it are brought back
+ * to the normal pace right away, so there's no noticeable transition.
+ * <p>
+ * Author: Fabio Ticconi
+ * Date: 18/10/26
+ */
+public class LodSystem extends BaseSystem
+{
+    // how far a point of interest moves before we look again at who's around it
+    static final int RESCAN_DISTANCE = 4;
+
+    ComponentMapper<Position> mPosition;
+    ComponentMapper<AI>       mAI;
+
+    AISystem  sAI;
+    MapSystem map;
+
+    final int[]  radii;
+    final IntBag interests;
+
+    EntitySubscription players;
+
+    // where the points of interest are this tick
+    int[] xs;
+    int[] ys;
+    int   count;
+
+    // where each point of interest was when we last looked around it
+    final Bag<Position> scans;
+
+    /**
+     * @param radii outer radius of each ring, from the innermost. Beyond the last, everything is at the lowest detail
+     */
+    public LodSystem(final int... radii)
+    {
+        this.radii = Arrays.copyOf(radii, radii.length);
+
+        interests = new IntBag();
+        scans = new Bag<>();
+
+        xs = new int[4];
+        ys = new int[4];
+    }
+
+    @Override
+    protected void initialize()
+    {
+        players = world.getAspectSubscriptionManager().get(Aspect.all(Player.class, Position.class));
+    }
+
+    @Override
+    protected void processSystem()
+    {
+        count = 0;
+
+        final IntBag entities = players.getEntities();
+
+        for (int i = 0, size = entities.size(); i < size; i++)
+        {
+            track(entities.get(i));
+        }
+
+        for (int i = 0, size = interests.size(); i < size; i++)
+        {
+            track(interests.get(i));
+        }
+    }
+
+    void track(final int entityId)
+    {
+        final Position p = mPosition.get(entityId);
+
+        if (p == null)
+            return;
+
+        if (count == xs.length)
+        {
+            xs = Arrays.copyOf(xs, 2 * count);
+            ys = Arrays.copyOf(ys, 2 * count);
+        }
+
+        xs[count] = p.x;
+        ys[count] = p.y;
+        count++;
+
+        Position scan = scans.safeGet(entityId);
+
+        if (scan != null && Coords.distanceChebyshev(scan.x, scan.y, p.x, p.y) < RESCAN_DISTANCE)
+            return;
+
+        if (scan == null)
+        {
+            scan = new Position(p.x, p.y);
+            scans.set(entityId, scan);
+        }
+        else
+        {
+            scan.set(p);
+        }
+
+        // whoever is now close by must not keep the slow pace it had further out
+        final int   r       = radii.length == 0 ? 0 : radii[0];
+        final float maxTick = AISystem.BASE_TICKTIME + 0.5f;
+
+        for (int x = p.x - r; x <= p.x + r; x++)
+        {
+            for (int y = p.y - r; y <= p.y + r; y++)
+            {
+                if (!map.contains(x, y))
+                    continue;
+
+                final int creatureId = map.getObstacles().get(x, y);
+
+                if (creatureId >= 0 && mAI.has(creatureId))
+                    sAI.hasten(creatureId, maxTick);
+            }
+        }
+    }
+
+    /**
+     * Adds an entity around which the simulation must be detailed, besides the player.
+     *
+     * @param entityId
+     */
+    public void addPointOfInterest(final int entityId)
+    {
+        if (!interests.contains(entityId))
+            interests.add(entityId);
+    }
+
+    public void removePointOfInterest(final int entityId)
+    {
+        interests.removeValue(entityId);
+        scans.set(entityId, null);
+    }
+
+    /**
+     * @param x
+     * @param y
+     * @return the ring the cell is in: 0 is the innermost, {@link #getLevels()} - 1 is outside all rings
+     */
+    public int getLevel(final int x, final int y)
+    {
+        final int distance = getDistance(x, y, x, y);
+
+        for (int level = 0; level < radii.length; level++)
+        {
+            if (distance <= radii[level])
+                return level;
+        }
+
+        return radii.length;
+    }
+
+    /**
+     * @param minX
+     * @param minY
+     * @param maxX
+     * @param maxY
+     * @return Chebyshev distance from the closest point of interest to the given area (inclusive)
+     */
+    public int getDistance(final int minX, final int minY, final int maxX, final int maxY)
+    {
+        int distance = Integer.MAX_VALUE;
+
+        for (int i = 0; i < count; i++)
+        {
+            final int dx = Math.max(0, Math.max(minX - xs[i], xs[i] - maxX));
+            final int dy = Math.max(0, Math.max(minY - ys[i], ys[i] - maxY));
+
+            distance = Math.min(distance, Math.max(dx, dy));
+        }
+
+        return distance;
+    }
+
+    /**
+     * @return true if, as of this tick, there's something to be close to
+     */
+    public boolean hasPointsOfInterest()
+    {
+        return count > 0;
+    }
+
+    /**
+     * @param entityId
+     * @return the ring the entity is in (0 if it's not on the map)
+     */
+    public int getLevel(final int entityId)
+    {
+        final Position p = mPosition.get(entityId);
+
+        return p == null ? 0 : getLevel(p.x, p.y);
+    }
+
+    /**
+     * @return how many levels of detail there are
+     */
+    public int getLevels()
+    {
+        return radii.length + 1;
+    }
+
+    /**
+     * @param level
+     * @return how much longer than normal the AI waits between ticks at that level
+     */
+    public float getCooldownFactor(final int level)
+    {
+        return 1 << level;
+    }
+}
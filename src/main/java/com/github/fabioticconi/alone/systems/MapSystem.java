@@ -22,9 +22,14 @@ import com.artemis.annotations.Wire;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.fabioticconi.alone.components.Obstacle;
+import com.github.fabioticconi.alone.constants.Locomotion;
 import com.github.fabioticconi.alone.constants.Options;
+import com.github.fabioticconi.alone.constants.Pathfinding;
 import com.github.fabioticconi.alone.constants.Side;
 import com.github.fabioticconi.alone.constants.TerrainType;
+import com.github.fabioticconi.alone.map.ChangeLog;
+import com.github.fabioticconi.alone.map.NavigationLayer;
+import com.github.fabioticconi.alone.map.TerrainField;
 import com.github.fabioticconi.alone.utils.Coords;
 import com.github.fabioticconi.alone.utils.LongBag;
 import com.github.fabioticconi.alone.utils.SingleGrid;
@@ -38,8 +43,6 @@ import rlforj.los.IFovAlgorithm;
 import rlforj.los.ILosAlgorithm;
 import rlforj.los.ShadowCasting;
 import rlforj.math.Point;
-import rlforj.pathfinding.AStar;
-import rlforj.pathfinding.IPathAlgorithm;
 
 import java.awt.*;
 import java.io.*;
@@ -53,15 +56,24 @@ public class MapSystem extends PassiveSystem implements IBoard
 {
     static final Logger log = LoggerFactory.getLogger(MapSystem.class);
 
+    // how many obstacle and terrain changes incremental planners can lag behind
+    static final int CHANGE_LOG_SIZE = 1 << 14;
+
     Cell terrain[][];
 
     /* FOV/LOS stuff */ LongBag lastVisited;
-    IPathAlgorithm            path;
-    IFovAlgorithm             fov;
-    ILosAlgorithm             los;
-    SingleGrid                obstacles;
-    SingleGrid                items;
-    ComponentMapper<Obstacle> mObstacle;
+    IFovAlgorithm                        fov;
+    ILosAlgorithm                        los;
+    ThreadLocal<ILosAlgorithm>           sightLines;
+    ThreadLocal<Sweep>                   sweeps;
+    SingleGrid                           obstacles;
+    SingleGrid                           items;
+    ChangeLog                            changes;
+    long                                 terrainVersion;
+    BitSet                               staticObstacles;
+    EnumMap<Locomotion, NavigationLayer> layers;
+    EnumMap<TerrainType, TerrainField>   fields;
+    ComponentMapper<Obstacle>            mObstacle;
 
     @Wire
     ObjectMapper mapper;
@@ -81,10 +93,56 @@ public class MapSystem extends PassiveSystem implements IBoard
         fov = new ShadowCasting();
         los = new BresLos(true);
 
+        // the queries that behaviours use can come from multiple threads at once
+        sightLines = ThreadLocal.withInitial(() -> new BresLos(true));
+        sweeps = ThreadLocal.withInitial(Sweep::new);
+
+        final SingleGrid oldObstacles = obstacles;
+        final SingleGrid oldItems     = items;
+
         obstacles = new SingleGrid(Options.MAP_SIZE_X, Options.MAP_SIZE_Y);
         items = new SingleGrid(Options.MAP_SIZE_X, Options.MAP_SIZE_Y);
+        staticObstacles = new BitSet(Options.MAP_SIZE_X * Options.MAP_SIZE_Y);
+
+        layers = new EnumMap<>(Locomotion.class);
+        for (final Locomotion locomotion : Locomotion.values())
+        {
+            layers.put(locomotion, new NavigationLayer(this, locomotion));
+        }
+
+        fields = new EnumMap<>(TerrainType.class);
+        for (final TerrainType type : TerrainType.values())
+        {
+            fields.put(type, new TerrainField(Options.MAP_SIZE_X, Options.MAP_SIZE_Y));
+        }
+
+        if (oldObstacles == null)
+        {
+            obstacles.addListener(this::obstacleChanged);
+        }
+        else
+        {
+            // on reset, whoever was listening to the old grids (us included) still wants to know
+            obstacles.addListeners(oldObstacles);
+            items.addListeners(oldItems);
+        }
+
+        resetChanges();
 
-        path = new AStar(this, Options.MAP_SIZE_X, Options.MAP_SIZE_Y, true);
+        setPathfinding(Options.PATHFINDING);
+    }
+
+    /**
+     * Selects the algorithm used by the path planners of all navigation layers.
+     *
+     * @param type
+     */
+    public void setPathfinding(final Pathfinding type)
+    {
+        for (final NavigationLayer layer : layers.values())
+        {
+            layer.setPathfinding(type);
+        }
     }
 
     public void reset()
@@ -149,6 +207,9 @@ public class MapSystem extends PassiveSystem implements IBoard
                 terrain[x][y] = cell;
             }
         }
+
+        buildFields();
+        resetChanges();
     }
 
     public void loadTerrain(final float[][] heightmap)
@@ -166,6 +227,68 @@ public class MapSystem extends PassiveSystem implements IBoard
                 terrain[x][y] = cell;
             }
         }
+
+        buildFields();
+        resetChanges();
+    }
+
+    /**
+     * Computes the nearest-cell field of every terrain type, in parallel.
+     */
+    void buildFields()
+    {
+        Arrays.stream(TerrainType.values())
+              .parallel()
+              .forEach(type -> fields.get(type).build((x, y) -> terrain[x][y].type == type));
+    }
+
+    /**
+     * Everything might have changed, so anyone following the change log has to start over.
+     */
+    void resetChanges()
+    {
+        changes = new ChangeLog(CHANGE_LOG_SIZE);
+        terrainVersion++;
+
+        for (final NavigationLayer layer : layers.values())
+        {
+            layer.invalidate();
+        }
+    }
+
+    /**
+     * Creatures come and go all the time, but paths only care about static obstacles appearing or disappearing.
+     */
+    void obstacleChanged(final int x, final int y)
+    {
+        final int     i       = x * Options.MAP_SIZE_Y + y;
+        final boolean blocked = hasStaticObstacle(x, y);
+
+        if (staticObstacles.get(i) == blocked)
+            return;
+
+        staticObstacles.set(i, blocked);
+
+        changes.changed(x, y);
+
+        for (final NavigationLayer layer : layers.values())
+        {
+            layer.update(x, y);
+        }
+    }
+
+    /**
+     * Unlike obstacles, new terrain can change the cost of a cell too.
+     */
+    void terrainChanged(final int x, final int y)
+    {
+        changes.changed(x, y);
+        terrainVersion++;
+
+        for (final NavigationLayer layer : layers.values())
+        {
+            layer.terrainChanged(x, y);
+        }
     }
 
     public void saveTerrain(final float[][] heightmap) throws IOException
@@ -237,7 +360,7 @@ public class MapSystem extends PassiveSystem implements IBoard
             xn = x + side.x;
             yn = y + side.y;
 
-            if (contains(xn, yn) && obstacles.get(xn, yn) < 0 && set.contains(terrain[x][y].type))
+            if (contains(xn, yn) && obstacles.get(xn, yn) < 0 && set.contains(terrain[xn][yn].type))
                 exits.add(side);
         }
 
@@ -366,7 +489,8 @@ public class MapSystem extends PassiveSystem implements IBoard
 
     /**
      * Searches concentrically for a cell of the specified type, and returns the
-     * coordinate array if it finds one.
+     * coordinate array if it finds one. Cells that cannot be reached from the starting
+     * position are ignored.
      *
      * @return null if none could be found, the coordinate array otherwise
      */
@@ -375,26 +499,37 @@ public class MapSystem extends PassiveSystem implements IBoard
         if (set.contains(terrain[x][y].type))
             return new int[] { x, y };
 
-        lastVisited.clear();
+        final Sweep sweep = sweeps.get();
 
-        fov.visitFoV(this, x, y, r);
+        sweep.visited.clear();
+
+        sweep.fov.visitFoV(sweep, x, y, r);
 
         int[] coords;
         Cell  cell;
-        for (int i = 0, size = lastVisited.size(); i < size; i++)
+        for (int i = 0, size = sweep.visited.size(); i < size; i++)
         {
-            final long key = lastVisited.get(i);
+            final long key = sweep.visited.get(i);
 
             coords = Coords.unpackCoords(key);
             cell = terrain[coords[0]][coords[1]];
 
-            if (set.contains(cell.type))
+            if (set.contains(cell.type) && isReachable(x, y, coords[0], coords[1]))
                 return coords;
         }
 
         return null;
     }
 
+    /**
+     * @param type
+     * @return the closest cell of the given type from anywhere on the map, regardless of visibility and obstacles
+     */
+    public TerrainField getField(final TerrainType type)
+    {
+        return fields.get(type);
+    }
+
     public Cell get(final int x, final int y)
     {
         if (contains(x, y))
@@ -403,14 +538,59 @@ public class MapSystem extends PassiveSystem implements IBoard
         return Cell.EMPTY;
     }
 
+    /**
+     * Movement cost of entering the specified cell.
+     *
+     * @param x
+     * @param y
+     * @return
+     */
+    public float getCost(final int x, final int y)
+    {
+        return get(x, y).cost();
+    }
+
     public void set(final int x, final int y, final Cell type)
     {
         if (contains(x, y))
         {
+            final TerrainType oldType = terrain[x][y] == null ? null : terrain[x][y].type;
+
             terrain[x][y] = type;
+
+            if (oldType != type.type)
+            {
+                if (oldType != null)
+                    fields.get(oldType).update((cx, cy) -> terrain[cx][cy].type == oldType, x, y);
+                if (type.type != null)
+                    fields.get(type.type).update((cx, cy) -> terrain[cx][cy].type == type.type, x, y);
+            }
+
+            terrainChanged(x, y);
         }
     }
 
+    /**
+     * The log of cells where a static obstacle has appeared or disappeared, or the terrain has changed.
+     * Loading a new terrain, or resetting the map, starts a new log.
+     *
+     * @return
+     */
+    public ChangeLog getChanges()
+    {
+        return changes;
+    }
+
+    /**
+     * Increases every time the terrain of a cell changes, or the whole map is loaded or reset.
+     *
+     * @return
+     */
+    public long getTerrainVersion()
+    {
+        return terrainVersion;
+    }
+
     public SingleGrid getObstacles()
     {
         return obstacles;
@@ -465,13 +645,59 @@ public class MapSystem extends PassiveSystem implements IBoard
         if (!contains(x, y))
             return true;
 
+        // currently no tile blocks light by itself, so if there's no obstacle
+        // here we know that light passes.
+        return hasStaticObstacle(x, y);
+    }
+
+    /**
+     * True if there's something in the cell that doesn't move by itself (eg, a tree).
+     *
+     * @param x
+     * @param y
+     * @return
+     */
+    public boolean hasStaticObstacle(final int x, final int y)
+    {
         final int entityId = obstacles.get(x, y);
 
-        // currently no tile blocks light by itself, so if there's no creature
-        // here we know that light passes.
         return entityId >= 0 && mObstacle.has(entityId);
     }
 
+    /**
+     * @param locomotion
+     * @return the map as seen by creatures moving in that way
+     */
+    public NavigationLayer getLayer(final Locomotion locomotion)
+    {
+        return layers.get(locomotion);
+    }
+
+    /**
+     * Computes now whatever would otherwise be computed lazily by the first query, so that
+     * {@link #isVisible(int, int, int, int)}, {@link #isReachable(int, int, int, int)} and
+     * {@link #getFirstOfType(int, int, int, EnumSet)} can then be called from multiple threads,
+     * as long as the map doesn't change in the meantime.
+     */
+    public void prepare()
+    {
+        for (final NavigationLayer layer : layers.values())
+        {
+            layer.prepare();
+        }
+    }
+
+    /**
+     * Tells whether a land creature could walk from the first cell to the second, if other creatures
+     * got out of the way. It's immediate, so it's always worth asking before searching for a path.
+     *
+     * @return true if the two cells are connected
+     */
+    public boolean isReachable(final int startX, final int startY, final int endX, final int endY)
+    {
+        return layers.get(Locomotion.LAND).isReachable(startX, startY, endX, endY);
+    }
+
     @Override
     public boolean blocksStep(final int x, final int y)
     {
@@ -493,6 +719,16 @@ public class MapSystem extends PassiveSystem implements IBoard
         return lastVisited;
     }
 
+    /**
+     * Like {@link #getLineOfSight(int, int, int, int)}, but without building the line.
+     *
+     * @return true if (endX,endY) can be seen from (startX,startY)
+     */
+    public boolean isVisible(final int startX, final int startY, final int endX, final int endY)
+    {
+        return sightLines.get().exists(this, startX, startY, endX, endY, false);
+    }
+
     public List<Point> getLineOfSight(final int startX, final int startY, final int endX, final int endY)
     {
         final boolean exists = los.exists(this, startX, startY, endX, endY, true);
@@ -505,9 +741,12 @@ public class MapSystem extends PassiveSystem implements IBoard
         return null;
     }
 
+    /**
+     * Path for a land creature, see {@link NavigationLayer#getPath(int, int, int, int, int)}.
+     */
     public Point[] getPath(final int startX, final int startY, final int endX, final int endY, final int radius)
     {
-        return path.findPath(startX, startY, endX, endY, radius);
+        return layers.get(Locomotion.LAND).getPath(startX, startY, endX, endY, radius);
     }
 
     /**
@@ -538,5 +777,58 @@ public class MapSystem extends PassiveSystem implements IBoard
             this.type = type;
             this.theight = theight;
         }
+
+        /**
+         * How much stamina (and time) it takes to step into a cell of this kind. Never less than 1:
+         * water gets harder the deeper it is, land the higher it is.
+         *
+         * @return the movement cost
+         */
+        public float cost()
+        {
+            if (type == TerrainType.WATER)
+                return 2f - Util.bias(theight, 0.97f);
+            else
+                return 1f + Util.bias(theight, 0.75f);
+        }
+    }
+
+    /**
+     * A field of view computed on the side, so that it doesn't step on {@link #getVisibleCells(int, int, int)}.
+     */
+    class Sweep implements IBoard
+    {
+        final IFovAlgorithm fov;
+        final LongBag       visited;
+
+        Sweep()
+        {
+            fov = new ShadowCasting();
+            visited = new LongBag(256);
+        }
+
+        @Override
+        public boolean contains(final int x, final int y)
+        {
+            return MapSystem.this.contains(x, y);
+        }
+
+        @Override
+        public boolean blocksLight(final int x, final int y)
+        {
+            return MapSystem.this.blocksLight(x, y);
+        }
+
+        @Override
+        public boolean blocksStep(final int x, final int y)
+        {
+            return MapSystem.this.blocksStep(x, y);
+        }
+
+        @Override
+        public void visit(final int x, final int y)
+        {
+            visited.add(Coords.packCoords(x, y));
+        }
     }
 }
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.systems;
+
+import com.artemis.BaseSystem;
+import com.artemis.ComponentMapper;
+import com.github.fabioticconi.alone.components.Memory;
+import com.github.fabioticconi.alone.components.Position;
+import com.github.fabioticconi.alone.utils.Coords;
+
+/**
+ * Short-term memory of creatures.
+ * <p>
+ * Behaviours write down what they found when they actually looked around, and check here first
+ * the next time: if it's still there, there's no need to look again. Memories fade, and after a
+ * while they are forgotten.
+ * <p>
+ * Only creatures that have a {@link Memory} remember anything. A creature only ever touches its own
+ * memory, so different creatures can use this at the same time.
+ * <p>
+ * Author: Fabio Ticconi
+ * Date: 18/10/26
+ */
+public class MemorySystem extends BaseSystem
+{
+    ComponentMapper<Memory> mMemory;
+
+    final float span;
+
+    float time;
+
+    /**
+     * @param span how many seconds before a memory is forgotten
+     */
+    public MemorySystem(final float span)
+    {
+        this.span = span;
+    }
+
+    @Override
+    protected void processSystem()
+    {
+        time += world.delta;
+    }
+
+    /**
+     * Writes down (or refreshes) something the creature has just seen.
+     *
+     * @param entityId the creature remembering
+     * @param kind     what kind of thing it is, see {@link Memory}
+     * @param targetId the entity seen, or -1 if it's a place
+     * @param x
+     * @param y
+     */
+    public void remember(final int entityId, final byte kind, final int targetId, final int x, final int y)
+    {
+        final Memory m = mMemory.get(entityId);
+
+        // not everyone can remember things
+        if (m == null)
+            return;
+
+        final long pos = Coords.packCoords(x, y);
+
+        // same thing seen again, or (if it's a place) same place
+        int slot = find(m, kind, targetId, pos);
+
+        if (slot < 0)
+        {
+            slot = m.head;
+            m.head = (m.head + 1) % Memory.SIZE;
+            m.size = Math.min(m.size + 1, Memory.SIZE);
+        }
+
+        m.kinds[slot] = kind;
+        m.entities[slot] = targetId;
+        m.positions[slot] = pos;
+        m.times[slot] = time;
+    }
+
+    /**
+     * @param entityId the creature remembering
+     * @param kind     what kind of thing we are looking for
+     * @return the slot of the most recent memory of that kind, or -1 if it has been forgotten
+     */
+    public int recall(final int entityId, final byte kind)
+    {
+        final Memory m = mMemory.get(entityId);
+
+        if (m == null)
+            return -1;
+
+        int   best     = -1;
+        float bestTime = time - span;
+
+        for (int i = 0; i < m.size; i++)
+        {
+            if (m.kinds[i] == kind && m.times[i] > bestTime)
+            {
+                best = i;
+                bestTime = m.times[i];
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * @return the entity remembered in the slot (-1 if it's a place)
+     */
+    public int getEntity(final int entityId, final int slot)
+    {
+        return mMemory.get(entityId).entities[slot];
+    }
+
+    /**
+     * Puts where the remembered thing was last seen in the given position.
+     */
+    public void getPosition(final int entityId, final int slot, final Position p)
+    {
+        final long pos = mMemory.get(entityId).positions[slot];
+
+        p.x = (int) pos;
+        p.y = (int) (pos >> 32);
+    }
+
+    /**
+     * @return 1 if the memory is brand new, down to 0 when it's about to be forgotten
+     */
+    public float getFreshness(final int entityId, final int slot)
+    {
+        return Math.max(0f, 1f - (time - mMemory.get(entityId).times[slot]) / span);
+    }
+
+    /**
+     * The thing is not there anymore.
+     */
+    public void forget(final int entityId, final int slot)
+    {
+        // an expired time is as good as an empty slot
+        mMemory.get(entityId).times[slot] = Float.NEGATIVE_INFINITY;
+    }
+
+    int find(final Memory m, final byte kind, final int targetId, final long pos)
+    {
+        for (int i = 0; i < m.size; i++)
+        {
+            if (m.kinds[i] == kind && m.entities[i] == targetId && (targetId >= 0 || m.positions[i] == pos))
+                return i;
+        }
+
+        return -1;
+    }
+}
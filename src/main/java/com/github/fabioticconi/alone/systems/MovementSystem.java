@@ -23,9 +23,8 @@ import com.github.fabioticconi.alone.components.Position;
 import com.github.fabioticconi.alone.components.Speed;
 import com.github.fabioticconi.alone.components.Underwater;
 import com.github.fabioticconi.alone.components.actions.ActionContext;
+import com.github.fabioticconi.alone.constants.Locomotion;
 import com.github.fabioticconi.alone.constants.Side;
-import com.github.fabioticconi.alone.constants.TerrainType;
-import com.github.fabioticconi.alone.utils.Util;
 import net.mostlyoriginal.api.system.core.PassiveSystem;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,6 +44,15 @@ public class MovementSystem extends PassiveSystem
     StaminaSystem sStamina;
     MapSystem     map;
 
+    /**
+     * @param entityId
+     * @return how the creature gets around, and so which navigation layer it should use
+     */
+    public Locomotion getLocomotion(final int entityId)
+    {
+        return mUnderWater.has(entityId) ? Locomotion.WATER : Locomotion.LAND;
+    }
+
     public MoveAction move(final int entityId, final Side direction)
     {
         if (direction.equals(Side.HERE))
@@ -74,7 +82,8 @@ public class MovementSystem extends PassiveSystem
             final int x2 = p.x + direction.x;
             final int y2 = p.y + direction.y;
 
-            if (!map.isFree(x2, y2))
+            // eg, fish can't jump out of the water
+            if (!map.getLayer(getLocomotion(actorId)).isFree(x2, y2))
                 return false;
 
             final MapSystem.Cell cell = map.get(x2, y2);
@@ -96,10 +105,7 @@ public class MovementSystem extends PassiveSystem
                 return true;
             }
 
-            if (cell.type == TerrainType.WATER)
-                cost = 2f - Util.bias(cell.theight, 0.97f);
-            else
-                cost = 1f + Util.bias(cell.theight, 0.75f);
+            cost = cell.cost();
 
             delay = speed.value * cost;
 
@@ -114,7 +120,7 @@ public class MovementSystem extends PassiveSystem
             final int x2 = p.x + direction.x;
             final int y2 = p.y + direction.y;
 
-            if (map.isFree(x2, y2))
+            if (map.getLayer(getLocomotion(actorId)).isFree(x2, y2))
             {
                 final int id = map.obstacles.move(p.x, p.y, x2, y2);
 
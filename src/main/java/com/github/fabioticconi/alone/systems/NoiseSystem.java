@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.systems;
+
+import com.artemis.ComponentMapper;
+import com.github.fabioticconi.alone.components.AI;
+import com.github.fabioticconi.alone.components.Heard;
+import net.mostlyoriginal.api.system.core.PassiveSystem;
+
+/**
+ * Loud actions (fights, trees falling, rocks being crushed) can be heard around the corner.
+ * <p>
+ * A noise spreads from its source one step at a time, going around trees and rocks, and fading with
+ * distance until it's lost. Every creature it reaches is told where it came from and woken up,
+ * so nobody has to keep an eye on what the others are doing.
+ * <p>
+ * The search buffers are reused from one noise to the next.
+ * <p>
+ * Author: Fabio Ticconi
+ * Date: 18/10/26
+ */
+public class NoiseSystem extends PassiveSystem
+{
+    ComponentMapper<AI>    mAI;
+    ComponentMapper<Heard> mHeard;
+
+    AISystem  sAI;
+    MapSystem map;
+
+    // search window, and bfs data indexed by window position
+    int   ox, oy, side;
+    int[] queue;
+    int[] distance;
+    int[] seen;
+    int   generation;
+
+    public NoiseSystem()
+    {
+        queue = new int[0];
+        distance = new int[0];
+        seen = new int[0];
+    }
+
+    /**
+     * Makes some noise.
+     *
+     * @param sourceId the entity making it, which doesn't hear itself
+     * @param x
+     * @param y
+     * @param loudness how many steps away it can be heard
+     */
+    public void makeNoise(final int sourceId, final int x, final int y, final int loudness)
+    {
+        if (loudness <= 0 || !map.contains(x, y))
+            return;
+
+        ox = x - loudness;
+        oy = y - loudness;
+        side = 2 * loudness + 1;
+
+        final int cells = side * side;
+
+        if (seen.length < cells)
+        {
+            queue = new int[cells];
+            distance = new int[cells];
+            seen = new int[cells];
+            generation = 0;
+        }
+
+        generation++;
+
+        int head = 0;
+        int tail = 0;
+
+        final int start = index(x, y);
+        queue[tail++] = start;
+        distance[start] = 0;
+        seen[start] = generation;
+
+        while (head < tail)
+        {
+            final int c  = queue[head++];
+            final int d  = distance[c];
+            final int cx = ox + c / side;
+            final int cy = oy + c % side;
+
+            hear(sourceId, cx, cy, x, y, 1f - (float) d / (loudness + 1));
+
+            if (d == loudness)
+                continue;
+
+            for (int dx = -1; dx <= 1; dx++)
+            {
+                for (int dy = -1; dy <= 1; dy++)
+                {
+                    final int nx = cx + dx;
+                    final int ny = cy + dy;
+
+                    if (!map.contains(nx, ny))
+                        continue;
+
+                    final int n = index(nx, ny);
+
+                    // trees and rocks stop the sound, but it can go around them
+                    if (seen[n] == generation || map.hasStaticObstacle(nx, ny))
+                        continue;
+
+                    seen[n] = generation;
+                    distance[n] = d + 1;
+                    queue[tail++] = n;
+                }
+            }
+        }
+    }
+
+    void hear(final int sourceId, final int x, final int y, final int sourceX, final int sourceY, final float intensity)
+    {
+        final int entityId = map.getObstacles().get(x, y);
+
+        if (entityId < 0 || entityId == sourceId || !mAI.has(entityId))
+            return;
+
+        final Heard heard = mHeard.get(entityId);
+
+        // we only remember the loudest
+        if (heard != null && heard.intensity >= intensity)
+            return;
+
+        mHeard.create(entityId).set(sourceX, sourceY, intensity);
+
+        // a faint noise is not much to worry about, but it's worth a look
+        sAI.wake(entityId);
+        sAI.alert(entityId, intensity);
+    }
+
+    int index(final int x, final int y)
+    {
+        return (x - ox) * side + (y - oy);
+    }
+}
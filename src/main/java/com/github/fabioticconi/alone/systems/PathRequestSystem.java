@@ -0,0 +1,480 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.systems;
+
+import com.artemis.Aspect;
+import com.artemis.BaseSystem;
+import com.artemis.EntitySubscription;
+import com.artemis.utils.Bag;
+import com.artemis.utils.IntBag;
+import com.github.fabioticconi.alone.components.Position;
+import com.github.fabioticconi.alone.constants.Options;
+import com.github.fabioticconi.alone.constants.Pathfinding;
+import com.github.fabioticconi.alone.map.BoardSnapshot;
+import com.github.fabioticconi.alone.map.CostFunction;
+import com.github.fabioticconi.alone.map.JumpPointSearch;
+import com.github.fabioticconi.alone.map.NavigationLayer;
+import com.github.fabioticconi.alone.map.PathPlanner;
+import com.github.fabioticconi.alone.utils.Coords;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rlforj.IBoard;
+import rlforj.math.Point;
+import rlforj.pathfinding.AStar;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Computes paths off the game thread.
+ * <p>
+ * A creature asks for a path and gets back a {@link Request} handle. Unreachable goals and cached paths
+ * are answered right away; everything else is queued. On the following ticks, within the per-tick time
+ * budget, the window of the map the planner is allowed to explore is copied and the actual search runs on
+ * a worker thread against that snapshot. Finished searches are handed back to the game thread here,
+ * again only as many as fit in the budget: the rest waits for the next tick.
+ * <p>
+ * With zero worker threads the queued searches are computed here, synchronously, within the same budget.
+ * <p>
+ * When the tick is over budget (see {@link BudgetSystem}), queued requests stay where they are until
+ * there's time for them.
+ * <p>
+ * Author: Fabio Ticconi
+ * Date: 18/10/26
+ */
+public class PathRequestSystem extends BaseSystem
+{
+    static final Logger log = LoggerFactory.getLogger(PathRequestSystem.class);
+
+    // how far (in cells) the goal can drift before a pending or ready request becomes useless
+    static final int GOAL_TOLERANCE = 2;
+
+    final int  threads;
+    final long budgetNanos;
+
+    final Bag<Request>               requests;
+    final ArrayDeque<Request>        pending;
+    final ArrayDeque<BoardSnapshot>  snapshots;
+    final ConcurrentLinkedQueue<Job> finished;
+    final ThreadLocal<Worker>        workers;
+    ExecutorService                  executor;
+
+    MovementSystem sMove;
+    BudgetSystem   sBudget;
+    MapSystem      map;
+
+    /**
+     * @param threads how many worker threads compute paths (0 means synchronous)
+     * @param budget  how many milliseconds per tick can be spent starting searches and handing over results
+     */
+    public PathRequestSystem(final int threads, final float budget)
+    {
+        this.threads = threads;
+        this.budgetNanos = (long) (budget * 1000000L);
+
+        requests = new Bag<>();
+        pending = new ArrayDeque<>();
+        snapshots = new ArrayDeque<>();
+        finished = new ConcurrentLinkedQueue<>();
+        workers = ThreadLocal.withInitial(Worker::new);
+    }
+
+    @Override
+    protected void initialize()
+    {
+        if (threads > 0)
+        {
+            executor = Executors.newFixedThreadPool(threads, r -> {
+                final Thread t = new Thread(r, "path-worker");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+
+        // nobody is going to follow the path of a dead creature
+        world.getAspectSubscriptionManager()
+             .get(Aspect.all(Position.class))
+             .addSubscriptionListener(new EntitySubscription.SubscriptionListener()
+             {
+                 @Override
+                 public void inserted(final IntBag entities)
+                 {
+
+                 }
+
+                 @Override
+                 public void removed(final IntBag entities)
+                 {
+                     for (int i = 0, size = entities.size(); i < size; i++)
+                         cancel(entities.get(i));
+                 }
+             });
+    }
+
+    @Override
+    protected void dispose()
+    {
+        if (executor != null)
+            executor.shutdownNow();
+    }
+
+    @Override
+    protected void processSystem()
+    {
+        final long deadline = System.nanoTime() + budgetNanos;
+
+        Job job;
+        // at least one result per tick, whatever the budget, so that we never starve
+        while ((job = finished.poll()) != null)
+        {
+            final Request r = job.request;
+
+            r.path = job.path;
+            r.ready = true;
+
+            // if the map has changed in the meantime, the version won't match and the cache will drop it.
+            // A failed search says nothing about the path, though
+            if (!job.failed)
+                job.layer.getCache().put(job.version, r.startX, r.startY, r.endX, r.endY, job.path);
+
+            snapshots.push(job.snapshot);
+
+            if (System.nanoTime() > deadline)
+                break;
+        }
+
+        Request r;
+        boolean started = false;
+        // same here, at least one search is started per tick
+        while ((r = pending.poll()) != null)
+        {
+            if (r.cancelled)
+                continue;
+
+            if (started && (System.nanoTime() > deadline || sBudget.isOver()))
+            {
+                pending.push(r);
+                sBudget.defer(BudgetSystem.Work.PATHS, pending.size());
+                break;
+            }
+
+            start(r);
+            started = true;
+        }
+    }
+
+    /**
+     * Runs the search synchronously or, if there are workers, captures the window and hands it over to them.
+     */
+    void start(final Request request)
+    {
+        final NavigationLayer layer = request.layer;
+
+        if (executor == null)
+        {
+            request.path = layer.getPath(request.startX, request.startY, request.endX, request.endY, request.radius);
+            request.ready = true;
+
+            return;
+        }
+
+        final CostFunction  cost     = Options.PATHFINDING == Pathfinding.WEIGHTED_JPS ? layer : null;
+        final BoardSnapshot snapshot = snapshots.isEmpty() ? new BoardSnapshot() : snapshots.pop();
+
+        final Job job = new Job(request,
+                                layer,
+                                layer.getVersion(),
+                                snapshot.capture(layer, cost, request.startX, request.startY, request.radius));
+
+        executor.execute(() -> {
+            try
+            {
+                // a newer request has already replaced this one, don't bother
+                if (!job.request.cancelled)
+                    job.path = workers.get().findPath(job);
+            }
+            catch (final RuntimeException e)
+            {
+                log.error("path search from {},{} to {},{} failed",
+                          job.request.startX,
+                          job.request.startY,
+                          job.request.endX,
+                          job.request.endY,
+                          e);
+
+                job.path = null;
+                job.failed = true;
+            }
+            finally
+            {
+                // whatever happened, the request must become ready and the snapshot must come back
+                finished.add(job);
+            }
+        });
+    }
+
+    /**
+     * Returns the current path request of the entity, if it's still good for the given start and goal,
+     * or issues a new one.
+     *
+     * @return a handle that becomes ready when the path has been computed
+     */
+    public Request request(final int entityId,
+                           final int startX,
+                           final int startY,
+                           final int endX,
+                           final int endY,
+                           final int radius)
+    {
+        Request request = requests.isIndexWithinBounds(entityId) ? requests.get(entityId) : null;
+
+        if (request != null && !request.cancelled &&
+            Coords.distanceChebyshev(request.endX, request.endY, endX, endY) <= GOAL_TOLERANCE)
+        {
+            // still computing, or we are still on the computed path
+            if (!request.ready || request.indexOf(startX, startY) >= 0)
+                return request;
+
+            // no path was found, and nothing has changed on our side
+            if (request.path == null && request.startX == startX && request.startY == startY)
+                return request;
+        }
+
+        if (request != null)
+            request.cancelled = true;
+
+        final NavigationLayer layer = map.getLayer(sMove.getLocomotion(entityId));
+
+        request = new Request(layer, startX, startY, endX, endY, radius);
+        requests.set(entityId, request);
+
+        // unreachable goals are rejected right away, without bothering the workers
+        if (!layer.isReachable(startX, startY, endX, endY))
+        {
+            request.ready = true;
+
+            return request;
+        }
+
+        // someone else might have been there recently
+        final Point[] cached = layer.getCache().get(layer::isPassable, layer.getVersion(), startX, startY, endX, endY);
+
+        if (cached != null)
+        {
+            request.path = cached;
+            request.ready = true;
+
+            return request;
+        }
+
+        pending.add(request);
+
+        return request;
+    }
+
+    /**
+     * Forgets any path requested by the entity.
+     *
+     * @param entityId
+     */
+    public void cancel(final int entityId)
+    {
+        if (!requests.isIndexWithinBounds(entityId))
+            return;
+
+        final Request request = requests.get(entityId);
+
+        if (request != null)
+            request.cancelled = true;
+
+        requests.set(entityId, null);
+    }
+
+    /**
+     * Handle to a path being computed. It's only ever modified on the game thread.
+     */
+    public static class Request
+    {
+        final NavigationLayer layer;
+
+        public final int startX;
+        public final int startY;
+        public final int endX;
+        public final int endY;
+        public final int radius;
+
+        boolean          ready;
+        volatile boolean cancelled;
+        Point[]          path;
+        int              cursor;
+
+        Request(final NavigationLayer layer,
+                final int startX,
+                final int startY,
+                final int endX,
+                final int endY,
+                final int radius)
+        {
+            this.layer = layer;
+            this.startX = startX;
+            this.startY = startY;
+            this.endX = endX;
+            this.endY = endY;
+            this.radius = radius;
+        }
+
+        public boolean isReady()
+        {
+            return ready;
+        }
+
+        /**
+         * @return the path, or null if it's not ready or none could be found
+         */
+        public Point[] getPath()
+        {
+            return path;
+        }
+
+        /**
+         * @return the step following (x,y) on the path, or null if (x,y) is not on the path (or it's the end)
+         */
+        public Point next(final int x, final int y)
+        {
+            final int i = indexOf(x, y);
+
+            if (i < 0 || i + 1 >= path.length)
+                return null;
+
+            return path[i + 1];
+        }
+
+        int indexOf(final int x, final int y)
+        {
+            if (path == null)
+                return -1;
+
+            // we usually move forward along the path, so we start looking from where we were last time
+            for (int n = 0; n < path.length; n++)
+            {
+                final int i = (cursor + n) % path.length;
+
+                if (path[i].x == x && path[i].y == y)
+                {
+                    cursor = i;
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+    }
+
+    static class Job
+    {
+        final Request         request;
+        final NavigationLayer layer;
+        final long            version;
+        final BoardSnapshot   snapshot;
+        Point[]               path;
+        boolean               failed;
+
+        Job(final Request request, final NavigationLayer layer, final long version, final BoardSnapshot snapshot)
+        {
+            this.request = request;
+            this.layer = layer;
+            this.version = version;
+            this.snapshot = snapshot;
+        }
+    }
+
+    /**
+     * Each worker thread has its own planner, looking at the snapshot of the job it's currently running.
+     */
+    static class Worker implements IBoard, CostFunction
+    {
+        final PathPlanner planner;
+
+        BoardSnapshot snapshot;
+
+        Worker()
+        {
+            switch (Options.PATHFINDING)
+            {
+                case ASTAR:
+                    final AStar aStar = new AStar(this, Options.MAP_SIZE_X, Options.MAP_SIZE_Y, true);
+                    planner = aStar::findPath;
+                    break;
+
+                case WEIGHTED_JPS:
+                    planner = new JumpPointSearch(this,
+                                                  Options.MAP_SIZE_X,
+                                                  Options.MAP_SIZE_Y,
+                                                  this,
+                                                  1f,
+                                                  Options.PATH_COST_QUANTUM);
+                    break;
+
+                default:
+                    planner = new JumpPointSearch(this, Options.MAP_SIZE_X, Options.MAP_SIZE_Y);
+            }
+        }
+
+        Point[] findPath(final Job job)
+        {
+            snapshot = job.snapshot;
+
+            final Request r = job.request;
+
+            return planner.findPath(r.startX, r.startY, r.endX, r.endY, r.radius);
+        }
+
+        @Override
+        public boolean contains(final int x, final int y)
+        {
+            return x >= 0 && y >= 0 && x < Options.MAP_SIZE_X && y < Options.MAP_SIZE_Y;
+        }
+
+        @Override
+        public boolean blocksLight(final int x, final int y)
+        {
+            return snapshot.blocksLight(x, y);
+        }
+
+        @Override
+        public boolean blocksStep(final int x, final int y)
+        {
+            return snapshot.blocksStep(x, y);
+        }
+
+        @Override
+        public void visit(final int x, final int y)
+        {
+
+        }
+
+        @Override
+        public float cost(final int x, final int y)
+        {
+            return snapshot.cost(x, y);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.systems;
+
+import com.artemis.Aspect;
+import com.artemis.ComponentMapper;
+import com.artemis.EntitySubscription;
+import com.artemis.utils.Bag;
+import com.artemis.utils.IntBag;
+import com.github.fabioticconi.alone.components.Position;
+import com.github.fabioticconi.alone.components.attributes.Sight;
+import com.github.fabioticconi.alone.constants.Options;
+import com.github.fabioticconi.alone.constants.Pathfinding;
+import com.github.fabioticconi.alone.constants.Side;
+import com.github.fabioticconi.alone.map.DStarLite;
+import com.github.fabioticconi.alone.map.NavigationLayer;
+import com.github.fabioticconi.alone.utils.Coords;
+import net.mostlyoriginal.api.system.core.PassiveSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rlforj.math.Point;
+
+/**
+ * Moves creatures towards targets that move as well (eg, a predator chasing its prey).
+ * <p>
+ * Each pursuer keeps its own {@link DStarLite} search, so that every step only costs as much as
+ * what has changed since the previous one, instead of a whole new path. The search only looks at the
+ * static map: other creatures in the way are dealt with by bumping into them.
+ * <p>
+ * Author: Fabio Ticconi
+ * Date: 18/10/26
+ */
+public class PursuitSystem extends PassiveSystem
+{
+    static final Logger log = LoggerFactory.getLogger(PursuitSystem.class);
+
+    ComponentMapper<Position> mPos;
+    ComponentMapper<Sight>    mSight;
+
+    BumpSystem     sBump;
+    MovementSystem sMove;
+    MapSystem      map;
+
+    final Bag<DStarLite> planners;
+
+    public PursuitSystem()
+    {
+        planners = new Bag<>();
+    }
+
+    @Override
+    protected void initialize()
+    {
+        // searches are quite large, let's not keep them around when the pursuer is gone
+        world.getAspectSubscriptionManager()
+             .get(Aspect.all(Position.class))
+             .addSubscriptionListener(new EntitySubscription.SubscriptionListener()
+             {
+                 @Override
+                 public void inserted(final IntBag entities)
+                 {
+
+                 }
+
+                 @Override
+                 public void removed(final IntBag entities)
+                 {
+                     for (int i = 0, size = entities.size(); i < size; i++)
+                     {
+                         final int entityId = entities.get(i);
+
+                         if (planners.isIndexWithinBounds(entityId))
+                             planners.set(entityId, null);
+                     }
+                 }
+             });
+    }
+
+    /**
+     * Takes a step towards the target.
+     *
+     * @param actorId
+     * @param target
+     * @return the cooldown of the action, or 0 if no step was possible
+     */
+    public float pursue(final int actorId, final Position target)
+    {
+        final Position pos = mPos.get(actorId);
+
+        if (pos.equals(target))
+            return 0f;
+
+        if (Coords.distanceChebyshev(pos.x, pos.y, target.x, target.y) == 1)
+        {
+            // it's only one step away, no point searching
+            return sBump.bumpAction(actorId, Side.getSide(pos.x, pos.y, target.x, target.y));
+        }
+
+        final NavigationLayer layer = map.getLayer(sMove.getLocomotion(actorId));
+
+        if (!layer.isReachable(pos.x, pos.y, target.x, target.y))
+            return 0f;
+
+        DStarLite planner = planners.isIndexWithinBounds(actorId) ? planners.get(actorId) : null;
+
+        if (planner == null)
+        {
+            if (Options.PATHFINDING == Pathfinding.WEIGHTED_JPS)
+                planner = new DStarLite(layer::isPassable, layer, 1f);
+            else
+                planner = new DStarLite(layer::isPassable, null, 1f);
+
+            planners.set(actorId, planner);
+        }
+
+        // as for the other planners, the creature can look a bit further than it can see
+        final Point p = planner.next(map.getChanges(),
+                                     pos.x,
+                                     pos.y,
+                                     target.x,
+                                     target.y,
+                                     mSight.get(actorId).value + 2);
+
+        if (p == null)
+        {
+            log.warn("{} cannot find a path from {} to {}", actorId, pos, target);
+
+            return 0f;
+        }
+
+        return sBump.bumpAction(actorId, Side.getSide(pos.x, pos.y, p.x, p.y));
+    }
+}
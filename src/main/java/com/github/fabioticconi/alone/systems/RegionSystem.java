@@ -0,0 +1,513 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.systems;
+
+import com.artemis.Aspect;
+import com.artemis.ComponentMapper;
+import com.artemis.annotations.Wire;
+import com.artemis.systems.IntervalSystem;
+import com.artemis.utils.IntBag;
+import com.github.fabioticconi.alone.components.*;
+import com.github.fabioticconi.alone.constants.Options;
+import com.github.fabioticconi.alone.constants.TerrainType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Puts far-away regions of the map to sleep.
+ * <p>
+ * The map is divided in square regions. When a region gets far enough from the player (and from any
+ * other point of interest of the {@link LodSystem}), its creatures are removed from the world and only
+ * what's needed to bring them back is kept, in packed arrays: species, position, group, health and hunger.
+ * <p>
+ * While dormant, a region is only simulated in aggregate: herbivores breed up to what the grass of the
+ * region can feed, carnivores kill herbivores in proportion to how many of both there are, and breed
+ * in proportion to how much they kill. The grass of each region is counted again when the terrain changes.
+ * When the player comes back, the creatures are made again.
+ * <p>
+ * Author: Fabio Ticconi
+ * Date: 18/10/26
+ */
+public class RegionSystem extends IntervalSystem
+{
+    static final Logger log = LoggerFactory.getLogger(RegionSystem.class);
+
+    static final byte OTHER     = 0;
+    static final byte HERBIVORE = 1;
+    static final byte CARNIVORE = 2;
+
+    // per herbivore per second, when there's plenty of grass
+    static final float BIRTH_RATE       = 0.01f;
+    // per carnivore per herbivore per second, on a single cell (so it's diluted by the size of the region)
+    static final float PREDATION_RATE   = 0.1f;
+    // how many carnivores are born for each herbivore killed
+    static final float CONVERSION       = 0.2f;
+    // per carnivore per second
+    static final float MORTALITY        = 0.002f;
+    // how many grass cells it takes to feed a herbivore
+    static final int   CELLS_PER_GRAZER = 32;
+
+    @Wire
+    Random r;
+
+    ComponentMapper<Position>  mPosition;
+    ComponentMapper<Name>      mName;
+    ComponentMapper<Group>     mGroup;
+    ComponentMapper<Health>    mHealth;
+    ComponentMapper<Hunger>    mHunger;
+    ComponentMapper<Herbivore> mHerbivore;
+    ComponentMapper<Carnivore> mCarnivore;
+
+    CreatureSystem sCreature;
+    LodSystem      sLod;
+    MapSystem      map;
+
+    final int size;
+    final int wakeDistance;
+    final int sleepDistance;
+
+    final int      columns;
+    final Region[] regions;
+
+    // the terrain version the capacity of the regions was computed for
+    long terrainVersion;
+
+    /**
+     * @param interval      how often, in seconds, regions are checked and the dormant ones simulated
+     * @param size          side of a region, in cells
+     * @param wakeDistance  a dormant region closer than this to a point of interest is brought back to life
+     * @param sleepDistance a live region further than this from all points of interest goes dormant
+     */
+    public RegionSystem(final float interval, final int size, final int wakeDistance, final int sleepDistance)
+    {
+        super(Aspect.all(AI.class, Position.class, Name.class).exclude(Player.class, Dead.class), interval);
+
+        this.size = size;
+        this.wakeDistance = wakeDistance;
+        this.sleepDistance = Math.max(wakeDistance, sleepDistance);
+
+        columns = (Options.MAP_SIZE_X + size - 1) / size;
+
+        final int rows = (Options.MAP_SIZE_Y + size - 1) / size;
+
+        regions = new Region[columns * rows];
+        terrainVersion = -1L;
+
+        for (int i = 0; i < regions.length; i++)
+        {
+            final int minX = (i % columns) * size;
+            final int minY = (i / columns) * size;
+
+            regions[i] = new Region(minX,
+                                    minY,
+                                    Math.min(minX + size, Options.MAP_SIZE_X) - 1,
+                                    Math.min(minY + size, Options.MAP_SIZE_Y) - 1);
+        }
+    }
+
+    @Override
+    protected void processSystem()
+    {
+        // nobody to be close to (eg, the game hasn't started yet)
+        if (!sLod.hasPointsOfInterest())
+            return;
+
+        for (final Region region : regions)
+        {
+            final int distance = sLod.getDistance(region.minX, region.minY, region.maxX, region.maxY);
+
+            if (region.dormant && distance <= wakeDistance)
+                wake(region);
+            else if (!region.dormant && distance > sleepDistance)
+                region.dormant = true;
+        }
+
+        // whoever is in a dormant region goes to sleep, including those that just walked into one
+        final IntBag entities = subscription.getEntities();
+        final int[]  data     = entities.getData();
+
+        int frozen = 0;
+
+        for (int i = 0, n = entities.size(); i < n; i++)
+        {
+            final int      entityId = data[i];
+            final Position p        = mPosition.get(entityId);
+            final Region   region   = getRegion(p.x, p.y);
+
+            if (!region.dormant)
+                continue;
+
+            freeze(region, entityId, p);
+            frozen++;
+        }
+
+        if (frozen > 0)
+            log.debug("{} creatures went dormant", frozen);
+
+        // the grass might have changed, so the capacities will be computed again when needed
+        final long version = map.getTerrainVersion();
+
+        if (version != terrainVersion)
+        {
+            terrainVersion = version;
+
+            for (final Region region : regions)
+            {
+                region.capacity = -1;
+            }
+        }
+
+        final float delta = getIntervalDelta();
+
+        for (final Region region : regions)
+        {
+            if (region.dormant && region.size > 0)
+                advance(region, delta);
+        }
+    }
+
+    Region getRegion(final int x, final int y)
+    {
+        return regions[(x / size) + (y / size) * columns];
+    }
+
+    void freeze(final Region region, final int entityId, final Position p)
+    {
+        final byte diet;
+        if (mCarnivore.has(entityId))
+            diet = CARNIVORE;
+        else if (mHerbivore.has(entityId))
+            diet = HERBIVORE;
+        else
+            diet = OTHER;
+
+        region.store(mName.get(entityId).tag,
+                     diet,
+                     p.x,
+                     p.y,
+                     mGroup.get(entityId),
+                     mHealth.get(entityId),
+                     mHunger.get(entityId));
+
+        map.obstacles.del(p.x, p.y);
+        world.delete(entityId);
+    }
+
+    void wake(final Region region)
+    {
+        region.dormant = false;
+
+        for (int i = 0; i < region.size; i++)
+        {
+            final int id = sCreature.makeCreature(region.tags[i], region.xs[i], region.ys[i]);
+
+            if (id < 0)
+                continue;
+
+            region.restore(i, region.groups[i] < 0 ? null : mGroup.create(id), mHealth.get(id), mHunger.get(id));
+        }
+
+        if (region.size > 0)
+            log.debug("{} creatures woke up at {},{}", region.size, region.minX, region.minY);
+
+        region.size = 0;
+    }
+
+    void advance(final Region region, final float delta)
+    {
+        if (region.capacity < 0)
+            region.capacity = countGrass(region) / CELLS_PER_GRAZER;
+
+        final int herbivores = region.count(HERBIVORE);
+        final int carnivores = region.count(CARNIVORE);
+
+        // grazing: herbivores breed towards what the grass can feed, and starve beyond it
+        if (herbivores > 0)
+        {
+            final float crowding = herbivores / Math.max(1f, region.capacity);
+            final float growth   = BIRTH_RATE * herbivores * (1f - crowding) * delta;
+
+            if (growth > 0f)
+                breed(region, HERBIVORE, sample(growth));
+            else
+                kill(region, HERBIVORE, sample(-growth));
+        }
+
+        // predation: the more of both there are on the same area, the more often they meet
+        if (carnivores > 0)
+        {
+            final float area  = (region.maxX - region.minX + 1) * (region.maxY - region.minY + 1);
+            final float hunts = PREDATION_RATE * carnivores * herbivores / area * delta;
+            final int   kills = kill(region, HERBIVORE, sample(hunts));
+
+            breed(region, CARNIVORE, sample(CONVERSION * kills));
+            kill(region, CARNIVORE, sample(MORTALITY * carnivores * delta));
+        }
+    }
+
+    int countGrass(final Region region)
+    {
+        int grass = 0;
+
+        for (int x = region.minX; x <= region.maxX; x++)
+        {
+            for (int y = region.minY; y <= region.maxY; y++)
+            {
+                if (map.get(x, y).type.equals(TerrainType.GRASS))
+                    grass++;
+            }
+        }
+
+        return grass;
+    }
+
+    /**
+     * @return how many events happen, when on average there should be the given number
+     */
+    int sample(final float expected)
+    {
+        final int n = (int) expected;
+
+        return r.nextFloat() < expected - n ? n + 1 : n;
+    }
+
+    /**
+     * Each newborn is a copy of a random parent of the same diet, in perfect shape.
+     */
+    void breed(final Region region, final byte diet, final int births)
+    {
+        for (int n = 0; n < births; n++)
+        {
+            final int parent = region.pick(diet, r);
+
+            if (parent < 0)
+                return;
+
+            region.add(region.tags[parent],
+                       diet,
+                       region.xs[parent],
+                       region.ys[parent],
+                       region.groups[parent],
+                       1f,
+                       0f);
+        }
+    }
+
+    /**
+     * @return how many actually died (there might not be enough of them)
+     */
+    int kill(final Region region, final byte diet, final int deaths)
+    {
+        for (int n = 0; n < deaths; n++)
+        {
+            final int victim = region.pick(diet, r);
+
+            if (victim < 0)
+                return n;
+
+            region.remove(victim);
+        }
+
+        return deaths;
+    }
+
+    /**
+     * @return how many creatures are dormant, in the whole map
+     */
+    public int getDormantCount()
+    {
+        int count = 0;
+
+        for (final Region region : regions)
+        {
+            count += region.size;
+        }
+
+        return count;
+    }
+
+    /**
+     * The creatures of a dormant region, one column per property.
+     */
+    static class Region
+    {
+        final int minX;
+        final int minY;
+        final int maxX;
+        final int maxY;
+
+        boolean dormant;
+        // how many herbivores the region can feed, not known until first needed (or after the terrain changes)
+        int     capacity;
+
+        String[] tags;
+        byte[]   diets;
+        int[]    xs;
+        int[]    ys;
+        int[]    groups;
+        float[]  health;
+        float[]  hunger;
+        int      size;
+
+        Region(final int minX, final int minY, final int maxX, final int maxY)
+        {
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+
+            capacity = -1;
+
+            tags = new String[0];
+            diets = new byte[0];
+            xs = new int[0];
+            ys = new int[0];
+            groups = new int[0];
+            health = new float[0];
+            hunger = new float[0];
+        }
+
+        void add(final String tag,
+                 final byte diet,
+                 final int x,
+                 final int y,
+                 final int groupId,
+                 final float health,
+                 final float hunger)
+        {
+            if (size == tags.length)
+            {
+                final int length = Math.max(16, 2 * size);
+
+                tags = Arrays.copyOf(tags, length);
+                diets = Arrays.copyOf(diets, length);
+                xs = Arrays.copyOf(xs, length);
+                ys = Arrays.copyOf(ys, length);
+                groups = Arrays.copyOf(groups, length);
+                this.health = Arrays.copyOf(this.health, length);
+                this.hunger = Arrays.copyOf(this.hunger, length);
+            }
+
+            tags[size] = tag;
+            diets[size] = diet;
+            xs[size] = x;
+            ys[size] = y;
+            groups[size] = groupId;
+            this.health[size] = health;
+            this.hunger[size] = hunger;
+            size++;
+        }
+
+        /**
+         * Keeps what's needed to make the creature again: health and hunger as a fraction of their maximum,
+         * since the new body might be different.
+         *
+         * @return the index of the creature
+         */
+        int store(final String tag,
+                  final byte diet,
+                  final int x,
+                  final int y,
+                  final Group group,
+                  final Health health,
+                  final Hunger hunger)
+        {
+            add(tag,
+                diet,
+                x,
+                y,
+                group == null ? -1 : group.groupId,
+                health == null ? 1f : health.value / health.maxValue,
+                hunger == null ? 0f : hunger.value / hunger.maxValue);
+
+            return size - 1;
+        }
+
+        /**
+         * Gives back to a newly made creature what it had when it was stored. Any of the components can be null,
+         * if the new creature doesn't have them.
+         */
+        void restore(final int i, final Group group, final Health health, final Hunger hunger)
+        {
+            if (group != null)
+                group.groupId = groups[i];
+
+            if (health != null)
+                health.value = this.health[i] * health.maxValue;
+
+            if (hunger != null)
+                hunger.value = this.hunger[i] * hunger.maxValue;
+        }
+
+        /**
+         * Removes a creature by putting the last one in its place.
+         */
+        void remove(final int i)
+        {
+            size--;
+
+            tags[i] = tags[size];
+            diets[i] = diets[size];
+            xs[i] = xs[size];
+            ys[i] = ys[size];
+            groups[i] = groups[size];
+            health[i] = health[size];
+            hunger[i] = hunger[size];
+
+            tags[size] = null;
+        }
+
+        int count(final byte diet)
+        {
+            int count = 0;
+
+            for (int i = 0; i < size; i++)
+            {
+                if (diets[i] == diet)
+                    count++;
+            }
+
+            return count;
+        }
+
+        /**
+         * @return the index of a random creature of that diet, or -1 if there are none
+         */
+        int pick(final byte diet, final Random r)
+        {
+            final int count = count(diet);
+
+            if (count == 0)
+                return -1;
+
+            int n = r.nextInt(count);
+
+            for (int i = 0; i < size; i++)
+            {
+                if (diets[i] == diet && n-- == 0)
+                    return i;
+            }
+
+            return -1;
+        }
+    }
+}
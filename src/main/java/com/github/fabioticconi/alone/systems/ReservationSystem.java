@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.systems;
+
+import com.artemis.BaseSystem;
+import com.artemis.ComponentMapper;
+import com.github.fabioticconi.alone.components.Group;
+import com.github.fabioticconi.alone.constants.Options;
+
+import java.util.Arrays;
+
+/**
+ * Lets the members of a group tell each other where they are going.
+ * <p>
+ * A grouped creature that starts a step reserves the destination cell until the step is over. Another
+ * member of the same group that wants to step there in the meantime is told the cell is taken, so it can
+ * sidestep or wait, instead of arriving second and failing the move (or, worse, bumping into a herd-mate
+ * and attacking it).
+ * <p>
+ * Reservations simply expire, so nothing needs to be cleared between ticks. Creatures outside a group
+ * (the player, for example) neither reserve nor respect reservations.
+ * <p>
+ * Author: Fabio Ticconi
+ * Date: 18/10/26
+ */
+public class ReservationSystem extends BaseSystem
+{
+    ComponentMapper<Group> mGroup;
+
+    // owner and expiry time of the reservation, per cell
+    final int[]   owner;
+    final float[] until;
+
+    float time;
+
+    public ReservationSystem()
+    {
+        owner = new int[Options.MAP_SIZE_X * Options.MAP_SIZE_Y];
+        until = new float[Options.MAP_SIZE_X * Options.MAP_SIZE_Y];
+
+        Arrays.fill(owner, -1);
+    }
+
+    @Override
+    protected void processSystem()
+    {
+        time += world.delta;
+    }
+
+    /**
+     * Reserves the cell for the given time, if the entity belongs to a group.
+     *
+     * @param entityId
+     * @param x
+     * @param y
+     * @param duration how many seconds the reservation lasts
+     */
+    public void reserve(final int entityId, final int x, final int y, final float duration)
+    {
+        if (!mGroup.has(entityId) || duration <= 0f)
+            return;
+
+        final int i = x * Options.MAP_SIZE_Y + y;
+
+        owner[i] = entityId;
+        until[i] = time + duration;
+    }
+
+    /**
+     * @param entityId
+     * @param x
+     * @param y
+     * @return true if another member of the entity's group has reserved the cell
+     */
+    public boolean isReservedAgainst(final int entityId, final int x, final int y)
+    {
+        final int i = x * Options.MAP_SIZE_Y + y;
+
+        if (owner[i] < 0 || owner[i] == entityId)
+            return false;
+
+        if (until[i] <= time)
+        {
+            owner[i] = -1;
+
+            return false;
+        }
+
+        return isGroupMate(entityId, owner[i]);
+    }
+
+    /**
+     * @param entityId
+     * @param otherId
+     * @return true if both entities belong to the same group
+     */
+    public boolean isGroupMate(final int entityId, final int otherId)
+    {
+        final Group g1 = mGroup.get(entityId);
+        final Group g2 = mGroup.get(otherId);
+
+        return g1 != null && g2 != null && g1.groupId == g2.groupId;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.systems;
+
+import com.artemis.Aspect;
+import com.artemis.ComponentMapper;
+import com.artemis.systems.IntervalIteratingSystem;
+import com.github.fabioticconi.alone.components.Dead;
+import com.github.fabioticconi.alone.components.Herbivore;
+import com.github.fabioticconi.alone.components.Position;
+import com.github.fabioticconi.alone.constants.Options;
+import com.github.fabioticconi.alone.constants.Side;
+import com.github.fabioticconi.alone.map.InfluenceMap;
+
+/**
+ * Prey leaves a scent behind, which spreads around and fades over time. Predators that have lost sight
+ * of their prey can still track it by going where the smell is stronger.
+ * <p>
+ * Spreading the scent over the whole map at once would be expensive, so each interval only a slice of
+ * it is processed: the full map is covered every {@link #SLICES} intervals.
+ * <p>
+ * Author: Fabio Ticconi
+ * Date: 18/10/26
+ */
+public class ScentSystem extends IntervalIteratingSystem
+{
+    // each block of the scent map is 2x2 cells
+    static final int BLOCK_SHIFT = 1;
+
+    static final int SLICES = 8;
+
+    // how much scent a creature leaves at each interval
+    static final float DEPOSIT = 0.5f;
+
+    // how much of a block's scent is exchanged with its neighbours, at each pass
+    static final float DIFFUSION = 0.5f;
+
+    ComponentMapper<Position> mPosition;
+
+    final float halfLife;
+
+    InfluenceMap scent;
+    int          slice;
+
+    /**
+     * @param interval how often (in seconds) scent is left and spread
+     * @param halfLife how long (in seconds) it takes for the scent to lose half its strength
+     */
+    public ScentSystem(final float interval, final float halfLife)
+    {
+        super(Aspect.all(Herbivore.class, Position.class).exclude(Dead.class), interval);
+
+        this.halfLife = halfLife;
+    }
+
+    @Override
+    protected void initialize()
+    {
+        scent = new InfluenceMap(Options.MAP_SIZE_X, Options.MAP_SIZE_Y, BLOCK_SHIFT);
+    }
+
+    @Override
+    protected void begin()
+    {
+        final int columns = scent.getColumns();
+        final int width   = (columns + SLICES - 1) / SLICES;
+
+        // each block is only processed once every SLICES intervals, so it has to fade that much more
+        final float factor = (float) Math.pow(0.5, getIntervalDelta() * SLICES / halfLife);
+
+        scent.diffuse(slice * width, (slice + 1) * width, DIFFUSION, factor);
+
+        slice = (slice + 1) % SLICES;
+    }
+
+    @Override
+    protected void process(final int entityId)
+    {
+        final Position p = mPosition.get(entityId);
+
+        scent.add(p.x, p.y, DEPOSIT);
+    }
+
+    /**
+     * @return how strongly (x,y) smells of prey, between 0 and 1
+     */
+    public float getScent(final int x, final int y)
+    {
+        return scent.get(x, y);
+    }
+
+    /**
+     * @return the direction in which the smell of prey gets stronger, or HERE
+     */
+    public Side getTrail(final int x, final int y)
+    {
+        return scent.getAscent(x, y);
+    }
+}
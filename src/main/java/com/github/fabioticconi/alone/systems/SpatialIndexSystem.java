@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.systems;
+
+import com.artemis.Aspect;
+import com.artemis.ComponentMapper;
+import com.artemis.EntitySubscription;
+import com.artemis.utils.IntBag;
+import com.github.fabioticconi.alone.components.Position;
+import com.github.fabioticconi.alone.constants.Category;
+import com.github.fabioticconi.alone.constants.Options;
+import com.github.fabioticconi.alone.utils.SingleGrid;
+import com.github.fabioticconi.alone.utils.SpatialHash;
+import net.mostlyoriginal.api.system.core.PassiveSystem;
+
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.function.IntPredicate;
+
+/**
+ * Keeps a separate {@link SpatialHash} for each {@link Category} of entities, so that questions like
+ * "where's the closest prey" only look at prey, and only around the asking creature.
+ * <p>
+ * Membership follows the category's aspect, while positions follow the obstacle and item grids: every
+ * placement, move or removal on the map goes through them, so the indices are always in sync without
+ * anybody having to remember to update them.
+ * <p>
+ * Author: Fabio Ticconi
+ * Date: 18/10/26
+ */
+public class SpatialIndexSystem extends PassiveSystem
+{
+    // the blocks of the spatial hashes are 8x8 cells
+    static final int BUCKET_SHIFT = 3;
+
+    ComponentMapper<Position> mPosition;
+
+    MapSystem map;
+
+    EnumMap<Category, SpatialHash> indices;
+    EnumMap<Category, BitSet>      members;
+
+    @Override
+    protected void initialize()
+    {
+        indices = new EnumMap<>(Category.class);
+        members = new EnumMap<>(Category.class);
+
+        for (final Category category : Category.values())
+        {
+            final SpatialHash index  = new SpatialHash(Options.MAP_SIZE_X, Options.MAP_SIZE_Y, BUCKET_SHIFT);
+            final BitSet      member = new BitSet();
+            final SingleGrid  grid   = getGrid(category);
+
+            indices.put(category, index);
+            members.put(category, member);
+
+            world.getAspectSubscriptionManager()
+                 .get(Aspect.all(Position.class, category.type))
+                 .addSubscriptionListener(new EntitySubscription.SubscriptionListener()
+                 {
+                     @Override
+                     public void inserted(final IntBag entities)
+                     {
+                         for (int i = 0, size = entities.size(); i < size; i++)
+                         {
+                             final int      entityId = entities.get(i);
+                             final Position p        = mPosition.get(entityId);
+
+                             member.set(entityId);
+
+                             // it might have a position, but not be on the map (eg, carried around)
+                             if (grid.has(entityId, p.x, p.y))
+                                 index.put(entityId, p.x, p.y);
+                         }
+                     }
+
+                     @Override
+                     public void removed(final IntBag entities)
+                     {
+                         for (int i = 0, size = entities.size(); i < size; i++)
+                         {
+                             final int entityId = entities.get(i);
+
+                             member.clear(entityId);
+                             index.remove(entityId);
+                         }
+                     }
+                 });
+        }
+
+        map.getObstacles().addListener((x, y) -> cellChanged(false, x, y));
+        map.getItems().addListener((x, y) -> cellChanged(true, x, y));
+    }
+
+    void cellChanged(final boolean item, final int x, final int y)
+    {
+        final int entityId = (item ? map.getItems() : map.getObstacles()).get(x, y);
+
+        for (final Category category : Category.values())
+        {
+            if (category.item != item)
+                continue;
+
+            final SpatialHash index = indices.get(category);
+
+            // whoever was here has left, or has been taken off the map
+            index.removeAt(x, y, entityId);
+
+            if (entityId >= 0 && members.get(category).get(entityId))
+                index.put(entityId, x, y);
+        }
+    }
+
+    SingleGrid getGrid(final Category category)
+    {
+        return category.item ? map.getItems() : map.getObstacles();
+    }
+
+    /**
+     * @param category
+     * @param x
+     * @param y
+     * @param r
+     * @param filter   if not null, only entities it accepts are considered
+     * @return the entity of that category closest to (x,y) and within radius r, or -1
+     */
+    public int getNearest(final Category category, final int x, final int y, final int r, final IntPredicate filter)
+    {
+        return indices.get(category).nearest(x, y, r, filter);
+    }
+
+    /**
+     * @param category
+     * @param x
+     * @param y
+     * @param r
+     * @param entities where to put the results
+     * @return the entities of that category within radius r of (x,y)
+     */
+    public IntBag getWithin(final Category category, final int x, final int y, final int r, final IntBag entities)
+    {
+        return indices.get(category).within(x, y, r, entities);
+    }
+}
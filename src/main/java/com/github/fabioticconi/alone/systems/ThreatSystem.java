@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.systems;
+
+import com.artemis.Aspect;
+import com.artemis.ComponentMapper;
+import com.artemis.EntitySubscription;
+import com.artemis.systems.IntervalIteratingSystem;
+import com.artemis.utils.IntBag;
+import com.github.fabioticconi.alone.components.*;
+import com.github.fabioticconi.alone.components.actions.Action;
+import com.github.fabioticconi.alone.components.attributes.Sight;
+import com.github.fabioticconi.alone.constants.Category;
+import com.github.fabioticconi.alone.constants.Options;
+import com.github.fabioticconi.alone.utils.Coords;
+import com.github.fabioticconi.alone.map.InfluenceMap;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Keeps track of where danger is, so that prey doesn't need to look around for predators.
+ * <p>
+ * Carnivores stamp their surroundings on a threat map, while anything that isn't a fish and is busy doing
+ * something stamps on a disturbance map (that fish care about). Both fade away, so creatures that
+ * leave an area stop scaring anyone after a while.
+ * <p>
+ * Herbivores that have a carnivore (the player included) in sight are also alerted, so that they don't
+ * need to be polling their surroundings all the time to notice it.
+ * <p>
+ * With the default map each of the two maps has 256x256 blocks, so they fade in parallel: split in stripes
+ * of columns, on a pool of our own.
+ * <p>
+ * Author: Fabio Ticconi
+ * Date: 18/10/26
+ */
+public class ThreatSystem extends IntervalIteratingSystem
+{
+    // each block of the maps is 4x4 cells
+    static final int BLOCK_SHIFT = 2;
+
+    static final int THREAT_RADIUS      = 10;
+    static final int DISTURBANCE_RADIUS = 5;
+
+    ComponentMapper<Position> mPosition;
+    ComponentMapper<Sight>    mSight;
+
+    SpatialIndexSystem sSpatial;
+    MapSystem          map;
+    AISystem           sAI;
+
+    final float halfLife;
+    final int   threads;
+
+    ForkJoinPool pool;
+    int          stripes;
+
+    InfluenceMap       threat;
+    InfluenceMap       disturbance;
+    EntitySubscription disturbing;
+    EntitySubscription watchers;
+
+    // as far as any herbivore can see. When one is removed it might be less, but we only check once per update
+    int     sightRadius;
+    boolean watchersRemoved;
+
+    final IntBag prey;
+
+    /**
+     * @param interval how often (in seconds) the maps are updated
+     * @param halfLife how long (in seconds) it takes for a stamp to lose half its strength
+     * @param threads  how many threads make the maps fade (1 means on the game thread)
+     */
+    public ThreatSystem(final float interval, final float halfLife, final int threads)
+    {
+        super(Aspect.all(Carnivore.class, Position.class).exclude(Dead.class), interval);
+
+        this.halfLife = halfLife;
+        this.threads = threads;
+
+        prey = new IntBag();
+    }
+
+    @Override
+    protected void initialize()
+    {
+        threat = new InfluenceMap(Options.MAP_SIZE_X, Options.MAP_SIZE_Y, BLOCK_SHIFT);
+        disturbance = new InfluenceMap(Options.MAP_SIZE_X, Options.MAP_SIZE_Y, BLOCK_SHIFT);
+
+        if (threads > 1)
+        {
+            pool = new ForkJoinPool(threads);
+
+            // a few stripes per thread, so that they even out
+            stripes = Math.min(threat.getColumns(), 4 * threads);
+        }
+
+        disturbing = world.getAspectSubscriptionManager()
+                          .get(Aspect.all(Action.class, Position.class).exclude(Underwater.class, Dead.class));
+
+        watchers = world.getAspectSubscriptionManager()
+                        .get(Aspect.all(Herbivore.class, Sight.class, Position.class).exclude(Dead.class));
+
+        watchers.addSubscriptionListener(new EntitySubscription.SubscriptionListener()
+        {
+            @Override
+            public void inserted(final IntBag entities)
+            {
+                for (int i = 0, size = entities.size(); i < size; i++)
+                    sightRadius = Math.max(sightRadius, mSight.get(entities.get(i)).value);
+            }
+
+            @Override
+            public void removed(final IntBag entities)
+            {
+                watchersRemoved = true;
+            }
+        });
+    }
+
+    @Override
+    protected void begin()
+    {
+        final float factor = (float) Math.pow(0.5, getIntervalDelta() / halfLife);
+
+        decay(factor);
+
+        final IntBag entities = disturbing.getEntities();
+
+        for (int i = 0, size = entities.size(); i < size; i++)
+        {
+            final Position p = mPosition.get(entities.get(i));
+
+            disturbance.stamp(p.x, p.y, 1f, DISTURBANCE_RADIUS);
+        }
+
+        if (watchersRemoved)
+            updateSightRadius();
+    }
+
+    @Override
+    protected void dispose()
+    {
+        if (pool != null)
+            pool.shutdownNow();
+    }
+
+    void decay(final float factor)
+    {
+        if (pool == null)
+        {
+            threat.decay(factor);
+            disturbance.decay(factor);
+
+            return;
+        }
+
+        final int width = (threat.getColumns() + stripes - 1) / stripes;
+
+        pool.submit(() -> IntStream.range(0, stripes).parallel().forEach(stripe -> {
+            final int from = stripe * width;
+
+            threat.decay(from, from + width, factor);
+            disturbance.decay(from, from + width, factor);
+        })).join();
+    }
+
+    /**
+     * Finds again the longest sight among the herbivores.
+     */
+    void updateSightRadius()
+    {
+        final IntBag entities = watchers.getEntities();
+
+        sightRadius = 0;
+
+        for (int i = 0, size = entities.size(); i < size; i++)
+            sightRadius = Math.max(sightRadius, mSight.get(entities.get(i)).value);
+
+        watchersRemoved = false;
+    }
+
+    /**
+     * @return how far a carnivore must look for herbivores that might see it
+     */
+    public int getSightRadius()
+    {
+        return sightRadius;
+    }
+
+    @Override
+    protected void process(final int entityId)
+    {
+        final Position p = mPosition.get(entityId);
+
+        threat.stamp(p.x, p.y, 1f, THREAT_RADIUS);
+
+        prey.clear();
+        sSpatial.getWithin(Category.HERBIVORE, p.x, p.y, sightRadius, prey);
+
+        final int[] data = prey.getData();
+
+        for (int i = 0, size = prey.size(); i < size; i++)
+        {
+            final int      preyId = data[i];
+            final Position q      = mPosition.get(preyId);
+            final Sight    sight  = mSight.get(preyId);
+
+            if (preyId == entityId || sight == null || Coords.distanceChebyshev(p.x, p.y, q.x, q.y) > sight.value)
+                continue;
+
+            if (map.isVisible(q.x, q.y, p.x, p.y))
+                sAI.alert(preyId, 1f);
+        }
+    }
+
+    /**
+     * @return how dangerous the area around (x,y) is, between 0 (not at all) and 1 (predators right there)
+     */
+    public float getThreat(final int x, final int y)
+    {
+        return threat.get(x, y);
+    }
+
+    /**
+     * @return how much is going on around (x,y), between 0 and 1
+     */
+    public float getDisturbance(final int x, final int y)
+    {
+        return disturbance.get(x, y);
+    }
+
+    /**
+     * @return the map of predators
+     */
+    public InfluenceMap getThreatMap()
+    {
+        return threat;
+    }
+
+    /**
+     * @return the map of busy, non-aquatic creatures
+     */
+    public InfluenceMap getDisturbanceMap()
+    {
+        return disturbance;
+    }
+}
@@ -43,6 +43,9 @@ public class TreeSystem extends PassiveSystem
 {
     static final Logger log = LoggerFactory.getLogger(TreeSystem.class);
 
+    // how many steps away a falling tree can be heard
+    static final int NOISE = 12;
+
     ComponentMapper<Cuttable> mCuttable;
     ComponentMapper<Speed>    mSpeed;
     ComponentMapper<Strength> mStrength;
@@ -52,6 +55,7 @@ public class TreeSystem extends PassiveSystem
     ItemSystem    sItem;
     MessageSystem msg;
     MapSystem     map;
+    NoiseSystem   sNoise;
 
     @Wire
     Random r;
@@ -125,6 +129,8 @@ public class TreeSystem extends PassiveSystem
 
             // consume a fixed amount of stamina
             sStamina.consume(actorId, cost);
+
+            sNoise.makeNoise(actorId, p.x, p.y, NOISE);
         }
     }
 }
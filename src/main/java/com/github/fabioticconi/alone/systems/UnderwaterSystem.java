@@ -20,7 +20,6 @@ package com.github.fabioticconi.alone.systems;
 
 import com.artemis.Aspect;
 import com.artemis.ComponentMapper;
-import com.artemis.systems.IntervalIteratingSystem;
 import com.github.fabioticconi.alone.components.Dead;
 import com.github.fabioticconi.alone.components.Position;
 import com.github.fabioticconi.alone.components.Underwater;
@@ -32,7 +31,7 @@ import java.util.EnumSet;
  * Author: Fabio Ticconi
  * Date: 21/10/17
  */
-public class UnderwaterSystem extends IntervalIteratingSystem
+public class UnderwaterSystem extends VitalSystem
 {
     private final EnumSet<TerrainType> validCells = EnumSet.of(TerrainType.WATER);
     ComponentMapper<Position> mPos;
@@ -52,11 +51,11 @@ public class UnderwaterSystem extends IntervalIteratingSystem
         final MapSystem.Cell c = map.get(p.x, p.y);
 
         // if inside water, no problem
-        if (validCells.contains(c))
+        if (validCells.contains(c.type))
             return;
 
-        // every time this ticks, 25% of the fish's life is gone.
+        // every second, 25% of the fish's life is gone (more, if updates were put off).
         // when life is zero, Dead is added
-        sHealth.damage(entityId, 0.25f);
+        sHealth.damage(entityId, 0.25f * getIntervalDelta());
     }
 }
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.systems;
+
+import com.artemis.Aspect;
+import com.artemis.systems.IntervalIteratingSystem;
+
+/**
+ * Base of the systems slowly changing vitals (health, hunger etc) at regular intervals.
+ * <p>
+ * When the tick is over budget (see {@link BudgetSystem}), a due update is put off to a later tick:
+ * the time it should have covered is not lost, but added to the next update that does run.
+ * <p>
+ * Author: Fabio Ticconi
+ * Date: 18/10/26
+ */
+public abstract class VitalSystem extends IntervalIteratingSystem
+{
+    BudgetSystem sBudget;
+
+    // time not yet accounted for, because of updates that were put off
+    float owed;
+
+    public VitalSystem(final Aspect.Builder aspect, final float interval)
+    {
+        super(aspect, interval);
+    }
+
+    @Override
+    protected boolean checkProcessing()
+    {
+        if (!super.checkProcessing())
+            return false;
+
+        if (!sBudget.isOver())
+            return true;
+
+        owed += super.getIntervalDelta();
+        sBudget.defer(BudgetSystem.Work.VITALS, subscription.getEntities().size());
+
+        return false;
+    }
+
+    @Override
+    public float getIntervalDelta()
+    {
+        return super.getIntervalDelta() + owed;
+    }
+
+    @Override
+    protected void end()
+    {
+        owed = 0f;
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.utils;
+
+/**
+ * Binary min-heap of int values, ordered by a float key. No boxing, and the backing
+ * arrays are reused after {@link #clear()}.
+ * <p>
+ * Values with the same key can be ordered by an optional second key.
+ * <p>
+ * There is no decrease-key: the same value can be added multiple times, and it's up to the caller
+ * to skip the stale copies when they are popped (the usual "lazy deletion" trick for graph searches).
+ * <p>
+ * Author: Fabio Ticconi
+ * Date: 18/10/26
+ */
+public class IntMinHeap
+{
+    private int[]   values;
+    private float[] keys;
+    private float[] ties;
+    private int     size;
+
+    public IntMinHeap()
+    {
+        this(64);
+    }
+
+    public IntMinHeap(final int capacity)
+    {
+        values = new int[capacity];
+        keys = new float[capacity];
+        ties = new float[capacity];
+    }
+
+    public void add(final int value, final float key)
+    {
+        add(value, key, 0f);
+    }
+
+    /**
+     * @param value
+     * @param key
+     * @param tie   only used to order values with the same key
+     */
+    public void add(final int value, final float key, final float tie)
+    {
+        if (size == values.length)
+            grow(2 * values.length);
+
+        // sift up
+        int i = size++;
+        while (i > 0)
+        {
+            final int parent = (i - 1) >>> 1;
+
+            if (!less(key, tie, keys[parent], ties[parent]))
+                break;
+
+            values[i] = values[parent];
+            keys[i] = keys[parent];
+            ties[i] = ties[parent];
+            i = parent;
+        }
+
+        values[i] = value;
+        keys[i] = key;
+        ties[i] = tie;
+    }
+
+    /**
+     * @return the value with the smallest key, without removing it
+     */
+    public int peek()
+    {
+        if (size == 0)
+            throw new ArrayIndexOutOfBoundsException("heap is empty");
+
+        return values[0];
+    }
+
+    /**
+     * @return the smallest key in the heap
+     */
+    public float peekKey()
+    {
+        if (size == 0)
+            throw new ArrayIndexOutOfBoundsException("heap is empty");
+
+        return keys[0];
+    }
+
+    /**
+     * @return the second key of the value with the smallest key
+     */
+    public float peekTie()
+    {
+        if (size == 0)
+            throw new ArrayIndexOutOfBoundsException("heap is empty");
+
+        return ties[0];
+    }
+
+    /**
+     * Removes and returns the value with the smallest key.
+     *
+     * @return the value with the smallest key
+     */
+    public int pop()
+    {
+        final int top = peek();
+
+        final int   value = values[--size];
+        final float key   = keys[size];
+        final float tie   = ties[size];
+
+        // sift down
+        int i = 0;
+        while (true)
+        {
+            int child = 2 * i + 1;
+
+            if (child >= size)
+                break;
+
+            if (child + 1 < size && less(keys[child + 1], ties[child + 1], keys[child], ties[child]))
+                child++;
+
+            if (!less(keys[child], ties[child], key, tie))
+                break;
+
+            values[i] = values[child];
+            keys[i] = keys[child];
+            ties[i] = ties[child];
+            i = child;
+        }
+
+        values[i] = value;
+        keys[i] = key;
+        ties[i] = tie;
+
+        return top;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    public void clear()
+    {
+        size = 0;
+    }
+
+    private boolean less(final float key1, final float tie1, final float key2, final float tie2)
+    {
+        return key1 < key2 || (key1 == key2 && tie1 < tie2);
+    }
+
+    private void grow(final int newCapacity)
+    {
+        final int[]   oldValues = values;
+        final float[] oldKeys   = keys;
+        final float[] oldTies   = ties;
+
+        values = new int[newCapacity];
+        keys = new float[newCapacity];
+        ties = new float[newCapacity];
+
+        System.arraycopy(oldValues, 0, values, 0, size);
+        System.arraycopy(oldKeys, 0, keys, 0, size);
+        System.arraycopy(oldTies, 0, ties, 0, size);
+    }
+}
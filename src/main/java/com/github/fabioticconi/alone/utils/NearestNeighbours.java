@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.utils;
+
+import com.artemis.utils.IntBag;
+import com.github.fabioticconi.alone.constants.Metric;
+
+import java.util.function.IntPredicate;
+
+/**
+ * Finds the k entities of a {@link SingleGrid} closest to a point.
+ * <p>
+ * It moves outwards one square ring at a time, keeping the best k found so far in a bounded heap, and
+ * stops as soon as the next ring cannot possibly hold anything closer than the worst of them.
+ * Nothing is allocated once the heap has grown to k, so an instance should be kept and reused
+ * (from one thread only).
+ * <p>
+ * Author: Fabio Ticconi
+ * Date: 18/10/26
+ */
+public class NearestNeighbours
+{
+    // keyed by negative distance, so that the top is the furthest of the k best
+    final IntMinHeap heap;
+
+    // parameters of the current query
+    SingleGrid   grid;
+    int          x;
+    int          y;
+    int          k;
+    float        maxDistance;
+    Metric       metric;
+    IntPredicate filter;
+
+    public NearestNeighbours()
+    {
+        heap = new IntMinHeap(16);
+    }
+
+    /**
+     * @param grid
+     * @param x
+     * @param y
+     * @param k         how many entities we want at most
+     * @param maxRadius how far to look, in the given metric
+     * @param metric
+     * @param filter    if not null, entities it refuses are ignored. It's only asked about entities
+     *                  that would make it in the best k
+     * @param result    cleared and filled with the entities found, closest first
+     * @return the result bag
+     */
+    public IntBag find(final SingleGrid grid,
+                       final int x,
+                       final int y,
+                       final int k,
+                       final int maxRadius,
+                       final Metric metric,
+                       final IntPredicate filter,
+                       final IntBag result)
+    {
+        result.clear();
+
+        if (k <= 0 || maxRadius < 0 || !grid.has(x, y))
+            return result;
+
+        this.grid = grid;
+        this.x = x;
+        this.y = y;
+        this.k = k;
+        this.maxDistance = maxRadius;
+        this.metric = metric;
+        this.filter = filter;
+
+        heap.clear();
+
+        // no need to go past the farthest border
+        final int limit = Math.min(maxRadius,
+                                   Math.max(Math.max(x, grid.width - 1 - x), Math.max(y, grid.height - 1 - y)));
+
+        offer(x, y);
+
+        for (int d = 1; d <= limit; d++)
+        {
+            // everything from here on is at least d away
+            if (heap.size() == k && d >= -heap.peekKey())
+                break;
+
+            final int minX = Math.max(0, x - d);
+            final int maxX = Math.min(grid.width - 1, x + d);
+            final int minY = Math.max(0, y - d + 1);
+            final int maxY = Math.min(grid.height - 1, y + d - 1);
+
+            // north and south rows
+            for (int cx = minX; cx <= maxX; cx++)
+            {
+                if (y - d >= 0)
+                    offer(cx, y - d);
+                if (y + d < grid.height)
+                    offer(cx, y + d);
+            }
+
+            // west and east columns, without the corners
+            for (int cy = minY; cy <= maxY; cy++)
+            {
+                if (x - d >= 0)
+                    offer(x - d, cy);
+                if (x + d < grid.width)
+                    offer(x + d, cy);
+            }
+        }
+
+        // the heap gives them furthest first
+        while (!heap.isEmpty())
+        {
+            result.add(heap.pop());
+        }
+
+        for (int i = 0, j = result.size() - 1; i < j; i++, j--)
+        {
+            final int temp = result.get(i);
+            result.set(i, result.get(j));
+            result.set(j, temp);
+        }
+
+        this.grid = null;
+        this.filter = null;
+
+        return result;
+    }
+
+    void offer(final int cx, final int cy)
+    {
+        final int entityId = grid.get(cx, cy);
+
+        if (entityId < 0)
+            return;
+
+        final float distance = metric.distance(x, y, cx, cy);
+
+        if (distance > maxDistance)
+            return;
+
+        if (heap.size() == k && distance >= -heap.peekKey())
+            return;
+
+        if (filter != null && !filter.test(entityId))
+            return;
+
+        if (heap.size() == k)
+            heap.pop();
+
+        heap.add(entityId, -distance);
+    }
+}
@@ -37,6 +37,8 @@ public class SingleGrid
     final int     height;
     final int[][] grid;
 
+    Listener[] listeners;
+
     public SingleGrid(final int width, final int height)
     {
         this.width = width;
@@ -44,6 +46,8 @@ public class SingleGrid
 
         grid = new int[width][height];
 
+        listeners = new Listener[0];
+
         clear();
     }
 
@@ -64,6 +68,31 @@ public class SingleGrid
         return has(x, y) && grid[x][y] == id;
     }
 
+    /**
+     * Registers an object to be told about every cell whose content is modified.
+     * Listeners are told in the order they were added.
+     *
+     * @param listener
+     */
+    public void addListener(final Listener listener)
+    {
+        listeners = Arrays.copyOf(listeners, listeners.length + 1);
+        listeners[listeners.length - 1] = listener;
+    }
+
+    /**
+     * Registers all the listeners of another grid, eg when this one replaces it.
+     *
+     * @param other
+     */
+    public void addListeners(final SingleGrid other)
+    {
+        for (final Listener listener : other.listeners)
+        {
+            addListener(listener);
+        }
+    }
+
     public int get(final int x, final int y)
     {
         return grid[x][y];
@@ -73,6 +102,12 @@ public class SingleGrid
     {
         final int old = grid[x][y];
         grid[x][y] = id;
+
+        for (final Listener listener : listeners)
+        {
+            listener.changed(x, y);
+        }
+
         return old;
     }
 
@@ -91,6 +126,12 @@ public class SingleGrid
         final int old = grid[x][y];
         grid[x][y] = id;
 
+        for (final Listener listener : listeners)
+        {
+            listener.changed(oldX, oldY);
+            listener.changed(x, y);
+        }
+
         return old;
     }
 
@@ -448,4 +489,13 @@ public class SingleGrid
 
         return entities;
     }
+
+    /**
+     * Gets notified of changes to the grid.
+     */
+    @FunctionalInterface
+    public interface Listener
+    {
+        void changed(int x, int y);
+    }
 }
@@ -0,0 +1,330 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.utils;
+
+import com.artemis.utils.IntBag;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Entity positions bucketed in square blocks of cells, so that neighbour queries only look at the
+ * blocks around the query point, and only at the entities that were put here.
+ * <p>
+ * It doesn't know anything about what the entities are: it's up to the owner to only put the
+ * interesting ones, and to keep their positions up to date.
+ * <p>
+ * Author: Fabio Ticconi
+ * Date: 18/10/26
+ */
+public class SpatialHash
+{
+    final int width;
+    final int height;
+    final int shift;
+    final int columns;
+    final int rows;
+
+    final IntBag[] buckets;
+
+    // packed position of each entity, or -1 if it's not here
+    int[] cells;
+    int   size;
+
+    // state of the current nearest-neighbour query, one per thread so that queries can run concurrently
+    final ThreadLocal<Query> queries = ThreadLocal.withInitial(Query::new);
+
+    /**
+     * @param width
+     * @param height
+     * @param shift  the blocks are 2^shift cells wide
+     */
+    public SpatialHash(final int width, final int height, final int shift)
+    {
+        this.width = width;
+        this.height = height;
+        this.shift = shift;
+
+        columns = ((width - 1) >> shift) + 1;
+        rows = ((height - 1) >> shift) + 1;
+
+        buckets = new IntBag[columns * rows];
+
+        cells = new int[64];
+        Arrays.fill(cells, -1);
+    }
+
+    /**
+     * Adds the entity at the given position, or moves it there if it was already here.
+     *
+     * @param entityId
+     * @param x
+     * @param y
+     */
+    public void put(final int entityId, final int x, final int y)
+    {
+        if (entityId >= cells.length)
+        {
+            final int oldLength = cells.length;
+
+            cells = Arrays.copyOf(cells, Math.max(2 * oldLength, entityId + 1));
+            Arrays.fill(cells, oldLength, cells.length, -1);
+        }
+
+        final int oldCell = cells[entityId];
+        final int newCell = x * height + y;
+
+        if (oldCell == newCell)
+            return;
+
+        final int newBucket = bucket(x, y);
+
+        if (oldCell < 0)
+        {
+            size++;
+
+            add(newBucket, entityId);
+        }
+        else
+        {
+            final int oldBucket = bucket(oldCell / height, oldCell % height);
+
+            if (oldBucket != newBucket)
+            {
+                buckets[oldBucket].removeValue(entityId);
+
+                add(newBucket, entityId);
+            }
+        }
+
+        cells[entityId] = newCell;
+    }
+
+    /**
+     * @param entityId
+     * @return true if the entity was here
+     */
+    public boolean remove(final int entityId)
+    {
+        if (!contains(entityId))
+            return false;
+
+        final int cell = cells[entityId];
+
+        buckets[bucket(cell / height, cell % height)].removeValue(entityId);
+
+        cells[entityId] = -1;
+        size--;
+
+        return true;
+    }
+
+    /**
+     * Removes whatever entity is at the given position, except the one specified.
+     *
+     * @param x
+     * @param y
+     * @param keepId the entity to leave where it is (or -1)
+     */
+    public void removeAt(final int x, final int y, final int keepId)
+    {
+        final IntBag bucket = buckets[bucket(x, y)];
+
+        if (bucket == null)
+            return;
+
+        final int cell = x * height + y;
+
+        // backwards, since removing moves the last entity into the hole
+        for (int i = bucket.size() - 1; i >= 0; i--)
+        {
+            final int entityId = bucket.get(i);
+
+            if (entityId != keepId && cells[entityId] == cell)
+            {
+                bucket.remove(i);
+
+                cells[entityId] = -1;
+                size--;
+            }
+        }
+    }
+
+    public boolean contains(final int entityId)
+    {
+        return entityId >= 0 && entityId < cells.length && cells[entityId] >= 0;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Finds the entity closest to (x,y), in euclidean distance, within a square of radius r.
+     *
+     * @param x
+     * @param y
+     * @param r
+     * @param filter if not null, entities it refuses are ignored. It's only asked about entities
+     *               closer than the best found so far.
+     * @return the closest entity, or -1
+     */
+    public int nearest(final int x, final int y, final int r, final IntPredicate filter)
+    {
+        final Query q = queries.get();
+
+        q.best = -1;
+        q.bestDistance = Long.MAX_VALUE;
+
+        final int bx = x >> shift;
+        final int by = y >> shift;
+
+        for (int k = 0; ; k++)
+        {
+            if (k > 0)
+            {
+                // the closest any cell in this ring can be
+                final long minDistance = ((long) (k - 1) << shift) + 1L;
+
+                if (minDistance > r || minDistance * minDistance >= q.bestDistance)
+                    break;
+            }
+
+            if (k == 0)
+            {
+                visit(q, bx, by, x, y, r, filter);
+                continue;
+            }
+
+            for (int i = -k; i <= k; i++)
+            {
+                visit(q, bx + i, by - k, x, y, r, filter);
+                visit(q, bx + i, by + k, x, y, r, filter);
+            }
+
+            for (int j = -k + 1; j < k; j++)
+            {
+                visit(q, bx - k, by + j, x, y, r, filter);
+                visit(q, bx + k, by + j, x, y, r, filter);
+            }
+        }
+
+        return q.best;
+    }
+
+    /**
+     * Collects the entities within a square of radius r around (x,y).
+     *
+     * @param x
+     * @param y
+     * @param r
+     * @param entities where to put them (it's not cleared first)
+     * @return the same bag
+     */
+    public IntBag within(final int x, final int y, final int r, final IntBag entities)
+    {
+        final int bx1 = Math.max(0, x - r) >> shift;
+        final int by1 = Math.max(0, y - r) >> shift;
+        final int bx2 = Math.min(width - 1, x + r) >> shift;
+        final int by2 = Math.min(height - 1, y + r) >> shift;
+
+        for (int bx = bx1; bx <= bx2; bx++)
+        {
+            for (int by = by1; by <= by2; by++)
+            {
+                final IntBag bucket = buckets[bx * rows + by];
+
+                if (bucket == null)
+                    continue;
+
+                for (int i = 0, size = bucket.size(); i < size; i++)
+                {
+                    final int entityId = bucket.get(i);
+                    final int cell     = cells[entityId];
+
+                    if (Coords.distanceChebyshev(x, y, cell / height, cell % height) <= r)
+                        entities.add(entityId);
+                }
+            }
+        }
+
+        return entities;
+    }
+
+    void visit(final Query q,
+               final int bx,
+               final int by,
+               final int x,
+               final int y,
+               final int r,
+               final IntPredicate filter)
+    {
+        if (bx < 0 || by < 0 || bx >= columns || by >= rows)
+            return;
+
+        final IntBag bucket = buckets[bx * rows + by];
+
+        if (bucket == null)
+            return;
+
+        for (int i = 0, size = bucket.size(); i < size; i++)
+        {
+            final int entityId = bucket.get(i);
+            final int cell     = cells[entityId];
+            final int dx       = cell / height - x;
+            final int dy       = cell % height - y;
+
+            if (Math.abs(dx) > r || Math.abs(dy) > r)
+                continue;
+
+            final long distance = (long) dx * dx + (long) dy * dy;
+
+            if (distance < q.bestDistance && (filter == null || filter.test(entityId)))
+            {
+                q.best = entityId;
+                q.bestDistance = distance;
+            }
+        }
+    }
+
+    int bucket(final int x, final int y)
+    {
+        return (x >> shift) * rows + (y >> shift);
+    }
+
+    void add(final int bucketId, final int entityId)
+    {
+        IntBag bucket = buckets[bucketId];
+
+        if (bucket == null)
+        {
+            bucket = new IntBag(4);
+            buckets[bucketId] = bucket;
+        }
+
+        bucket.add(entityId);
+    }
+
+    static class Query
+    {
+        int  best;
+        long bestDistance;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.components.actions;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ActionQueueTest
+{
+    ActionQueue  queue;
+    List<String> done;
+
+    @Before
+    public void setup()
+    {
+        queue = new ActionQueue();
+        done = new ArrayList<>();
+    }
+
+    @Test
+    public void testStepsComeInOrder()
+    {
+        final Step first  = new Step("first", 1f);
+        final Step second = new Step("second", 2f);
+
+        queue.steps.add(first);
+        queue.steps.add(second);
+
+        assertSame(first, queue.next());
+        assertSame(second, queue.next());
+
+        // over: nothing left to start
+        assertNull(queue.next());
+        assertTrue(queue.steps.isEmpty());
+
+        // starting them is up to the caller
+        assertTrue(done.isEmpty());
+    }
+
+    @Test
+    public void testInstantStepsAreDoneRightAway()
+    {
+        final Step walk = new Step("walk", 1f);
+
+        queue.steps.add(new Step("look", 0f));
+        queue.steps.add(new Step("listen", 0f));
+        queue.steps.add(walk);
+        queue.steps.add(new Step("eat", 0f));
+
+        assertSame(walk, queue.next());
+        assertEquals(2, done.size());
+        assertEquals("look", done.get(0));
+        assertEquals("listen", done.get(1));
+
+        // a plan can end with an instant step
+        assertNull(queue.next());
+        assertEquals("eat", done.get(2));
+    }
+
+    @Test
+    public void testStepsAreCheckedOnlyWhenDue()
+    {
+        final Step first = new Step("first", 1f);
+        final Step later = new Step("later", 1f);
+
+        queue.steps.add(first);
+        queue.steps.add(later);
+
+        queue.next();
+
+        assertEquals(1, first.tried);
+        assertEquals(0, later.tried);
+
+        // the situation changes before it's the second step's turn
+        later.possible = false;
+
+        assertNull(queue.next());
+        assertEquals(1, later.tried);
+    }
+
+    @Test
+    public void testBrokenPlanIsDropped()
+    {
+        final Step blocked = new Step("blocked", 1f);
+        blocked.possible = false;
+
+        queue.steps.add(new Step("walk", 0f));
+        queue.steps.add(blocked);
+        queue.steps.add(new Step("eat", 0f));
+
+        assertNull(queue.next());
+
+        // what came after the broken step is never done
+        assertEquals(1, done.size());
+        assertEquals("walk", done.get(0));
+        assertTrue(queue.steps.isEmpty());
+    }
+
+    /**
+     * Remembers when it's done, and can be made impossible.
+     */
+    class Step extends ActionContext
+    {
+        final String name;
+
+        boolean possible;
+        int     tried;
+
+        Step(final String name, final float delay)
+        {
+            this.name = name;
+            this.delay = delay;
+
+            possible = true;
+        }
+
+        @Override
+        public boolean tryAction()
+        {
+            tried++;
+
+            return possible;
+        }
+
+        @Override
+        public void doAction()
+        {
+            done.add(name);
+        }
+    }
+}
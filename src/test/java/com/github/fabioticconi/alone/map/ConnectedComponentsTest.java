@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ConnectedComponentsTest
+{
+    static final int SIZE = 48;
+
+    boolean[][]         blocked;
+    ConnectedComponents components;
+
+    @Before
+    public void setup()
+    {
+        blocked = new boolean[SIZE][SIZE];
+        components = new ConnectedComponents(SIZE, SIZE, this::walkable);
+    }
+
+    @Test
+    public void testWallSplitsAndGapMerges()
+    {
+        assertTrue(components.connected(0, 0, SIZE - 1, SIZE - 1));
+
+        // a wall across the whole map, one cell at a time
+        for (int y = 0; y < SIZE; y++)
+        {
+            blocked[SIZE / 2][y] = true;
+            assertTrue(components.update(SIZE / 2, y));
+
+            // diagonal moves can still slip through until the very last cell
+            assertEquals(y < SIZE - 1, components.connected(0, 0, SIZE - 1, SIZE - 1));
+        }
+
+        assertEquals(components.component(0, 0), components.component(0, SIZE - 1));
+        assertNotEquals(components.component(0, 0), components.component(SIZE - 1, 0));
+        assertEquals(-1, components.component(SIZE / 2, 0));
+
+        // nothing changed, nothing to do
+        assertFalse(components.update(SIZE / 2, 0));
+
+        // a gap in the wall joins the two halves again
+        blocked[SIZE / 2][SIZE / 3] = false;
+        assertTrue(components.update(SIZE / 2, SIZE / 3));
+
+        assertTrue(components.connected(0, 0, SIZE - 1, SIZE - 1));
+        assertEquals(components.component(0, 0), components.component(SIZE - 1, 0));
+    }
+
+    @Test
+    public void testEnclosedCell()
+    {
+        // a ring of trees around (10,10)
+        for (int x = 9; x <= 11; x++)
+        {
+            for (int y = 9; y <= 11; y++)
+            {
+                if (x == 10 && y == 10)
+                    continue;
+
+                blocked[x][y] = true;
+                components.update(x, y);
+            }
+        }
+
+        assertFalse(components.connected(10, 10, 0, 0));
+
+        // but it can be reached from outside: it's enough to bump into the ring
+        assertTrue(components.connected(0, 0, 10, 11));
+    }
+
+    @Test
+    public void testRandomChangesMatchFreshLabelling()
+    {
+        final Random r = new Random(42);
+
+        for (int x = 0; x < SIZE; x++)
+        {
+            for (int y = 0; y < SIZE; y++)
+            {
+                blocked[x][y] = r.nextFloat() < 0.4f;
+            }
+        }
+
+        components.prepare();
+
+        for (int i = 0; i < 2000; i++)
+        {
+            final int x = r.nextInt(SIZE);
+            final int y = r.nextInt(SIZE);
+
+            blocked[x][y] = !blocked[x][y];
+            assertTrue(components.update(x, y));
+
+            if (i % 100 != 0)
+                continue;
+
+            final ConnectedComponents fresh = new ConnectedComponents(SIZE, SIZE, this::walkable);
+
+            for (int j = 0; j < 500; j++)
+            {
+                final int x1 = r.nextInt(SIZE);
+                final int y1 = r.nextInt(SIZE);
+                final int x2 = r.nextInt(SIZE);
+                final int y2 = r.nextInt(SIZE);
+
+                assertEquals(fresh.connected(x1, y1, x2, y2), components.connected(x1, y1, x2, y2));
+            }
+        }
+    }
+
+    boolean walkable(final int x, final int y)
+    {
+        return !blocked[x][y];
+    }
+}
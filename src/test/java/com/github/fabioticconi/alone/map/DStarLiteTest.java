@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.map;
+
+import com.github.fabioticconi.alone.constants.Side;
+import com.github.fabioticconi.alone.utils.Coords;
+import org.junit.Before;
+import org.junit.Test;
+import rlforj.math.Point;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DStarLiteTest
+{
+    static final int   SIZE  = 64;
+    static final float SQRT2 = 1.4142135f;
+
+    boolean[][] blocked;
+    float[][]   costs;
+    ChangeLog   changes;
+
+    @Before
+    public void setup()
+    {
+        final Random r = new Random(42);
+
+        blocked = new boolean[SIZE][SIZE];
+        costs = new float[SIZE][SIZE];
+
+        for (int x = 0; x < SIZE; x++)
+        {
+            for (int y = 0; y < SIZE; y++)
+            {
+                blocked[x][y] = r.nextFloat() < 0.15f;
+                costs[x][y] = 1f + r.nextFloat();
+            }
+        }
+
+        changes = new ChangeLog(1024);
+    }
+
+    @Test
+    public void testStepsAreOptimal()
+    {
+        // a large radius, so that the window covers the whole board
+        checkChase(null, 40);
+    }
+
+    @Test
+    public void testWeightedStepsAreOptimal()
+    {
+        checkChase(this::cost, 40);
+    }
+
+    @Test
+    public void testRepairExpandsFewerNodes()
+    {
+        // open field, the target runs away one cell per step and the searcher follows it
+        for (final boolean[] column : blocked)
+            Arrays.fill(column, false);
+
+        final DStarLite planner = new DStarLite(this::passable, null, 1f);
+
+        int sx = 20;
+        int sy = 20;
+        int gx = 35;
+        int gy = 20;
+
+        int repaired = 0;
+        int fresh    = 0;
+
+        for (int step = 0; step < 12; step++)
+        {
+            final Point p = planner.next(changes, sx, sy, gx, gy, 12);
+            assertNotNull(p);
+
+            if (step > 0)
+            {
+                final DStarLite scratch = new DStarLite(this::passable, null, 1f);
+                scratch.next(changes, sx, sy, gx, gy, 12);
+
+                // every single step should be cheaper, not just on average
+                assertTrue(planner.getExpanded() < scratch.getExpanded());
+
+                repaired += planner.getExpanded();
+                fresh += scratch.getExpanded();
+            }
+
+            sx = p.x;
+            sy = p.y;
+
+            if (step % 2 == 0)
+                gx++;
+            else
+                gy++;
+        }
+
+        assertEquals(1, planner.getRebuilds());
+        assertTrue(repaired * 2 < fresh);
+    }
+
+    @Test
+    public void testRebuildsWhenTheLogIsOverwritten()
+    {
+        final ChangeLog small   = new ChangeLog(4);
+        final DStarLite planner = new DStarLite(this::passable, null, 1f);
+
+        blocked[10][10] = false;
+        blocked[20][20] = false;
+
+        assertNotNull(planner.next(small, 10, 10, 20, 20, 16));
+        assertEquals(1, planner.getRebuilds());
+
+        // a few changes are read from the log
+        for (int i = 0; i < 3; i++)
+            small.changed(30, 30 + i);
+
+        planner.next(small, 10, 10, 20, 20, 16);
+        assertEquals(1, planner.getRebuilds());
+
+        // too many: we can't know what changed anymore
+        for (int i = 0; i < 8; i++)
+            small.changed(30, 30 + i);
+
+        planner.next(small, 10, 10, 20, 20, 16);
+        assertEquals(2, planner.getRebuilds());
+    }
+
+    /**
+     * The target wanders around while the board changes, and the searcher takes the step it's given.
+     * Each step must be the first step of a shortest path.
+     */
+    void checkChase(final CostFunction cost, final int radius)
+    {
+        final Random    r       = new Random(1);
+        final DStarLite planner = new DStarLite(this::passable, cost, 1f);
+
+        int sx = 10;
+        int sy = 10;
+        int gx = 30;
+        int gy = 30;
+
+        blocked[sx][sy] = false;
+        blocked[gx][gy] = false;
+
+        int steps = 0;
+        for (int i = 0; i < 200; i++)
+        {
+            final float[] dist = distances(cost, gx, gy);
+            final Point   p    = planner.next(changes, sx, sy, gx, gy, radius);
+
+            if (dist[sx * SIZE + sy] == Float.POSITIVE_INFINITY)
+            {
+                assertNull(p);
+            }
+            else if (sx != gx || sy != gy)
+            {
+                assertNotNull(p);
+                assertEquals(1, Coords.distanceChebyshev(sx, sy, p.x, p.y));
+                assertTrue(passable(p.x, p.y));
+
+                final float edge = (p.x != sx && p.y != sy ? SQRT2 : 1f) * (cost == null ? 1f : cost.cost(p.x, p.y));
+
+                assertEquals(dist[sx * SIZE + sy], edge + dist[p.x * SIZE + p.y], 1e-3f * dist[sx * SIZE + sy]);
+
+                sx = p.x;
+                sy = p.y;
+                steps++;
+            }
+
+            // the target moves one cell at random
+            final Side side = Side.values()[r.nextInt(Side.values().length)];
+
+            if (passable(gx + side.x, gy + side.y) && (gx + side.x != sx || gy + side.y != sy))
+            {
+                gx += side.x;
+                gy += side.y;
+            }
+
+            // and now and then something appears or disappears (but not under them)
+            if (r.nextFloat() < 0.3f)
+            {
+                final int x = r.nextInt(SIZE);
+                final int y = r.nextInt(SIZE);
+
+                if ((x != sx || y != sy) && (x != gx || y != gy))
+                {
+                    blocked[x][y] = !blocked[x][y];
+                    changes.changed(x, y);
+                }
+            }
+
+            // once caught, it runs somewhere else
+            if (sx == gx && sy == gy)
+            {
+                do
+                {
+                    gx = r.nextInt(SIZE);
+                    gy = r.nextInt(SIZE);
+                } while (!passable(gx, gy) || Coords.distanceChebyshev(sx, sy, gx, gy) > radius);
+            }
+        }
+
+        assertTrue(steps > 50);
+        assertTrue(planner.getRebuilds() < steps / 2);
+    }
+
+    /**
+     * Plain Dijkstra from the goal, on the whole board: the cost of the shortest path from each cell to the goal.
+     */
+    float[] distances(final CostFunction cost, final int gx, final int gy)
+    {
+        final float[] dist = new float[SIZE * SIZE];
+        Arrays.fill(dist, Float.POSITIVE_INFINITY);
+
+        final PriorityQueue<float[]> open = new PriorityQueue<>((a, b) -> Float.compare(a[0], b[0]));
+
+        dist[gx * SIZE + gy] = 0f;
+        open.add(new float[] { 0f, gx, gy });
+
+        while (!open.isEmpty())
+        {
+            final float[] top = open.poll();
+            final int     x   = (int) top[1];
+            final int     y   = (int) top[2];
+
+            if (top[0] > dist[x * SIZE + y])
+                continue;
+
+            for (int dx = -1; dx <= 1; dx++)
+            {
+                for (int dy = -1; dy <= 1; dy++)
+                {
+                    final int px = x + dx;
+                    final int py = y + dy;
+
+                    if ((dx == 0 && dy == 0) || !passable(px, py))
+                        continue;
+
+                    // stepping from (px,py) into (x,y)
+                    final float c = (dx != 0 && dy != 0 ? SQRT2 : 1f) * (cost == null ? 1f : cost.cost(x, y));
+                    final float v = top[0] + c;
+
+                    if (v < dist[px * SIZE + py])
+                    {
+                        dist[px * SIZE + py] = v;
+                        open.add(new float[] { v, px, py });
+                    }
+                }
+            }
+        }
+
+        return dist;
+    }
+
+    boolean passable(final int x, final int y)
+    {
+        return x >= 0 && y >= 0 && x < SIZE && y < SIZE && !blocked[x][y];
+    }
+
+    float cost(final int x, final int y)
+    {
+        return costs[x][y];
+    }
+}
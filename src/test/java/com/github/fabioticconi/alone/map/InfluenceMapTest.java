@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.map;
+
+import com.github.fabioticconi.alone.constants.Side;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class InfluenceMapTest
+{
+    static final float DELTA = 1e-6f;
+
+    InfluenceMap map;
+
+    @Before
+    public void setup()
+    {
+        // 100x60 cells in blocks of 4x4, so 25x15 blocks
+        map = new InfluenceMap(100, 60, 2);
+    }
+
+    @Test
+    public void testStampKeepsTheStrongest()
+    {
+        map.stamp(40, 40, 1f, 8);
+
+        assertEquals(1f, map.get(40, 40), DELTA);
+        assertEquals(1f, map.get(43, 43), DELTA);
+
+        // two blocks away, at the edge of the radius
+        assertEquals(1f / 3f, map.get(48, 40), DELTA);
+        assertEquals(0f, map.get(52, 40), DELTA);
+
+        // a weaker stamp doesn't lower anything
+        map.stamp(40, 40, 0.5f, 8);
+        assertEquals(1f, map.get(40, 40), DELTA);
+
+        // stamps near the border are cut off, not wrapped around
+        map.stamp(0, 0, 1f, 16);
+        assertEquals(1f, map.get(0, 0), DELTA);
+        assertEquals(0f, map.get(99, 59), DELTA);
+    }
+
+    @Test
+    public void testDecay()
+    {
+        map.stamp(10, 10, 1f, 0);
+        map.stamp(99, 59, 0.5f, 0);
+
+        map.decay(0.5f);
+
+        // every block, up to the last one
+        assertEquals(0.5f, map.get(10, 10), DELTA);
+        assertEquals(0.25f, map.get(99, 59), DELTA);
+
+        // eventually, it's all gone for good
+        for (int i = 0; i < 10; i++)
+            map.decay(0.5f);
+
+        assertEquals(0f, map.get(10, 10), 0f);
+        assertEquals(0f, map.get(99, 59), 0f);
+    }
+
+    @Test
+    public void testDecayInStripes()
+    {
+        final InfluenceMap whole = new InfluenceMap(100, 60, 2);
+
+        for (int x = 0; x < 100; x += 7)
+        {
+            map.stamp(x, x % 60, 1f, 8);
+            whole.stamp(x, x % 60, 1f, 8);
+        }
+
+        whole.decay(0.3f);
+
+        // uneven stripes, the last one going past the end
+        map.decay(0, 4, 0.3f);
+        map.decay(4, 11, 0.3f);
+        map.decay(11, 30, 0.3f);
+
+        for (int x = 0; x < 100; x++)
+        {
+            for (int y = 0; y < 60; y++)
+                assertEquals(whole.get(x, y), map.get(x, y), 0f);
+        }
+    }
+
+    @Test
+    public void testAddIsCapped()
+    {
+        map.add(20, 20, 0.7f);
+        map.add(21, 21, 0.7f);
+
+        assertEquals(1f, map.get(20, 20), DELTA);
+    }
+
+    @Test
+    public void testDiffuseSpreadsAndFades()
+    {
+        map.add(40, 40, 1f);
+
+        map.diffuse(0, map.getColumns(), 0.5f, 1f);
+
+        // the source loses some, its neighbours gain some
+        assertTrue(map.get(40, 40) < 1f);
+        assertTrue(map.get(44, 40) > 0f);
+        assertTrue(map.get(36, 36) > 0f);
+
+        // only the given columns are touched
+        map.clear();
+        map.add(40, 40, 1f);
+        map.diffuse(0, 5, 0.5f, 0.5f);
+        assertEquals(1f, map.get(40, 40), DELTA);
+    }
+
+    @Test
+    public void testGradient()
+    {
+        map.stamp(40, 40, 1f, 12);
+
+        // from the side, uphill is towards the centre, downhill away from it (diagonals are as good)
+        assertEquals(-1, map.getAscent(48, 40).x);
+        assertEquals(1, map.getDescent(48, 40).x);
+
+        // nowhere higher than the top
+        assertEquals(Side.HERE, map.getAscent(40, 40));
+
+        // and nowhere lower than the flat ground far away
+        assertEquals(Side.HERE, map.getDescent(90, 10));
+    }
+}
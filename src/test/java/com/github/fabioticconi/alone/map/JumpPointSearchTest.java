@@ -0,0 +1,375 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.map;
+
+import com.github.fabioticconi.alone.utils.Coords;
+import com.github.fabioticconi.alone.utils.Util;
+import com.github.fabioticconi.tergen.HeightMap;
+import org.junit.Before;
+import org.junit.Test;
+import rlforj.IBoard;
+import rlforj.math.Point;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class JumpPointSearchTest
+{
+    static final int   SIZE    = 256;
+    static final int   QUERIES = 200;
+    static final int   RADIUS  = 40;
+    static final float SQRT2   = 1.4142135f;
+    static final float QUANTUM = 0.25f;
+
+    TestBoard board;
+
+    @Before
+    public void setup()
+    {
+        // same generator parameters as the MapScreen, on a smaller island
+        final HeightMap heightMap = new HeightMap().size(SIZE, SIZE).island(0.85f).rivers(0.8f, 0.03f, 0.001f, 1);
+        heightMap.fractalNoise.seed(42).set(16, 0.5f, 3f / SIZE, 1f);
+
+        board = new TestBoard(heightMap.build(), new Random(42));
+    }
+
+    @Test
+    public void testUniformPathsAreOptimal()
+    {
+        final JumpPointSearch jps = new JumpPointSearch(board, SIZE, SIZE);
+        final Dijkstra        dij = new Dijkstra(null);
+        final Random          r   = new Random(1);
+
+        int found = 0;
+        for (int i = 0; i < QUERIES; i++)
+        {
+            final Point start = board.randomFree(r);
+            final Point end   = board.randomFree(r, start, RADIUS);
+
+            final Point[] path = jps.findPath(start.x, start.y, end.x, end.y, RADIUS);
+            final float   best = dij.search(start, end, RADIUS);
+
+            checkPath(path, start, end);
+
+            assertEquals(best == Float.POSITIVE_INFINITY, path == null);
+
+            if (path == null)
+                continue;
+
+            assertEquals(best, cost(path, null), 1e-3f);
+            found++;
+        }
+
+        assertTrue(found > 0);
+    }
+
+    @Test
+    public void testWeightedPathsAreOptimal()
+    {
+        // regions of uniform cost: no quantisation needed, the search must be optimal
+        final JumpPointSearch jps = new JumpPointSearch(board, SIZE, SIZE, board::steppedCost, 1f);
+        final Dijkstra        dij = new Dijkstra(board::steppedCost);
+        final Random          r   = new Random(2);
+
+        int found = 0;
+        for (int i = 0; i < QUERIES; i++)
+        {
+            final Point start = board.randomFree(r);
+            final Point end   = board.randomFree(r, start, RADIUS);
+
+            final Point[] path = jps.findPath(start.x, start.y, end.x, end.y, RADIUS);
+            final float   best = dij.search(start, end, RADIUS);
+
+            checkPath(path, start, end);
+
+            assertEquals(best == Float.POSITIVE_INFINITY, path == null);
+
+            if (path == null)
+                continue;
+
+            assertEquals(best, cost(path, board::steppedCost), 1e-3f * best);
+            found++;
+        }
+
+        assertTrue(found > 0);
+    }
+
+    @Test
+    public void testQuantisedPathsAreBounded()
+    {
+        // real, continuous costs: optimal on the quantised costs, and close to optimal on the real ones
+        final JumpPointSearch jps       = new JumpPointSearch(board, SIZE, SIZE, board::realCost, 1f, QUANTUM);
+        final Dijkstra        real      = new Dijkstra(board::realCost);
+        final Dijkstra        quantised = new Dijkstra(board::quantisedCost);
+        final Random          r         = new Random(3);
+        final float           bound     = (2f + QUANTUM) / (2f - QUANTUM);
+
+        int found = 0;
+        for (int i = 0; i < QUERIES; i++)
+        {
+            final Point start = board.randomFree(r);
+            final Point end   = board.randomFree(r, start, RADIUS);
+
+            final Point[] path = jps.findPath(start.x, start.y, end.x, end.y, RADIUS);
+            final float   best = real.search(start, end, RADIUS);
+
+            checkPath(path, start, end);
+
+            assertEquals(best == Float.POSITIVE_INFINITY, path == null);
+
+            if (path == null)
+                continue;
+
+            final float bestQuantised = quantised.search(start, end, RADIUS);
+
+            assertEquals(bestQuantised, cost(path, board::quantisedCost), 1e-3f * bestQuantised);
+            assertTrue(cost(path, board::realCost) <= best * bound + 1e-3f);
+            found++;
+        }
+
+        assertTrue(found > 0);
+    }
+
+    @Test
+    public void testExpandsFewerNodesThanDijkstra()
+    {
+        final JumpPointSearch jps      = new JumpPointSearch(board, SIZE, SIZE);
+        final JumpPointSearch weighted = new JumpPointSearch(board, SIZE, SIZE, board::realCost, 1f, QUANTUM);
+        final Dijkstra        dij      = new Dijkstra(null);
+        final Dijkstra        dijReal  = new Dijkstra(board::realCost);
+        final Random          r        = new Random(4);
+
+        long jpsExpanded      = 0L;
+        long weightedExpanded = 0L;
+
+        for (int i = 0; i < QUERIES; i++)
+        {
+            final Point start = board.randomFree(r);
+            final Point end   = board.randomFree(r, start, RADIUS);
+
+            jps.findPath(start.x, start.y, end.x, end.y, RADIUS);
+            jpsExpanded += jps.getExpanded();
+            dij.search(start, end, RADIUS);
+
+            weighted.findPath(start.x, start.y, end.x, end.y, RADIUS);
+            weightedExpanded += weighted.getExpanded();
+            dijReal.search(start, end, RADIUS);
+        }
+
+        // the whole point of jumping: on open terrain, only a small fraction of the nodes is expanded
+        assertTrue(jpsExpanded * 4 < dij.expanded);
+        assertTrue(weightedExpanded * 2 < dijReal.expanded);
+    }
+
+    void checkPath(final Point[] path, final Point start, final Point end)
+    {
+        if (path == null)
+            return;
+
+        assertEquals(start.x, path[0].x);
+        assertEquals(start.y, path[0].y);
+        assertEquals(end.x, path[path.length - 1].x);
+        assertEquals(end.y, path[path.length - 1].y);
+
+        for (int i = 1; i < path.length; i++)
+        {
+            assertEquals(1, Coords.distanceChebyshev(path[i - 1].x, path[i - 1].y, path[i].x, path[i].y));
+
+            if (i < path.length - 1)
+                assertFalse(board.blocksStep(path[i].x, path[i].y));
+        }
+    }
+
+    static float cost(final Point[] path, final CostFunction cost)
+    {
+        float sum = 0f;
+
+        for (int i = 1; i < path.length; i++)
+        {
+            final boolean diagonal = path[i].x != path[i - 1].x && path[i].y != path[i - 1].y;
+
+            sum += (diagonal ? SQRT2 : 1f) * (cost == null ? 1f : cost.cost(path[i].x, path[i].y));
+        }
+
+        return sum;
+    }
+
+    /**
+     * Plain Dijkstra with the same movement model as the planners: 8 directions, corners can be cut,
+     * the start and the goal are always walkable and the search doesn't leave the radius.
+     */
+    class Dijkstra
+    {
+        final CostFunction cost;
+        final float[]      g;
+
+        long expanded;
+
+        Dijkstra(final CostFunction cost)
+        {
+            this.cost = cost;
+
+            g = new float[SIZE * SIZE];
+        }
+
+        float search(final Point start, final Point end, final int radius)
+        {
+            Arrays.fill(g, Float.POSITIVE_INFINITY);
+
+            final PriorityQueue<float[]> open = new PriorityQueue<>((a, b) -> Float.compare(a[0], b[0]));
+
+            g[start.x * SIZE + start.y] = 0f;
+            open.add(new float[] { 0f, start.x, start.y });
+
+            while (!open.isEmpty())
+            {
+                final float[] top = open.poll();
+                final int     x   = (int) top[1];
+                final int     y   = (int) top[2];
+
+                if (top[0] > g[x * SIZE + y])
+                    continue;
+
+                expanded++;
+
+                if (x == end.x && y == end.y)
+                    return top[0];
+
+                for (int dx = -1; dx <= 1; dx++)
+                {
+                    for (int dy = -1; dy <= 1; dy++)
+                    {
+                        final int nx = x + dx;
+                        final int ny = y + dy;
+
+                        if ((dx == 0 && dy == 0) || Coords.distanceChebyshev(start.x, start.y, nx, ny) > radius)
+                            continue;
+
+                        if (!board.contains(nx, ny) || (board.blocksStep(nx, ny) && (nx != end.x || ny != end.y)))
+                            continue;
+
+                        final float c = (dx != 0 && dy != 0 ? SQRT2 : 1f) * (cost == null ? 1f : cost.cost(nx, ny));
+                        final float v = top[0] + c;
+
+                        if (v < g[nx * SIZE + ny])
+                        {
+                            g[nx * SIZE + ny] = v;
+                            open.add(new float[] { v, nx, ny });
+                        }
+                    }
+                }
+            }
+
+            return Float.POSITIVE_INFINITY;
+        }
+    }
+
+    /**
+     * Water is impassable, and there are trees scattered around like in the real game.
+     */
+    static class TestBoard implements IBoard
+    {
+        final float[][]   heightmap;
+        final boolean[][] blocked;
+
+        TestBoard(final float[][] heightmap, final Random r)
+        {
+            this.heightmap = heightmap;
+
+            blocked = new boolean[SIZE][SIZE];
+
+            for (int x = 0; x < SIZE; x++)
+            {
+                for (int y = 0; y < SIZE; y++)
+                {
+                    blocked[x][y] = heightmap[x][y] < 0.05f || r.nextFloat() < 0.03f;
+                }
+            }
+        }
+
+        /**
+         * Same as MapSystem.Cell#cost for land.
+         */
+        float realCost(final int x, final int y)
+        {
+            return 1f + Util.bias(heightmap[x][y], 0.75f);
+        }
+
+        float quantisedCost(final int x, final int y)
+        {
+            return Math.max(1f, Math.round(realCost(x, y) / QUANTUM) * QUANTUM);
+        }
+
+        float steppedCost(final int x, final int y)
+        {
+            // hills are more expensive than plains, in steps
+            return 1f + Math.round(heightmap[x][y] * 4f);
+        }
+
+        Point randomFree(final Random r)
+        {
+            while (true)
+            {
+                final int x = r.nextInt(SIZE);
+                final int y = r.nextInt(SIZE);
+
+                if (!blocked[x][y])
+                    return new Point(x, y);
+            }
+        }
+
+        Point randomFree(final Random r, final Point p, final int radius)
+        {
+            while (true)
+            {
+                final int x = p.x + r.nextInt(2 * radius + 1) - radius;
+                final int y = p.y + r.nextInt(2 * radius + 1) - radius;
+
+                if (contains(x, y) && !blocked[x][y])
+                    return new Point(x, y);
+            }
+        }
+
+        @Override
+        public boolean contains(final int x, final int y)
+        {
+            return x >= 0 && y >= 0 && x < SIZE && y < SIZE;
+        }
+
+        @Override
+        public boolean blocksLight(final int x, final int y)
+        {
+            return !contains(x, y) || blocked[x][y];
+        }
+
+        @Override
+        public boolean blocksStep(final int x, final int y)
+        {
+            return !contains(x, y) || blocked[x][y];
+        }
+
+        @Override
+        public void visit(final int x, final int y)
+        {
+        }
+    }
+}
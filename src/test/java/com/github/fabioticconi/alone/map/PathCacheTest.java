@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.map;
+
+import com.github.fabioticconi.alone.utils.Coords;
+import org.junit.Before;
+import org.junit.Test;
+import rlforj.math.Point;
+
+import static org.junit.Assert.*;
+
+public class PathCacheTest
+{
+    static final int SIZE = 32;
+
+    boolean[][] blocked;
+    PathCache   cache;
+    Point[]     path;
+
+    @Before
+    public void setup()
+    {
+        blocked = new boolean[SIZE][SIZE];
+        cache = new PathCache(4);
+
+        // straight east, from (1,1) to (20,1)
+        path = new Point[20];
+        for (int i = 0; i < path.length; i++)
+            path[i] = new Point(1 + i, 1);
+
+        cache.put(0L, 1, 1, 20, 1, path);
+    }
+
+    @Test
+    public void testSameStart()
+    {
+        final Point[] p = cache.get(this::passable, 0L, 1, 1, 20, 1);
+
+        checkPath(p, 1, 1, 20, 1);
+        assertEquals(path.length, p.length);
+        assertEquals(1, cache.getHits());
+        assertEquals(0, cache.getMisses());
+    }
+
+    @Test
+    public void testStitchedStart()
+    {
+        // same region, a few cells below the original start
+        final Point[] p = cache.get(this::passable, 0L, 3, 5, 20, 1);
+
+        assertNotNull(p);
+        checkPath(p, 3, 5, 20, 1);
+
+        // it joins the path as far along as it can, rather than walking back to its start
+        assertTrue(p.length < path.length + 4);
+    }
+
+    @Test
+    public void testStitchingAroundObstacles()
+    {
+        // a wall between the new start and the path: only the part of the path past it can be joined
+        for (int x = 0; x < 4; x++)
+            blocked[x][3] = true;
+
+        final Point[] p = cache.get(this::passable, 0L, 2, 5, 20, 1);
+
+        assertNotNull(p);
+        checkPath(p, 2, 5, 20, 1);
+
+        for (final Point step : p)
+            assertTrue(passable(step.x, step.y));
+
+        // walled in: nothing can be joined
+        for (int x = 0; x < SIZE; x++)
+            blocked[x][3] = true;
+
+        assertNull(cache.get(this::passable, 0L, 2, 5, 20, 1));
+    }
+
+    @Test
+    public void testBlockedPath()
+    {
+        // a tree grows on the path
+        blocked[10][1] = true;
+
+        assertNull(cache.get(this::passable, 0L, 1, 1, 20, 1));
+        assertEquals(1, cache.getMisses());
+
+        // the ends can be occupied, they are the creature and its goal
+        blocked[10][1] = false;
+        blocked[20][1] = true;
+
+        assertNotNull(cache.get(this::passable, 0L, 1, 1, 20, 1));
+    }
+
+    @Test
+    public void testOldVersion()
+    {
+        assertNull(cache.get(this::passable, 1L, 1, 1, 20, 1));
+
+        // the stale entry is gone for good
+        assertNull(cache.get(this::passable, 0L, 1, 1, 20, 1));
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted()
+    {
+        for (int i = 0; i < 4; i++)
+            cache.put(0L, 1, 1, 20, 2 + i, path);
+
+        assertNull(cache.get(this::passable, 0L, 1, 1, 20, 1));
+        assertNotNull(cache.get(this::passable, 0L, 1, 1, 20, 5));
+
+        // too short to be worth caching
+        cache.put(0L, 1, 1, 2, 1, new Point[] { new Point(1, 1) });
+        assertNull(cache.get(this::passable, 0L, 1, 1, 2, 1));
+    }
+
+    void checkPath(final Point[] p, final int startX, final int startY, final int endX, final int endY)
+    {
+        assertEquals(startX, p[0].x);
+        assertEquals(startY, p[0].y);
+        assertEquals(endX, p[p.length - 1].x);
+        assertEquals(endY, p[p.length - 1].y);
+
+        for (int i = 1; i < p.length; i++)
+            assertEquals(1, Coords.distanceChebyshev(p[i - 1].x, p[i - 1].y, p[i].x, p[i].y));
+    }
+
+    boolean passable(final int x, final int y)
+    {
+        return x >= 0 && y >= 0 && x < SIZE && y < SIZE && !blocked[x][y];
+    }
+}
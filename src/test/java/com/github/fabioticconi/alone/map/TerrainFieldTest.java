@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.map;
+
+import com.github.fabioticconi.alone.utils.Coords;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TerrainFieldTest
+{
+    static final int WIDTH  = 60;
+    static final int HEIGHT = 40;
+
+    boolean[][]  grass;
+    TerrainField field;
+
+    @Before
+    public void setup()
+    {
+        grass = new boolean[WIDTH][HEIGHT];
+        field = new TerrainField(WIDTH, HEIGHT);
+    }
+
+    @Test
+    public void testBuildMatchesBruteForce()
+    {
+        final Random r = new Random(42);
+
+        for (final float density : new float[] { 0.001f, 0.02f, 0.3f })
+        {
+            for (int x = 0; x < WIDTH; x++)
+            {
+                for (int y = 0; y < HEIGHT; y++)
+                    grass[x][y] = r.nextFloat() < density;
+            }
+
+            field.build(this::isGrass);
+
+            check(field);
+        }
+    }
+
+    @Test
+    public void testSingleCellFillsTheMap()
+    {
+        field.build(this::isGrass);
+
+        assertEquals(-1, field.getNearest(10, 10));
+        assertEquals(Integer.MAX_VALUE, field.getDistance(10, 10));
+
+        // from a corner it has to reach every cell, far more than the initial queue can hold
+        grass[0][0] = true;
+        field.update(this::isGrass, 0, 0);
+
+        check(field);
+        assertEquals(WIDTH - 1, field.getDistance(WIDTH - 1, HEIGHT - 1));
+        assertEquals(0, field.getNearestX(WIDTH - 1, HEIGHT - 1));
+        assertEquals(0, field.getNearestY(WIDTH - 1, HEIGHT - 1));
+
+        // and once it's gone, there's nothing anywhere
+        grass[0][0] = false;
+        field.update(this::isGrass, 0, 0);
+
+        check(field);
+        assertEquals(-1, field.getNearest(WIDTH - 1, HEIGHT - 1));
+    }
+
+    @Test
+    public void testLostCellIsReplacedFromTheBorder()
+    {
+        grass[10][10] = true;
+        grass[40][10] = true;
+        field.build(this::isGrass);
+
+        assertEquals(10, field.getNearestX(20, 10));
+
+        // the whole area served by the first one now goes to the other
+        grass[10][10] = false;
+        field.update(this::isGrass, 10, 10);
+
+        check(field);
+        assertEquals(40, field.getNearestX(20, 10));
+        assertEquals(30, field.getDistance(10, 10));
+    }
+
+    @Test
+    public void testRandomUpdatesMatchFreshBuild()
+    {
+        final Random r = new Random(7);
+
+        for (int x = 0; x < WIDTH; x++)
+        {
+            for (int y = 0; y < HEIGHT; y++)
+                grass[x][y] = r.nextFloat() < 0.05f;
+        }
+
+        field.build(this::isGrass);
+
+        for (int i = 0; i < 3000; i++)
+        {
+            final int x = r.nextInt(WIDTH);
+            final int y = r.nextInt(HEIGHT);
+
+            grass[x][y] = !grass[x][y];
+            field.update(this::isGrass, x, y);
+
+            // nothing changed, nothing to do
+            field.update(this::isGrass, r.nextInt(WIDTH), r.nextInt(HEIGHT));
+
+            if (i % 100 != 0)
+                continue;
+
+            final TerrainField fresh = new TerrainField(WIDTH, HEIGHT);
+            fresh.build(this::isGrass);
+
+            for (int cx = 0; cx < WIDTH; cx++)
+            {
+                for (int cy = 0; cy < HEIGHT; cy++)
+                    assertEquals(fresh.getDistance(cx, cy), field.getDistance(cx, cy));
+            }
+
+            check(field);
+        }
+    }
+
+    /**
+     * Every cell must point to a matching cell, at the same distance as the closest one.
+     */
+    void check(final TerrainField f)
+    {
+        for (int x = 0; x < WIDTH; x++)
+        {
+            for (int y = 0; y < HEIGHT; y++)
+            {
+                final int best = closest(x, y);
+
+                assertEquals(best, f.getDistance(x, y));
+
+                if (best < Integer.MAX_VALUE)
+                    assertTrue(grass[f.getNearestX(x, y)][f.getNearestY(x, y)]);
+                else
+                    assertEquals(-1, f.getNearest(x, y));
+            }
+        }
+    }
+
+    int closest(final int x, final int y)
+    {
+        int best = Integer.MAX_VALUE;
+
+        for (int gx = 0; gx < WIDTH; gx++)
+        {
+            for (int gy = 0; gy < HEIGHT; gy++)
+            {
+                if (grass[gx][gy])
+                    best = Math.min(best, Coords.distanceChebyshev(x, y, gx, gy));
+            }
+        }
+
+        return best;
+    }
+
+    boolean isGrass(final int x, final int y)
+    {
+        return grass[x][y];
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.systems;
+
+import com.artemis.Aspect;
+import com.artemis.BaseSystem;
+import com.artemis.World;
+import com.artemis.WorldConfiguration;
+import com.github.fabioticconi.alone.components.Position;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BudgetSystemTest
+{
+    // milliseconds, generous so that only the hog can go over it
+    static final float BUDGET = 20f;
+
+    World        world;
+    BudgetSystem sBudget;
+    Hog          hog;
+    Vitals       vitals;
+
+    void setup(final float budget)
+    {
+        final WorldConfiguration config = new WorldConfiguration();
+        config.setSystem(new BudgetSystem(budget, 10f));
+        config.setSystem(new Hog());
+        config.setSystem(new Vitals(1f));
+
+        world = new World(config);
+        world.setDelta(1f);
+
+        sBudget = world.getSystem(BudgetSystem.class);
+        hog = world.getSystem(Hog.class);
+        vitals = world.getSystem(Vitals.class);
+
+        world.edit(world.create()).create(Position.class);
+    }
+
+    @Test
+    public void testNoLimit()
+    {
+        setup(0f);
+
+        hog.hogging = true;
+        world.process();
+
+        assertEquals(Long.MAX_VALUE, sBudget.getRemaining());
+        assertFalse(sBudget.isOver());
+
+        // vitals are never put off
+        assertEquals(1, vitals.deltas.size());
+        assertEquals(0L, sBudget.getDeferred(BudgetSystem.Work.VITALS));
+    }
+
+    @Test
+    public void testEachTickHasItsOwnBudget()
+    {
+        setup(BUDGET);
+
+        hog.hogging = true;
+        world.process();
+
+        assertTrue(sBudget.isOver());
+
+        hog.hogging = false;
+        world.process();
+
+        assertFalse(sBudget.isOver());
+        assertTrue(sBudget.getRemaining() > 0L);
+    }
+
+    @Test
+    public void testDeferredWorkIsCountedAndReported()
+    {
+        // without a limit nothing is put off by itself, but we can still tell what was
+        setup(0f);
+
+        world.process();
+
+        sBudget.defer(BudgetSystem.Work.AI, 3);
+        sBudget.defer(BudgetSystem.Work.PATHS, 2);
+        sBudget.defer(BudgetSystem.Work.AI, 1);
+        sBudget.drop(2);
+
+        assertEquals(4L, sBudget.getDeferred(BudgetSystem.Work.AI));
+        assertEquals(2L, sBudget.getDeferred(BudgetSystem.Work.PATHS));
+
+        // a tick is over budget once, however many times work was put off
+        assertEquals(1, sBudget.ticksOver);
+        assertEquals(2, sBudget.ticksDropped);
+
+        // after the report (ten seconds in), it starts counting again
+        for (int i = 0; i < 9; i++)
+            world.process();
+
+        assertEquals(0L, sBudget.getDeferred(BudgetSystem.Work.AI));
+        assertEquals(0L, sBudget.getDeferred(BudgetSystem.Work.PATHS));
+        assertEquals(0, sBudget.ticksOver);
+        assertEquals(0, sBudget.ticksDropped);
+    }
+
+    @Test
+    public void testPutOffVitalsCatchUp()
+    {
+        setup(BUDGET);
+
+        // the tick runs late, so the update that was due is put off
+        hog.hogging = true;
+        world.process();
+
+        assertTrue(vitals.deltas.isEmpty());
+        assertEquals(1L, sBudget.getDeferred(BudgetSystem.Work.VITALS));
+
+        // but the time is not lost
+        hog.hogging = false;
+        world.process();
+
+        assertEquals(1, vitals.deltas.size());
+        assertEquals(2f, vitals.deltas.get(0), 1e-4f);
+
+        world.process();
+
+        assertEquals(2, vitals.deltas.size());
+        assertEquals(1f, vitals.deltas.get(1), 1e-4f);
+    }
+
+    /**
+     * Uses up more than the whole budget, when asked to.
+     */
+    static class Hog extends BaseSystem
+    {
+        boolean hogging;
+
+        @Override
+        protected void processSystem()
+        {
+            if (!hogging)
+                return;
+
+            final long end = System.nanoTime() + (long) (2f * BUDGET * 1000000L);
+
+            while (System.nanoTime() < end)
+                Thread.yield();
+        }
+    }
+
+    /**
+     * Remembers how much time each update covered.
+     */
+    static class Vitals extends VitalSystem
+    {
+        final List<Float> deltas;
+
+        Vitals(final float interval)
+        {
+            super(Aspect.all(Position.class), interval);
+
+            deltas = new ArrayList<>();
+        }
+
+        @Override
+        protected void process(final int entityId)
+        {
+            deltas.add(getIntervalDelta());
+        }
+    }
+}
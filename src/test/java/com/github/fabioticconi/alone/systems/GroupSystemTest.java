@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.systems;
+
+import com.github.fabioticconi.alone.components.Position;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class GroupSystemTest
+{
+    static final int MEMBERS = 20;
+
+    GroupSystem sGroup;
+
+    int[] xs;
+    int[] ys;
+
+    @Before
+    public void setup()
+    {
+        // the statistics don't need a world, as long as members are tracked by hand
+        sGroup = new GroupSystem();
+
+        xs = new int[MEMBERS];
+        ys = new int[MEMBERS];
+    }
+
+    @Test
+    public void testStatsFollowMembers()
+    {
+        final int               groupId = sGroup.createGroup();
+        final GroupSystem.Stats st    = sGroup.getStats(groupId);
+        final Random            r       = new Random(42);
+
+        assertEquals(0, st.getCount());
+        assertFalse(st.getCentre(new Position(0, 0)));
+
+        final boolean[] onMap = new boolean[MEMBERS];
+
+        for (int i = 0; i < 2000; i++)
+        {
+            final int entityId = r.nextInt(MEMBERS);
+            final int x        = r.nextInt(50);
+            final int y        = r.nextInt(50);
+
+            if (!onMap[entityId])
+            {
+                join(groupId, entityId, x, y);
+                onMap[entityId] = true;
+            }
+            else if (r.nextFloat() < 0.1f)
+            {
+                sGroup.getGroup(groupId).removeValue(entityId);
+                sGroup.untrack(entityId);
+                onMap[entityId] = false;
+            }
+            else
+            {
+                // one step in any direction
+                xs[entityId] += r.nextInt(3) - 1;
+                ys[entityId] += r.nextInt(3) - 1;
+                sGroup.moved(entityId, xs[entityId], ys[entityId]);
+            }
+
+            checkStats(st, onMap);
+        }
+    }
+
+    @Test
+    public void testLeaderIsReplaced()
+    {
+        final int               groupId = sGroup.createGroup(true);
+        final GroupSystem.Stats st    = sGroup.getStats(groupId);
+
+        join(groupId, 0, 0, 0);
+        join(groupId, 1, 10, 10);
+        join(groupId, 2, 5, 5);
+        join(groupId, 3, 9, 1);
+
+        // the first one to show up
+        assertEquals(0, st.getLeader());
+
+        // the others take their places around it
+        assertEquals(-1, st.getSlot(0));
+        assertEquals(0, st.getSlot(1));
+        assertEquals(1, st.getSlot(2));
+        assertEquals(2, st.getSlot(3));
+
+        // then the one closest to the centre of the others
+        sGroup.untrack(0);
+        assertEquals(2, sGroup.getLeader(groupId));
+
+        // and the places are shuffled up
+        assertEquals(0, st.getSlot(1));
+        assertEquals(-1, st.getSlot(2));
+        assertEquals(1, st.getSlot(3));
+
+        sGroup.untrack(1);
+        sGroup.untrack(2);
+        assertEquals(3, st.getLeader());
+
+        sGroup.untrack(3);
+        assertEquals(-1, st.getLeader());
+
+        // groups without a leader never get one
+        final int leaderless = sGroup.createGroup();
+        join(leaderless, 4, 0, 0);
+        assertEquals(-1, sGroup.getLeader(leaderless));
+    }
+
+    @Test
+    public void testRemovedGroupsAreRecycled()
+    {
+        final int groupId = sGroup.createGroup();
+        join(groupId, 0, 3, 3);
+
+        sGroup.removeGroup(groupId);
+        assertNull(sGroup.getStats(groupId));
+
+        // a new group takes the id, with fresh statistics
+        assertEquals(groupId, sGroup.createGroup());
+        assertEquals(0, sGroup.getStats(groupId).getCount());
+    }
+
+    void join(final int groupId, final int entityId, final int x, final int y)
+    {
+        xs[entityId] = x;
+        ys[entityId] = y;
+
+        sGroup.getGroup(groupId).add(entityId);
+        sGroup.track(entityId, groupId, x, y);
+    }
+
+    void checkStats(final GroupSystem.Stats st, final boolean[] onMap)
+    {
+        int  count = 0;
+        long sumX  = 0L;
+        long sumY  = 0L;
+        int  minX  = Integer.MAX_VALUE;
+        int  minY  = Integer.MAX_VALUE;
+        int  maxX  = Integer.MIN_VALUE;
+        int  maxY  = Integer.MIN_VALUE;
+
+        for (int entityId = 0; entityId < MEMBERS; entityId++)
+        {
+            if (!onMap[entityId])
+                continue;
+
+            count++;
+            sumX += xs[entityId];
+            sumY += ys[entityId];
+            minX = Math.min(minX, xs[entityId]);
+            minY = Math.min(minY, ys[entityId]);
+            maxX = Math.max(maxX, xs[entityId]);
+            maxY = Math.max(maxY, ys[entityId]);
+        }
+
+        assertEquals(count, st.getCount());
+        assertEquals(sumX, st.getSumX());
+        assertEquals(sumY, st.getSumY());
+
+        if (count == 0)
+            return;
+
+        final Position centre = new Position(0, 0);
+        assertTrue(st.getCentre(centre));
+        assertEquals(Math.floorDiv(sumX, count), centre.x);
+        assertEquals(Math.floorDiv(sumY, count), centre.y);
+
+        assertEquals(minX, st.getMinX());
+        assertEquals(minY, st.getMinY());
+        assertEquals(maxX, st.getMaxX());
+        assertEquals(maxY, st.getMaxY());
+    }
+}
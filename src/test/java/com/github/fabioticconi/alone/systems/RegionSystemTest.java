@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.systems;
+
+import com.github.fabioticconi.alone.components.Group;
+import com.github.fabioticconi.alone.components.Health;
+import com.github.fabioticconi.alone.components.Hunger;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RegionSystemTest
+{
+    static final int SIZE     = 32;
+    static final int CAPACITY = 20;
+
+    RegionSystem        sRegion;
+    RegionSystem.Region region;
+
+    @Before
+    public void setup()
+    {
+        sRegion = new RegionSystem(1f, SIZE, 2 * SIZE, 3 * SIZE);
+        sRegion.r = new Random(42);
+
+        region = sRegion.regions[0];
+        region.capacity = CAPACITY;
+    }
+
+    @Test
+    public void testFreezeAndWake()
+    {
+        final Health health = new Health();
+        health.set(30f, 40f);
+
+        final Hunger hunger = new Hunger();
+        hunger.set(5f, 20f);
+
+        region.store("wolf", RegionSystem.CARNIVORE, 3, 4, new Group(7), health, hunger);
+        final int loner = region.store("rabbit", RegionSystem.HERBIVORE, 5, 6, null, null, null);
+
+        assertEquals(2, region.size);
+        assertEquals(1, region.count(RegionSystem.CARNIVORE));
+        assertEquals(1, region.count(RegionSystem.HERBIVORE));
+
+        // the new body is tougher, but as wounded and as hungry as before
+        final Group  newGroup  = new Group();
+        final Health newHealth = new Health(80f);
+        final Hunger newHunger = new Hunger(40f);
+
+        region.restore(0, newGroup, newHealth, newHunger);
+
+        assertEquals("wolf", region.tags[0]);
+        assertEquals(3, region.xs[0]);
+        assertEquals(4, region.ys[0]);
+        assertEquals(7, newGroup.groupId);
+        assertEquals(60f, newHealth.value, 1e-4f);
+        assertEquals(80f, newHealth.maxValue, 0f);
+        assertEquals(10f, newHunger.value, 1e-4f);
+
+        // without components, it's in perfect shape and alone
+        assertEquals("rabbit", region.tags[loner]);
+        assertEquals(-1, region.groups[loner]);
+
+        final Health fresh = new Health(10f);
+        final Hunger full  = new Hunger(10f);
+
+        region.restore(loner, null, fresh, full);
+
+        assertEquals(10f, fresh.value, 0f);
+        assertEquals(0f, full.value, 0f);
+
+        // removing one puts the last in its place
+        region.remove(0);
+
+        assertEquals(1, region.size);
+        assertEquals("rabbit", region.tags[0]);
+        assertEquals(RegionSystem.HERBIVORE, region.diets[0]);
+        assertNull(region.tags[1]);
+    }
+
+    @Test
+    public void testGrazersStayWithinCapacity()
+    {
+        for (int i = 0; i < 4; i++)
+            region.store("rabbit", RegionSystem.HERBIVORE, i, i, null, null, null);
+
+        int max = 0;
+
+        for (int t = 0; t < 5000; t++)
+        {
+            sRegion.advance(region, 1f);
+
+            max = Math.max(max, region.count(RegionSystem.HERBIVORE));
+        }
+
+        // they grow up to what the grass can feed, and no further
+        assertTrue(region.count(RegionSystem.HERBIVORE) >= CAPACITY / 2);
+        assertTrue(max <= CAPACITY + 2);
+        assertTrue(region.tags.length <= 4 * CAPACITY);
+    }
+
+    @Test
+    public void testOvercrowdingStarves()
+    {
+        for (int i = 0; i < 3 * CAPACITY; i++)
+            region.store("rabbit", RegionSystem.HERBIVORE, i % SIZE, i / SIZE, null, null, null);
+
+        for (int t = 0; t < 2000; t++)
+            sRegion.advance(region, 1f);
+
+        assertTrue(region.count(RegionSystem.HERBIVORE) <= CAPACITY + 2);
+    }
+
+    @Test
+    public void testPredatorsAndPreyStayBounded()
+    {
+        for (int i = 0; i < CAPACITY; i++)
+            region.store("rabbit", RegionSystem.HERBIVORE, i, 0, null, null, null);
+        for (int i = 0; i < 10; i++)
+            region.store("wolf", RegionSystem.CARNIVORE, i, 1, null, null, null);
+
+        for (int t = 0; t < 20000; t++)
+        {
+            sRegion.advance(region, 1f);
+
+            assertTrue(region.count(RegionSystem.HERBIVORE) <= CAPACITY + 2);
+            assertTrue(region.count(RegionSystem.CARNIVORE) <= 20);
+        }
+
+        // breeding only ever makes creatures of the parent's diet
+        assertEquals(region.size,
+                     region.count(RegionSystem.HERBIVORE) + region.count(RegionSystem.CARNIVORE));
+    }
+}
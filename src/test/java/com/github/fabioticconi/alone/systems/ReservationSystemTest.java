@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.systems;
+
+import com.artemis.World;
+import com.artemis.WorldConfiguration;
+import com.github.fabioticconi.alone.components.Group;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ReservationSystemTest
+{
+    World             world;
+    ReservationSystem sReservation;
+
+    int first;
+    int second;
+    int stranger;
+    int loner;
+
+    @Before
+    public void setup()
+    {
+        final WorldConfiguration config = new WorldConfiguration();
+        config.setSystem(ReservationSystem.class);
+
+        world = new World(config);
+        sReservation = world.getSystem(ReservationSystem.class);
+
+        first = world.create();
+        second = world.create();
+        stranger = world.create();
+        loner = world.create();
+
+        world.edit(first).create(Group.class).groupId = 1;
+        world.edit(second).create(Group.class).groupId = 1;
+        world.edit(stranger).create(Group.class).groupId = 2;
+    }
+
+    @Test
+    public void testGroupMatesRespectReservations()
+    {
+        sReservation.reserve(first, 10, 10, 1f);
+
+        assertTrue(sReservation.isReservedAgainst(second, 10, 10));
+        assertFalse(sReservation.isReservedAgainst(second, 10, 11));
+
+        // not against the one who made it
+        assertFalse(sReservation.isReservedAgainst(first, 10, 10));
+
+        // other groups and loners don't care
+        assertFalse(sReservation.isReservedAgainst(stranger, 10, 10));
+        assertFalse(sReservation.isReservedAgainst(loner, 10, 10));
+    }
+
+    @Test
+    public void testLonersCannotReserve()
+    {
+        sReservation.reserve(loner, 10, 10, 1f);
+
+        assertFalse(sReservation.isReservedAgainst(first, 10, 10));
+    }
+
+    @Test
+    public void testReservationsExpire()
+    {
+        sReservation.reserve(first, 10, 10, 1f);
+
+        tick(0.5f);
+        assertTrue(sReservation.isReservedAgainst(second, 10, 10));
+
+        tick(0.5f);
+        assertFalse(sReservation.isReservedAgainst(second, 10, 10));
+
+        // a reservation of no length is no reservation at all
+        sReservation.reserve(first, 10, 10, 0f);
+        assertFalse(sReservation.isReservedAgainst(second, 10, 10));
+    }
+
+    @Test
+    public void testLatestReservationWins()
+    {
+        sReservation.reserve(first, 10, 10, 1f);
+        sReservation.reserve(second, 10, 10, 1f);
+
+        assertTrue(sReservation.isReservedAgainst(first, 10, 10));
+        assertFalse(sReservation.isReservedAgainst(second, 10, 10));
+    }
+
+    @Test
+    public void testGroupMates()
+    {
+        assertTrue(sReservation.isGroupMate(first, second));
+        assertFalse(sReservation.isGroupMate(first, stranger));
+        assertFalse(sReservation.isGroupMate(first, loner));
+        assertFalse(sReservation.isGroupMate(loner, loner));
+    }
+
+    void tick(final float delta)
+    {
+        world.setDelta(delta);
+        world.process();
+    }
+}
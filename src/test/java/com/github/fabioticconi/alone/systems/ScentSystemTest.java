@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.systems;
+
+import com.artemis.World;
+import com.artemis.WorldConfiguration;
+import com.github.fabioticconi.alone.components.Carnivore;
+import com.github.fabioticconi.alone.components.Dead;
+import com.github.fabioticconi.alone.components.Herbivore;
+import com.github.fabioticconi.alone.components.Position;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ScentSystemTest
+{
+    static final float INTERVAL  = 0.5f;
+    static final float HALF_LIFE = 20f;
+
+    World       world;
+    ScentSystem sScent;
+
+    @Before
+    public void setup()
+    {
+        final WorldConfiguration config = new WorldConfiguration();
+        config.setSystem(new ScentSystem(INTERVAL, HALF_LIFE));
+
+        world = new World(config);
+        sScent = world.getSystem(ScentSystem.class);
+    }
+
+    @Test
+    public void testPreyLeavesATrail()
+    {
+        final int prey = world.create();
+        world.edit(prey).create(Herbivore.class);
+        world.edit(prey).create(Position.class).set(50, 50);
+
+        // long enough for the scent to spread over the whole map a few times
+        tick(INTERVAL * ScentSystem.SLICES * 4);
+
+        assertTrue(sScent.getScent(50, 50) > 0f);
+        assertTrue(sScent.getScent(50, 50) > sScent.getScent(54, 50));
+
+        // from nearby, the trail leads towards the prey
+        assertEquals(-1, sScent.getTrail(54, 50).x);
+        assertEquals(1, sScent.getTrail(46, 50).x);
+        assertEquals(-1, sScent.getTrail(50, 54).y);
+
+        // far away, there's nothing to smell
+        assertEquals(0f, sScent.getScent(150, 150), 0f);
+    }
+
+    @Test
+    public void testPredatorsLeaveNoScent()
+    {
+        final int predator = world.create();
+        world.edit(predator).create(Carnivore.class);
+        world.edit(predator).create(Position.class).set(50, 50);
+
+        tick(INTERVAL * ScentSystem.SLICES * 4);
+
+        assertEquals(0f, sScent.getScent(50, 50), 0f);
+    }
+
+    @Test
+    public void testScentFadesAway()
+    {
+        final int prey = world.create();
+        world.edit(prey).create(Herbivore.class);
+        world.edit(prey).create(Position.class).set(50, 50);
+
+        tick(INTERVAL * ScentSystem.SLICES * 4);
+
+        // dead prey doesn't leave any more scent
+        world.edit(prey).create(Dead.class);
+
+        float last = sScent.getScent(50, 50);
+        for (int i = 0; i < 10; i++)
+        {
+            tick(HALF_LIFE);
+
+            final float now = sScent.getScent(50, 50);
+
+            assertTrue(now < last || now == 0f);
+            last = now;
+        }
+
+        assertEquals(0f, last, 0f);
+    }
+
+    /**
+     * Runs the world, one interval at a time, for the given number of seconds.
+     */
+    void tick(final float seconds)
+    {
+        world.setDelta(INTERVAL);
+
+        for (int i = 0; i < Math.round(seconds / INTERVAL); i++)
+            world.process();
+    }
+}
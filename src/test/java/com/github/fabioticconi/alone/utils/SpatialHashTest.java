@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2015-2017 Fabio Ticconi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.github.fabioticconi.alone.utils;
+
+import com.artemis.utils.IntBag;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SpatialHashTest
+{
+    static final int WIDTH    = 100;
+    static final int HEIGHT   = 70;
+    static final int ENTITIES = 300;
+
+    SpatialHash hash;
+
+    // the same positions, to check the hash against brute force
+    int[] xs;
+    int[] ys;
+
+    @Before
+    public void setup()
+    {
+        hash = new SpatialHash(WIDTH, HEIGHT, 3);
+
+        xs = new int[ENTITIES];
+        ys = new int[ENTITIES];
+        Arrays.fill(xs, -1);
+    }
+
+    @Test
+    public void testPutMoveRemove()
+    {
+        hash.put(5, 10, 10);
+        hash.put(100, 20, 20);
+
+        assertEquals(2, hash.size());
+        assertTrue(hash.contains(5));
+        assertTrue(hash.contains(100));
+        assertFalse(hash.contains(6));
+        assertFalse(hash.contains(-1));
+
+        // moving doesn't add it twice, neither within the same block nor to another one
+        hash.put(5, 11, 10);
+        hash.put(5, 40, 40);
+        assertEquals(2, hash.size());
+        assertEquals(100, hash.nearest(21, 21, 5, null));
+        assertEquals(5, hash.nearest(40, 41, 5, null));
+
+        assertTrue(hash.remove(5));
+        assertFalse(hash.remove(5));
+        assertEquals(1, hash.size());
+        assertEquals(-1, hash.nearest(40, 41, 5, null));
+    }
+
+    @Test
+    public void testRemoveAt()
+    {
+        hash.put(1, 10, 10);
+        hash.put(2, 10, 10);
+        hash.put(3, 10, 11);
+
+        hash.removeAt(10, 10, 2);
+
+        assertFalse(hash.contains(1));
+        assertTrue(hash.contains(2));
+        assertTrue(hash.contains(3));
+        assertEquals(2, hash.size());
+    }
+
+    @Test
+    public void testNearestMatchesBruteForce()
+    {
+        final Random r = new Random(42);
+
+        for (int i = 0; i < 5000; i++)
+        {
+            final int entityId = r.nextInt(ENTITIES);
+
+            if (r.nextFloat() < 0.2f)
+            {
+                hash.remove(entityId);
+                xs[entityId] = -1;
+            }
+            else
+            {
+                xs[entityId] = r.nextInt(WIDTH);
+                ys[entityId] = r.nextInt(HEIGHT);
+                hash.put(entityId, xs[entityId], ys[entityId]);
+            }
+
+            final int x      = r.nextInt(WIDTH);
+            final int y      = r.nextInt(HEIGHT);
+            final int radius = 1 + r.nextInt(30);
+
+            // only odd entities are interesting, now and then
+            final boolean filtered = r.nextBoolean();
+            final int     found    = hash.nearest(x, y, radius, filtered ? id -> id % 2 == 1 : null);
+
+            int  best         = -1;
+            long bestDistance = Long.MAX_VALUE;
+            for (int id = 0; id < ENTITIES; id++)
+            {
+                if (xs[id] < 0 || (filtered && id % 2 == 0))
+                    continue;
+
+                if (Coords.distanceChebyshev(x, y, xs[id], ys[id]) > radius)
+                    continue;
+
+                final long distance = distance(x, y, id);
+
+                if (distance < bestDistance)
+                {
+                    best = id;
+                    bestDistance = distance;
+                }
+            }
+
+            if (best < 0)
+            {
+                assertEquals(-1, found);
+            }
+            else
+            {
+                // there may be ties, but the distance must be the same
+                assertNotEquals(-1, found);
+                assertEquals(bestDistance, distance(x, y, found));
+            }
+        }
+    }
+
+    @Test
+    public void testWithinMatchesBruteForce()
+    {
+        final Random r = new Random(1);
+
+        for (int id = 0; id < ENTITIES; id++)
+        {
+            xs[id] = r.nextInt(WIDTH);
+            ys[id] = r.nextInt(HEIGHT);
+            hash.put(id, xs[id], ys[id]);
+        }
+
+        final IntBag entities = new IntBag();
+
+        for (int i = 0; i < 200; i++)
+        {
+            final int x      = r.nextInt(WIDTH);
+            final int y      = r.nextInt(HEIGHT);
+            final int radius = r.nextInt(20);
+
+            entities.setSize(0);
+            hash.within(x, y, radius, entities);
+
+            int count = 0;
+            for (int id = 0; id < ENTITIES; id++)
+            {
+                if (Coords.distanceChebyshev(x, y, xs[id], ys[id]) <= radius)
+                {
+                    assertTrue(entities.contains(id));
+                    count++;
+                }
+            }
+
+            assertEquals(count, entities.size());
+        }
+    }
+
+    long distance(final int x, final int y, final int entityId)
+    {
+        final long dx = xs[entityId] - x;
+        final long dy = ys[entityId] - y;
+
+        return dx * dx + dy * dy;
+    }
+}